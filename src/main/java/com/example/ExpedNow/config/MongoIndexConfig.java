@@ -0,0 +1,182 @@
+package com.example.ExpedNow.config;
+
+import com.example.ExpedNow.models.AvailabilitySchedule;
+import com.example.ExpedNow.models.ChatRoom;
+import com.example.ExpedNow.models.DeliveryRequest;
+import com.example.ExpedNow.models.LocationHistoryPoint;
+import com.example.ExpedNow.models.Message;
+import com.example.ExpedNow.models.UserLocation;
+import com.example.ExpedNow.services.core.impl.LocationHistoryService;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.AggregationUpdate;
+import org.springframework.data.mongodb.core.index.GeoSpatialIndexType;
+import org.springframework.data.mongodb.core.index.GeospatialIndex;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Creates the indexes the query paths rely on (auto-index-creation is off) and backfills
+ * derived fields on documents written before those fields existed.
+ * Runs in the background once the application is ready so startup never waits on the database.
+ */
+@Configuration
+public class MongoIndexConfig {
+
+    private static final Logger logger = LoggerFactory.getLogger(MongoIndexConfig.class);
+
+    private final MongoTemplate mongoTemplate;
+    private final LocationHistoryService locationHistoryService;
+
+    public MongoIndexConfig(MongoTemplate mongoTemplate, LocationHistoryService locationHistoryService) {
+        this.mongoTemplate = mongoTemplate;
+        this.locationHistoryService = locationHistoryService;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void initializeIndexes() {
+        Thread thread = new Thread(this::ensureIndexes, "mongo-index-init");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void ensureIndexes() {
+        // Steps are independent, so one failing must not skip the others
+        boolean ok = runStep("geo indexes", this::ensureGeoIndexes);
+        ok &= runStep("location indexes", this::ensureLocationIndexes);
+        ok &= runStep("location history", this::ensureLocationHistory);
+        ok &= runStep("legacy schedule compaction", this::compactLegacySchedules);
+        ok &= runStep("schedule indexes", this::ensureScheduleIndexes);
+        ok &= runStep("message indexes", this::ensureMessageIndexes);
+        ok &= runStep("chat unread counter backfill", this::backfillChatUnreadCounts);
+        if (ok) {
+            logger.info("MongoDB indexes verified");
+        }
+    }
+
+    private boolean runStep(String name, Runnable step) {
+        try {
+            step.run();
+            return true;
+        } catch (Exception e) {
+            logger.error("MongoDB index step '{}' failed", name, e);
+            return false;
+        }
+    }
+
+    private void ensureGeoIndexes() {
+        // Fill the GeoJSON points from the flat coordinates for documents saved before they existed
+        long locations = mongoTemplate.updateMulti(
+                new Query(Criteria.where("location").exists(false).and("latitude").exists(true)),
+                AggregationUpdate.update().set("location").toValue(geoJsonPoint("$longitude", "$latitude")),
+                UserLocation.class).getModifiedCount();
+        long deliveries = mongoTemplate.updateMulti(
+                new Query(Criteria.where("pickupLocation").exists(false).andOperator(
+                        Criteria.where("pickupLatitude").exists(true),
+                        Criteria.where("pickupLongitude").exists(true),
+                        new Criteria().orOperator(Criteria.where("pickupLatitude").ne(0), Criteria.where("pickupLongitude").ne(0)))),
+                AggregationUpdate.update().set("pickupLocation").toValue(geoJsonPoint("$pickupLongitude", "$pickupLatitude")),
+                DeliveryRequest.class).getModifiedCount();
+        if (locations > 0 || deliveries > 0) {
+            logger.info("Backfilled GeoJSON points on {} user locations and {} deliveries", locations, deliveries);
+        }
+
+        mongoTemplate.indexOps(UserLocation.class)
+                .ensureIndex(new GeospatialIndex("location").typed(GeoSpatialIndexType.GEO_2DSPHERE));
+        mongoTemplate.indexOps(DeliveryRequest.class)
+                .ensureIndex(new GeospatialIndex("pickupLocation").typed(GeoSpatialIndexType.GEO_2DSPHERE));
+    }
+
+    // Location ingest upserts match on userId every flush
+    private void ensureLocationIndexes() {
+        mongoTemplate.indexOps(UserLocation.class)
+                .ensureIndex(new Index().on("userId", Sort.Direction.ASC));
+    }
+
+    // Time-series collections must be created explicitly; the history flusher also does this before its first insert
+    private void ensureLocationHistory() {
+        locationHistoryService.ensureCollection();
+        // Route reconstruction and courier range queries are each a single scan on one of these
+        mongoTemplate.indexOps(LocationHistoryPoint.class)
+                .ensureIndex(new Index().on("source.deliveryId", Sort.Direction.ASC).on("timestamp", Sort.Direction.ASC));
+        mongoTemplate.indexOps(LocationHistoryPoint.class)
+                .ensureIndex(new Index().on("source.courierId", Sort.Direction.ASC).on("timestamp", Sort.Direction.ASC));
+    }
+
+    // Re-save schedules still holding the per-date map so ScheduleCompactionCallback moves them to ranges
+    private void compactLegacySchedules() {
+        Query legacy = new Query(Criteria.where("monthlySchedule").exists(true));
+        int compacted = 0;
+        try (Stream<AvailabilitySchedule> schedules = mongoTemplate.stream(legacy, AvailabilitySchedule.class)) {
+            for (AvailabilitySchedule schedule : (Iterable<AvailabilitySchedule>) schedules::iterator) {
+                mongoTemplate.save(schedule);
+                compacted++;
+            }
+        }
+        if (compacted > 0) {
+            logger.info("Compacted monthly overrides of {} schedules", compacted);
+        }
+    }
+
+    // The schedule coverage aggregation looks up each courier's schedule by userId
+    private void ensureScheduleIndexes() {
+        mongoTemplate.indexOps(AvailabilitySchedule.class)
+                .ensureIndex(new Index().on("userId", Sort.Direction.ASC));
+    }
+
+    // Read receipts mark a receiver's unread messages of one delivery in a single updateMulti
+    private void ensureMessageIndexes() {
+        mongoTemplate.indexOps(Message.class)
+                .ensureIndex(new Index().on("deliveryId", Sort.Direction.ASC)
+                        .on("receiverId", Sort.Direction.ASC)
+                        .on("status", Sort.Direction.ASC));
+        // Keyset pagination of chat history seeks and sorts on this
+        mongoTemplate.indexOps(Message.class)
+                .ensureIndex(new Index().on("deliveryId", Sort.Direction.ASC)
+                        .on("timestamp", Sort.Direction.DESC)
+                        .on("_id", Sort.Direction.DESC));
+    }
+
+    // Seed the per-participant unread counters on rooms created before ChatService maintained them
+    private void backfillChatUnreadCounts() {
+        Query legacy = new Query(Criteria.where("unreadCounts").exists(false));
+        int backfilled = 0;
+        try (Stream<ChatRoom> rooms = mongoTemplate.stream(legacy, ChatRoom.class)) {
+            for (ChatRoom room : (Iterable<ChatRoom>) rooms::iterator) {
+                Map<String, Integer> counts = new HashMap<>();
+                for (String participantId : new String[]{room.getClientId(), room.getDeliveryPersonId()}) {
+                    if (participantId != null) {
+                        long unread = mongoTemplate.count(new Query(Criteria.where("deliveryId").is(room.getDeliveryId())
+                                .and("receiverId").is(participantId)
+                                .and("status").ne(Message.MessageStatus.READ)), Message.class);
+                        counts.put(participantId, (int) unread);
+                    }
+                }
+                // Skipped if a new message already started the counters
+                mongoTemplate.updateFirst(new Query(Criteria.where("_id").is(room.getId()).and("unreadCounts").exists(false)),
+                        new Update().set("unreadCounts", counts), ChatRoom.class);
+                backfilled++;
+            }
+        }
+        if (backfilled > 0) {
+            logger.info("Backfilled unread counters on {} chat rooms", backfilled);
+        }
+    }
+
+    private Document geoJsonPoint(String longitudeField, String latitudeField) {
+        return new Document("type", "Point").append("coordinates", List.of(longitudeField, latitudeField));
+    }
+}
@@ -0,0 +1,29 @@
+package com.example.ExpedNow.config;
+
+import com.example.ExpedNow.models.AvailabilitySchedule;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.mapping.event.BeforeConvertCallback;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+
+/**
+ * Prunes past date overrides and stores the rest as ranges every time a schedule is saved,
+ * so the Schedule document stays proportional to the active horizon.
+ */
+@Component
+public class ScheduleCompactionCallback implements BeforeConvertCallback<AvailabilitySchedule> {
+
+    private final int keepPastDays;
+
+    // Keeps the previous month by default so copyMonthlyAvailability can still use it as a source
+    public ScheduleCompactionCallback(@Value("${availability.schedule.keep-past-days:31}") int keepPastDays) {
+        this.keepPastDays = Math.max(0, keepPastDays);
+    }
+
+    @Override
+    public AvailabilitySchedule onBeforeConvert(AvailabilitySchedule schedule, String collection) {
+        schedule.compactMonthlySchedule(LocalDate.now().minusDays(keepPastDays));
+        return schedule;
+    }
+}
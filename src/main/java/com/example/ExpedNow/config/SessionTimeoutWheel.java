@@ -0,0 +1,167 @@
+package com.example.ExpedNow.config;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Idle timeouts of STOMP sessions kept in a hashed timing wheel.
+ * Activity only stamps a timestamp on the session's entry; each tick visits the one bucket whose deadline
+ * has come and either expires its entries or, if they saw activity since they were placed, re-arms them
+ * one idle period ahead. Idle CPU is therefore proportional to expiring sessions, not connected ones.
+ */
+@Component
+public class SessionTimeoutWheel {
+
+    private static final Logger logger = LoggerFactory.getLogger(SessionTimeoutWheel.class);
+
+    private static final int WHEEL_SIZE = 512; // Power of two; deadlines beyond one turn wait for their round
+
+    private final long idleTimeoutMs;
+    private final long tickMs;
+    private final ConcurrentMap<String, Timeout> timeouts = new ConcurrentHashMap<>();
+    @SuppressWarnings("unchecked")
+    private final Set<Timeout>[] buckets = new Set[WHEEL_SIZE];
+    private final long startedAt = System.currentTimeMillis();
+    private volatile long processedTick = -1;
+
+    private ScheduledExecutorService ticker;
+
+    public SessionTimeoutWheel(@Value("${websocket.session.idle-timeout-ms:600000}") long idleTimeoutMs,
+                               @Value("${websocket.session.wheel-tick-ms:1000}") long tickMs) {
+        this.tickMs = Math.max(1, tickMs);
+        this.idleTimeoutMs = Math.max(this.tickMs, idleTimeoutMs);
+        for (int i = 0; i < WHEEL_SIZE; i++) {
+            buckets[i] = ConcurrentHashMap.newKeySet();
+        }
+    }
+
+    @PostConstruct
+    public void start() {
+        ticker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "websocket-session-wheel");
+            thread.setDaemon(true);
+            return thread;
+        });
+        ticker.scheduleAtFixedRate(this::advance, tickMs, tickMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (ticker != null) {
+            ticker.shutdownNow();
+        }
+    }
+
+    /**
+     * Start tracking a session; onExpire runs on the wheel thread once it has been idle for the timeout
+     */
+    public void add(String sessionId, Runnable onExpire) {
+        Timeout timeout = new Timeout(sessionId, onExpire, System.currentTimeMillis());
+        Timeout previous = timeouts.put(sessionId, timeout);
+        if (previous != null) {
+            cancel(previous);
+        }
+        place(timeout, timeout.lastActivity + idleTimeoutMs);
+    }
+
+    /**
+     * Record activity on a session. Cheap enough to call for every inbound frame.
+     */
+    public void touch(String sessionId) {
+        if (sessionId == null) {
+            return;
+        }
+        Timeout timeout = timeouts.get(sessionId);
+        if (timeout != null) {
+            timeout.lastActivity = System.currentTimeMillis();
+        }
+    }
+
+    public void remove(String sessionId) {
+        Timeout timeout = sessionId != null ? timeouts.remove(sessionId) : null;
+        if (timeout != null) {
+            cancel(timeout);
+        }
+    }
+
+    public int size() {
+        return timeouts.size();
+    }
+
+    // Processes every tick that has fully elapsed, so a late run catches up instead of skipping buckets.
+    // Deadlines round up to a tick, so an entry re-armed here always lands in a tick after the target.
+    private void advance() {
+        long now = System.currentTimeMillis();
+        long target = (now - startedAt) / tickMs;
+        for (long tick = processedTick + 1; tick <= target; tick++) {
+            expire(tick, now);
+            processedTick = tick;
+        }
+    }
+
+    private void expire(long tick, long now) {
+        Iterator<Timeout> iterator = buckets[(int) (tick & (WHEEL_SIZE - 1))].iterator();
+        while (iterator.hasNext()) {
+            Timeout timeout = iterator.next();
+            if (timeout.deadlineTick > tick) {
+                continue; // Due in a later turn of the wheel
+            }
+            iterator.remove();
+            if (timeout.cancelled) {
+                continue;
+            }
+            long deadline = timeout.lastActivity + idleTimeoutMs;
+            if (deadline > now) {
+                place(timeout, deadline);
+            } else if (timeouts.remove(timeout.sessionId, timeout)) {
+                try {
+                    timeout.onExpire.run();
+                } catch (Exception e) {
+                    logger.warn("Session timeout handler failed for {}: {}", timeout.sessionId, e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void place(Timeout timeout, long deadline) {
+        long tick = Math.max(tickOf(deadline), processedTick + 1);
+        timeout.deadlineTick = tick;
+        buckets[(int) (tick & (WHEEL_SIZE - 1))].add(timeout);
+    }
+
+    private void cancel(Timeout timeout) {
+        timeout.cancelled = true;
+        buckets[(int) (timeout.deadlineTick & (WHEEL_SIZE - 1))].remove(timeout);
+    }
+
+    // First tick at or after the given time
+    private long tickOf(long millis) {
+        return (millis - startedAt + tickMs - 1) / tickMs;
+    }
+
+    private static class Timeout {
+        private final String sessionId;
+        private final Runnable onExpire;
+        private volatile long lastActivity;
+        private volatile long deadlineTick;
+        private volatile boolean cancelled;
+
+        private Timeout(String sessionId, Runnable onExpire, long lastActivity) {
+            this.sessionId = sessionId;
+            this.onExpire = onExpire;
+            this.lastActivity = lastActivity;
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.example.ExpedNow.config;
+
+import org.springframework.core.task.TaskExecutor;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * STOMP channel executor that runs every task on its own virtual thread, so handlers blocking on Mongo
+ * no longer hold one of a few pool threads. At most maxInFlight tasks run at once; a submitter finding
+ * no free slot waits up to acquireTimeoutMs, pushing back on the WebSocket reader, and is then rejected
+ * just as a full pool queue would reject it.
+ */
+public class VirtualThreadChannelExecutor implements TaskExecutor {
+
+    private final ThreadFactory threadFactory;
+    private final Semaphore permits;
+    private final int maxInFlight;
+    private final long acquireTimeoutMs;
+
+    public VirtualThreadChannelExecutor(String threadNamePrefix, int maxInFlight, long acquireTimeoutMs) {
+        this.threadFactory = Thread.ofVirtual().name(threadNamePrefix, 0).factory();
+        this.maxInFlight = Math.max(1, maxInFlight);
+        this.permits = new Semaphore(this.maxInFlight);
+        this.acquireTimeoutMs = Math.max(0, acquireTimeoutMs);
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        try {
+            if (!permits.tryAcquire(acquireTimeoutMs, TimeUnit.MILLISECONDS)) {
+                throw new RejectedExecutionException("All " + maxInFlight + " channel tasks still in flight");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException("Interrupted while waiting for a channel task slot", e);
+        }
+        try {
+            threadFactory.newThread(() -> {
+                try {
+                    task.run();
+                } finally {
+                    permits.release();
+                }
+            }).start();
+        } catch (RuntimeException | Error e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    public int getInFlight() {
+        return maxInFlight - permits.availablePermits();
+    }
+}
@@ -1,10 +1,12 @@
 package com.example.ExpedNow.config;
 
 import com.example.ExpedNow.security.JwtUtil;
+import com.example.ExpedNow.services.core.impl.TrackingPositionRelay;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.messaging.Message;
 import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
 import org.springframework.messaging.simp.stomp.StompCommand;
 import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
 import org.springframework.messaging.support.ChannelInterceptor;
@@ -20,14 +22,27 @@ import java.util.List;
 public class WebSocketAuthInterceptor implements ChannelInterceptor {
 
     private static final Logger logger = LoggerFactory.getLogger(WebSocketAuthInterceptor.class);
+
+    // Relay destinations the nodes use among themselves; with the broker relay a client frame to these
+    // would be forwarded to the broker as is
+    private static final List<String> INTERNAL_DESTINATIONS = List.of(
+            TrackingPositionRelay.DESTINATION_PREFIX,
+            "/topic/simp-user-registry",
+            "/topic/unresolved-user-destination");
+
     private final JwtUtil jwtUtil;
+    private final SessionTimeoutWheel sessionTimeouts;
 
-    public WebSocketAuthInterceptor(JwtUtil jwtUtil) {
+    public WebSocketAuthInterceptor(JwtUtil jwtUtil, SessionTimeoutWheel sessionTimeouts) {
         this.jwtUtil = jwtUtil;
+        this.sessionTimeouts = sessionTimeouts;
     }
 
     @Override
     public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        // Every inbound frame, client heartbeats included, keeps the session alive
+        sessionTimeouts.touch(SimpMessageHeaderAccessor.getSessionId(message.getHeaders()));
+
         StompHeaderAccessor accessor = MessageHeaderAccessor.getAccessor(message, StompHeaderAccessor.class);
 
         if (accessor != null && StompCommand.CONNECT.equals(accessor.getCommand())) {
@@ -60,9 +75,34 @@ public class WebSocketAuthInterceptor implements ChannelInterceptor {
                 return null;
             }
         }
+
+        if (accessor != null && (StompCommand.SUBSCRIBE.equals(accessor.getCommand())
+                || StompCommand.SEND.equals(accessor.getCommand()))
+                && !isClientDestination(accessor.getCommand(), accessor.getDestination())) {
+            logger.warn("Rejected {} to {} from session {}", accessor.getCommand(), accessor.getDestination(),
+                    accessor.getSessionId());
+            return null;
+        }
         return message;
     }
 
+    /**
+     * Clients may not reach the internal relay destinations, directly or through a broker wildcard
+     * subscription (RabbitMQ '*' and '#', ActiveMQ '*' and '>') that would also match them.
+     */
+    private static boolean isClientDestination(StompCommand command, String destination) {
+        if (destination == null) {
+            return true;
+        }
+        for (String internal : INTERNAL_DESTINATIONS) {
+            if (destination.startsWith(internal)) {
+                return false;
+            }
+        }
+        return !StompCommand.SUBSCRIBE.equals(command)
+                || (destination.indexOf('*') < 0 && destination.indexOf('#') < 0 && destination.indexOf('>') < 0);
+    }
+
     private String extractToken(StompHeaderAccessor accessor) {
         logger.debug("WebSocket connection headers: {}", accessor.toNativeHeaderMap());
         // Check Authorization header first
@@ -1,11 +1,14 @@
 package com.example.ExpedNow.config;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.messaging.simp.config.ChannelRegistration;
 import org.springframework.messaging.simp.config.MessageBrokerRegistry;
+import org.springframework.messaging.simp.config.StompBrokerRelayRegistration;
 import org.springframework.scheduling.TaskScheduler;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.util.StringUtils;
 import org.springframework.web.socket.config.annotation.EnableWebSocketMessageBroker;
 import org.springframework.web.socket.config.annotation.StompEndpointRegistry;
 import org.springframework.web.socket.config.annotation.WebSocketMessageBrokerConfigurer;
@@ -17,6 +20,35 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
     private final WebSocketAuthInterceptor authInterceptor;
     private final WebSocketHandshakeInterceptor handshakeInterceptor;
 
+    // External broker relay; off means the in-memory simple broker of a single node
+    @Value("${websocket.broker.relay.enabled:false}")
+    private boolean relayEnabled;
+
+    @Value("${websocket.broker.relay.host:localhost}")
+    private String relayHost;
+
+    @Value("${websocket.broker.relay.port:61613}")
+    private int relayPort;
+
+    @Value("${websocket.broker.relay.login:guest}")
+    private String relayLogin;
+
+    @Value("${websocket.broker.relay.passcode:guest}")
+    private String relayPasscode;
+
+    @Value("${websocket.broker.relay.virtual-host:}")
+    private String relayVirtualHost;
+
+    // Channel handlers on virtual threads instead of the fixed inbound/outbound pools
+    @Value("${websocket.channels.virtual-threads:false}")
+    private boolean virtualThreads;
+
+    @Value("${websocket.channels.max-in-flight:1000}")
+    private int maxInFlight;
+
+    @Value("${websocket.channels.acquire-timeout-ms:5000}")
+    private long acquireTimeoutMs;
+
     public WebSocketConfig(WebSocketAuthInterceptor authInterceptor,
                            WebSocketHandshakeInterceptor handshakeInterceptor) {
         this.authInterceptor = authInterceptor;
@@ -40,12 +72,22 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
         registry.addEndpoint("/ws-direct")
                 .setAllowedOriginPatterns("http://localhost:4200", "https://your-domain.com")
                 .addInterceptors(handshakeInterceptor);
+
+        if (virtualThreads) {
+            // Frames of one session are handled one after another, however many virtual threads are free
+            registry.setPreserveReceiveOrder(true);
+        }
     }
 
     @Override
     public void configureClientInboundChannel(ChannelRegistration registration) {
         registration.interceptors(authInterceptor);
 
+        if (virtualThreads) {
+            registration.executor(new VirtualThreadChannelExecutor("websocket-inbound-", maxInFlight, acquireTimeoutMs));
+            return;
+        }
+
         // Enhanced thread pool configuration for better performance
         registration.taskExecutor()
                 .corePoolSize(8)          // Increased from 4
@@ -56,6 +98,12 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
 
     @Override
     public void configureClientOutboundChannel(ChannelRegistration registration) {
+        if (virtualThreads) {
+            // Per-session order is kept by setPreservePublishOrder below
+            registration.executor(new VirtualThreadChannelExecutor("websocket-outbound-", maxInFlight, acquireTimeoutMs));
+            return;
+        }
+
         // Configure outbound channel for better message delivery performance
         registration.taskExecutor()
                 .corePoolSize(8)
@@ -66,12 +114,32 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
 
     @Override
     public void configureMessageBroker(MessageBrokerRegistry config) {
-        // Enhanced simple broker configuration
-        config.enableSimpleBroker("/topic", "/queue", "/user")
-                // Configure task scheduler for better performance
-                .setTaskScheduler(taskScheduler())
-                // Set heartbeat for connection health monitoring
-                .setHeartbeatValue(new long[]{25000, 25000}); // 25 seconds client-to-server and server-to-client
+        if (relayEnabled) {
+            // Subscriptions live in the external STOMP broker, so every node behind the load balancer sees
+            // every subscriber. Client heartbeats are negotiated with that broker through the relay.
+            StompBrokerRelayRegistration relay = config.enableStompBrokerRelay("/topic", "/queue")
+                    .setRelayHost(relayHost)
+                    .setRelayPort(relayPort)
+                    .setClientLogin(relayLogin)
+                    .setClientPasscode(relayPasscode)
+                    .setSystemLogin(relayLogin)
+                    .setSystemPasscode(relayPasscode)
+                    .setSystemHeartbeatSendInterval(25000)
+                    .setSystemHeartbeatReceiveInterval(25000)
+                    // Share each node's connected users, so SimpUserRegistry and user destinations span the cluster
+                    .setUserRegistryBroadcast("/topic/simp-user-registry")
+                    .setUserDestinationBroadcast("/topic/unresolved-user-destination");
+            if (StringUtils.hasText(relayVirtualHost)) {
+                relay.setVirtualHost(relayVirtualHost);
+            }
+        } else {
+            // Enhanced simple broker configuration
+            config.enableSimpleBroker("/topic", "/queue", "/user")
+                    // Configure task scheduler for better performance
+                    .setTaskScheduler(taskScheduler())
+                    // Set heartbeat for connection health monitoring
+                    .setHeartbeatValue(new long[]{25000, 25000}); // 25 seconds client-to-server and server-to-client
+        }
 
         config.setApplicationDestinationPrefixes("/app");
         config.setUserDestinationPrefix("/user");
@@ -94,27 +162,4 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
         scheduler.initialize();
         return scheduler;
     }
-
-    // Alternative: Create separate beans for inbound/outbound executors if you need custom thread names
-    @Bean
-    public ThreadPoolTaskScheduler inboundChannelExecutor() {
-        ThreadPoolTaskScheduler executor = new ThreadPoolTaskScheduler();
-        executor.setPoolSize(8);  // FIXED: Use setPoolSize instead of setCorePoolSize
-        executor.setThreadNamePrefix("websocket-inbound-");
-        executor.setAwaitTerminationSeconds(60);
-        executor.setWaitForTasksToCompleteOnShutdown(true);
-        executor.initialize();
-        return executor;
-    }
-
-    @Bean
-    public ThreadPoolTaskScheduler outboundChannelExecutor() {
-        ThreadPoolTaskScheduler executor = new ThreadPoolTaskScheduler();
-        executor.setPoolSize(8);  // FIXED: Use setPoolSize instead of setCorePoolSize
-        executor.setThreadNamePrefix("websocket-outbound-");
-        executor.setAwaitTerminationSeconds(60);
-        executor.setWaitForTasksToCompleteOnShutdown(true);
-        executor.initialize();
-        return executor;
-    }
-}
\ No newline at end of file
+}
@@ -6,9 +6,11 @@ import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.event.EventListener;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.simp.user.SimpUser;
 import org.springframework.messaging.simp.user.SimpUserRegistry;
 import org.springframework.security.core.Authentication;
 import org.springframework.stereotype.Component;
@@ -18,6 +20,7 @@ import org.springframework.web.socket.messaging.SessionSubscribeEvent;
 import org.springframework.web.socket.messaging.SessionUnsubscribeEvent;
 
 import java.time.LocalDateTime;
+import java.util.HashSet;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.Map;
 import java.util.Set;
@@ -32,20 +35,35 @@ public class WebSocketEventListener {
 
     private final SimpMessagingTemplate messagingTemplate;
     private final SimpUserRegistry userRegistry;
+    private final SessionTimeoutWheel sessionTimeouts;
+    private final boolean clusterPresence;
+    private final long presenceRecheckMs;
 
-    // Enhanced session tracking
+    // Session index: sessionId -> session (which carries its own subscriptions) and userId -> session ids.
+    // Both maps change together under the user's key in sessionsByUser, so presence never disagrees with them.
     private final ConcurrentMap<String, UserSession> userSessions = new ConcurrentHashMap<>();
-    private final ConcurrentMap<String, Set<String>> userDeliverySubscriptions = new ConcurrentHashMap<>();
-
-    // Connection monitoring
-    private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(2);
-
-    public WebSocketEventListener(SimpMessagingTemplate messagingTemplate, SimpUserRegistry userRegistry) {
+    private final ConcurrentMap<String, Set<String>> sessionsByUser = new ConcurrentHashMap<>();
+
+    // Connection monitoring; idle sessions are expired by the timing wheel, not by a periodic scan
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "websocket-health");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public WebSocketEventListener(SimpMessagingTemplate messagingTemplate, SimpUserRegistry userRegistry,
+                                  SessionTimeoutWheel sessionTimeouts,
+                                  @Value("${websocket.broker.relay.enabled:false}") boolean clusterPresence,
+                                  @Value("${websocket.presence.recheck-ms:15000}") long presenceRecheckMs) {
         this.messagingTemplate = messagingTemplate;
         this.userRegistry = userRegistry;
+        this.sessionTimeouts = sessionTimeouts;
+        // With the broker relay, userRegistry also lists users connected to the other nodes
+        this.clusterPresence = clusterPresence;
+        this.presenceRecheckMs = Math.max(1000, presenceRecheckMs);
 
-        // Start periodic cleanup and health monitoring
-        startPeriodicTasks();
+        // Connection health check every minute
+        scheduler.scheduleAtFixedRate(this::checkConnectionHealth, 1, 1, TimeUnit.MINUTES);
     }
 
     @EventListener
@@ -65,7 +83,8 @@ public class WebSocketEventListener {
             userSession.setLastActivity(LocalDateTime.now());
             userSession.setActive(true);
 
-            userSessions.put(sessionId, userSession);
+            registerSession(userSession);
+            sessionTimeouts.add(sessionId, () -> expireSession(userSession));
 
             log.info("✅ User {} connected with session {} at {}",
                     userId, sessionId, userSession.getConnectedAt());
@@ -95,26 +114,20 @@ public class WebSocketEventListener {
     public void handleWebSocketDisconnectListener(SessionDisconnectEvent event) {
         StompHeaderAccessor headerAccessor = StompHeaderAccessor.wrap(event.getMessage());
         String sessionId = headerAccessor.getSessionId();
+        sessionTimeouts.remove(sessionId);
 
-        UserSession userSession = userSessions.remove(sessionId);
+        UserSession userSession = userSessions.get(sessionId);
+        Boolean lastSession = userSession != null ? unregisterSession(userSession) : null;
 
-        if (userSession != null) {
+        if (lastSession != null) {
             String userId = userSession.getUserId();
 
             log.info("🔌 User {} disconnected from session {} (connected for {} minutes)",
                     userId, sessionId,
                     java.time.Duration.between(userSession.getConnectedAt(), LocalDateTime.now()).toMinutes());
 
-            // Clean up user subscriptions
-            userDeliverySubscriptions.remove(sessionId);
-
-            // Check if user has other active sessions
-            boolean hasOtherSessions = userSessions.values().stream()
-                    .anyMatch(session -> session.getUserId().equals(userId) && session.isActive());
-
-            if (!hasOtherSessions) {
-                // User is completely offline
-                broadcastUserStatus(userId, "OFFLINE", false);
+            if (lastSession) {
+                announceOfflineIfGone(userId, sessionId);
             }
 
             // Send disconnect notification
@@ -146,8 +159,7 @@ public class WebSocketEventListener {
             // Track delivery-specific subscriptions
             if (destination != null && destination.startsWith("/topic/delivery.")) {
                 String deliveryId = destination.replace("/topic/delivery.", "");
-                userDeliverySubscriptions.computeIfAbsent(sessionId, k -> ConcurrentHashMap.newKeySet())
-                        .add(deliveryId);
+                userSession.getDeliverySubscriptions().add(deliveryId);
 
                 log.debug("📡 User {} subscribed to delivery {} updates",
                         userSession.getUserId(), deliveryId);
@@ -186,64 +198,78 @@ public class WebSocketEventListener {
     }
 
     private void broadcastToUserDeliveries(String userId, Map<String, Object> statusUpdate) {
-        // Find all deliveries this user is subscribed to
-        userSessions.values().stream()
-                .filter(session -> session.getUserId().equals(userId))
-                .flatMap(session -> userDeliverySubscriptions.getOrDefault(session.getSessionId(), Set.of()).stream())
-                .distinct()
-                .forEach(deliveryId -> {
-                    messagingTemplate.convertAndSend("/topic/delivery." + deliveryId + ".status", statusUpdate);
-                });
+        // Find all deliveries this user is subscribed to, through the user's own sessions only
+        Set<String> deliveryIds = new HashSet<>();
+        for (String sessionId : sessionsByUser.getOrDefault(userId, Set.of())) {
+            UserSession session = userSessions.get(sessionId);
+            if (session != null) {
+                deliveryIds.addAll(session.getDeliverySubscriptions());
+            }
+        }
+        deliveryIds.forEach(deliveryId ->
+                messagingTemplate.convertAndSend("/topic/delivery." + deliveryId + ".status", statusUpdate));
     }
 
-    // Periodic tasks for connection health and cleanup
-    private void startPeriodicTasks() {
-        // Clean up inactive sessions every 5 minutes
-        scheduler.scheduleAtFixedRate(this::cleanupInactiveSessions, 5, 5, TimeUnit.MINUTES);
-
-        // Send heartbeat every 30 seconds
-        scheduler.scheduleAtFixedRate(this::sendHeartbeat, 30, 30, TimeUnit.SECONDS);
-
-        // Connection health check every minute
-        scheduler.scheduleAtFixedRate(this::checkConnectionHealth, 1, 1, TimeUnit.MINUTES);
+    private void registerSession(UserSession session) {
+        sessionsByUser.compute(session.getUserId(), (userId, sessionIds) -> {
+            Set<String> ids = sessionIds != null ? sessionIds : ConcurrentHashMap.newKeySet();
+            userSessions.put(session.getSessionId(), session);
+            ids.add(session.getSessionId());
+            return ids;
+        });
     }
 
-    private void cleanupInactiveSessions() {
-        LocalDateTime cutoff = LocalDateTime.now().minusMinutes(10); // 10 minutes timeout
-
-        userSessions.entrySet().removeIf(entry -> {
-            UserSession session = entry.getValue();
-            if (session.getLastActivity().isBefore(cutoff)) {
-                log.info("🧹 Cleaning up inactive session {} for user {}",
-                        entry.getKey(), session.getUserId());
-                userDeliverySubscriptions.remove(entry.getKey());
-                return true;
+    /**
+     * Drop the session from both indexes. Returns whether it was the user's last session,
+     * or null if it was already gone (disconnect events can arrive more than once).
+     */
+    private Boolean unregisterSession(UserSession session) {
+        Boolean[] lastSession = {null};
+        sessionsByUser.computeIfPresent(session.getUserId(), (userId, ids) -> {
+            if (userSessions.remove(session.getSessionId(), session)) {
+                ids.remove(session.getSessionId());
+                lastSession[0] = ids.isEmpty();
             }
-            return false;
+            return ids.isEmpty() ? null : ids;
         });
+        return lastSession[0];
     }
 
-    private void sendHeartbeat() {
-        Map<String, Object> heartbeat = Map.of(
-                "type", "HEARTBEAT",
-                "timestamp", LocalDateTime.now(),
-                "activeConnections", userSessions.size()
-        );
+    // Sessions of the user on other nodes, as of the last registry broadcast
+    private boolean hasSessionsElsewhere(String userId, String closingSessionId) {
+        if (!clusterPresence) {
+            return false;
+        }
+        SimpUser user = userRegistry.getUser(userId);
+        return user != null && user.getSessions().stream()
+                .anyMatch(session -> !session.getId().equals(closingSessionId));
+    }
 
-        // Send heartbeat to all connected users
-        userSessions.values().forEach(session -> {
-            try {
-                messagingTemplate.convertAndSendToUser(
-                        session.getUserId(),
-                        "/queue/heartbeat",
-                        heartbeat
-                );
-                session.setLastActivity(LocalDateTime.now());
-            } catch (Exception e) {
-                log.warn("Failed to send heartbeat to user {}: {}",
-                        session.getUserId(), e.getMessage());
+    // The registry only learns that another node closed the user's sessions from that node's next broadcast,
+    // so a "still connected elsewhere" answer is checked once more after a broadcast period
+    private void announceOfflineIfGone(String userId, String closingSessionId) {
+        if (!hasSessionsElsewhere(userId, closingSessionId)) {
+            // User is completely offline
+            broadcastUserStatus(userId, "OFFLINE", false);
+            return;
+        }
+        scheduler.schedule(() -> {
+            if (!sessionsByUser.containsKey(userId) && !hasSessionsElsewhere(userId, closingSessionId)) {
+                broadcastUserStatus(userId, "OFFLINE", false);
             }
-        });
+        }, presenceRecheckMs, TimeUnit.MILLISECONDS);
+    }
+
+    // Runs on the wheel thread once no frame (client heartbeats included) arrived for the idle timeout
+    private void expireSession(UserSession session) {
+        Boolean lastSession = unregisterSession(session);
+        if (lastSession == null) {
+            return;
+        }
+        log.info("🧹 Cleaning up inactive session {} for user {}", session.getSessionId(), session.getUserId());
+        if (lastSession) {
+            announceOfflineIfGone(session.getUserId(), session.getSessionId());
+        }
     }
 
     private void checkConnectionHealth() {
@@ -268,8 +294,10 @@ public class WebSocketEventListener {
 
     // Public utility methods
     public boolean isUserOnline(String userId) {
-        return userSessions.values().stream()
-                .anyMatch(session -> session.getUserId().equals(userId) && session.isActive());
+        if (userId == null) {
+            return false;
+        }
+        return sessionsByUser.containsKey(userId) || (clusterPresence && userRegistry.getUser(userId) != null);
     }
 
     public Map<String, UserSession> getUserSessions() {
@@ -281,10 +309,12 @@ public class WebSocketEventListener {
     }
 
     public Set<String> getOnlineUsers() {
-        return userSessions.values().stream()
-                .filter(UserSession::isActive)
-                .map(UserSession::getUserId)
-                .collect(java.util.stream.Collectors.toSet());
+        if (!clusterPresence) {
+            return Set.copyOf(sessionsByUser.keySet());
+        }
+        Set<String> online = new HashSet<>(sessionsByUser.keySet());
+        userRegistry.getUsers().forEach(user -> online.add(user.getName()));
+        return online;
     }
 
     public void broadcastToDelivery(String deliveryId, Object message) {
@@ -331,6 +361,7 @@ public class WebSocketEventListener {
         private LocalDateTime connectedAt;
         private LocalDateTime lastActivity;
         private boolean isActive;
+        private final Set<String> deliverySubscriptions = ConcurrentHashMap.newKeySet();
 
         // Manual builder method as alternative to @Builder
         public static UserSession create(String sessionId, String userId) {
@@ -8,6 +8,7 @@ import com.example.ExpedNow.models.User;
 import com.example.ExpedNow.repositories.UserRepository;
 import com.example.ExpedNow.security.CustomUserDetailsService;
 import com.example.ExpedNow.security.JwtUtil;
+import com.example.ExpedNow.security.PrincipalCache;
 import com.example.ExpedNow.services.core.impl.EmailService;
 import com.example.ExpedNow.services.core.impl.UserServiceImpl;
 import com.example.ExpedNow.services.core.impl.VehicleServiceImpl;
@@ -59,6 +60,9 @@ public class AuthController {
     @Autowired
     private VehicleServiceImpl vehicleService;
 
+    @Autowired
+    private PrincipalCache principalCache;
+
     public AuthController(AuthenticationManager authenticationManager,
                           UserServiceImpl userService,
                           UserRepository userRepository,
@@ -237,6 +241,9 @@ public class AuthController {
                 user.setLockTime(LocalDateTime.now());
             }
             userRepository.save(user);
+            if (user.getLockTime() != null) {
+                principalCache.evict(user.getId()); // Locked accounts lose their existing sessions too
+            }
         });
     }
 
@@ -350,6 +357,7 @@ public class AuthController {
             user.setFailedLoginAttempts(0);
             user.setLockTime(null);
             userRepository.save(user);
+            principalCache.evict(user.getId());
 
             // SEND SUCCESS EMAIL
             try {
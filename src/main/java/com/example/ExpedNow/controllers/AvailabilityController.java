@@ -1,10 +1,10 @@
 package com.example.ExpedNow.controllers;
 
 import com.example.ExpedNow.dto.AvailabilityDTO;
+import com.example.ExpedNow.dto.ScheduleCoverageDTO;
 import com.example.ExpedNow.exception.ResourceNotFoundException;
 import com.example.ExpedNow.models.AvailabilitySchedule;
 import com.example.ExpedNow.models.User;
-import com.example.ExpedNow.models.enums.Role;
 import com.example.ExpedNow.repositories.AvailabilityRepository;
 import com.example.ExpedNow.repositories.UserRepository;
 import com.example.ExpedNow.services.core.AvailabilityServiceInterface;
@@ -181,37 +181,17 @@ public class AvailabilityController {
     @PreAuthorize("hasRole('ADMIN')")
     public ResponseEntity<?> getDeliveryPersonsWithoutSchedule() {
         try {
-            List<User> allDeliveryPersons = userRepository.findAllByRolesContaining(Role.ROLE_DELIVERY_PERSON);
             List<Map<String, Object>> deliveryPersonsWithoutSchedule = new ArrayList<>();
 
-            for (User person : allDeliveryPersons) {
-                try {
-                    AvailabilityDTO schedule = availabilityService.getScheduleForUser(person.getId());
-                    boolean hasSchedule = schedule.getWeeklySchedule().values().stream()
-                            .anyMatch(day -> day.isWorking()) ||
-                            (schedule.getMonthlySchedule() != null && !schedule.getMonthlySchedule().isEmpty());
-
-                    if (!hasSchedule) {
-                        deliveryPersonsWithoutSchedule.add(Map.of(
-                                "id", person.getId(),
-                                "email", person.getEmail(),
-                                "firstName", person.getFirstName() != null ? person.getFirstName() : "",
-                                "lastName", person.getLastName() != null ? person.getLastName() : "",
-                                "enabled", person.isEnabled(),
-                                "available", person.isAvailable()
-                        ));
-                    }
-                } catch (Exception e) {
-                    // If there's an error getting the schedule, assume no schedule exists
-                    deliveryPersonsWithoutSchedule.add(Map.of(
-                            "id", person.getId(),
-                            "email", person.getEmail(),
-                            "firstName", person.getFirstName() != null ? person.getFirstName() : "",
-                            "lastName", person.getLastName() != null ? person.getLastName() : "",
-                            "enabled", person.isEnabled(),
-                            "available", person.isAvailable()
-                    ));
-                }
+            for (User person : availabilityService.getDeliveryPersonsWithoutSchedule()) {
+                deliveryPersonsWithoutSchedule.add(Map.of(
+                        "id", person.getId(),
+                        "email", person.getEmail() != null ? person.getEmail() : "",
+                        "firstName", person.getFirstName() != null ? person.getFirstName() : "",
+                        "lastName", person.getLastName() != null ? person.getLastName() : "",
+                        "enabled", person.isEnabled(),
+                        "available", person.isAvailable()
+                ));
             }
 
             return ResponseEntity.ok(Map.of(
@@ -233,27 +213,10 @@ public class AvailabilityController {
     @PreAuthorize("hasRole('ADMIN')")
     public ResponseEntity<?> getScheduleStatistics() {
         try {
-            List<User> allDeliveryPersons = userRepository.findAllByRolesContaining(Role.ROLE_DELIVERY_PERSON);
-            int totalDeliveryPersons = allDeliveryPersons.size();
-            int withSchedule = 0;
-            int withoutSchedule = 0;
-
-            for (User person : allDeliveryPersons) {
-                try {
-                    AvailabilityDTO schedule = availabilityService.getScheduleForUser(person.getId());
-                    boolean hasSchedule = schedule.getWeeklySchedule().values().stream()
-                            .anyMatch(day -> day.isWorking()) ||
-                            (schedule.getMonthlySchedule() != null && !schedule.getMonthlySchedule().isEmpty());
-
-                    if (hasSchedule) {
-                        withSchedule++;
-                    } else {
-                        withoutSchedule++;
-                    }
-                } catch (Exception e) {
-                    withoutSchedule++;
-                }
-            }
+            ScheduleCoverageDTO coverage = availabilityService.getScheduleCoverage();
+            int totalDeliveryPersons = coverage.getTotalDeliveryPersons();
+            int withSchedule = coverage.getWithSchedule();
+            int withoutSchedule = totalDeliveryPersons - withSchedule;
 
             return ResponseEntity.ok(Map.of(
                     "success", true,
@@ -156,6 +156,44 @@ public class ChatController {
         }
     }
 
+    @GetMapping("/messages/history")
+    @PreAuthorize(CHAT_AUTHORITIES)
+    public ResponseEntity<?> getMessageHistory(
+            @RequestParam @NotBlank(message = "Delivery ID is required") String deliveryId,
+            @RequestParam @NotBlank(message = "Other user ID is required") String otherUserId,
+            @RequestParam(required = false) String before,
+            @RequestParam(defaultValue = "20") @Min(1) int size,
+            Authentication authentication) {
+
+        try {
+            MessageHistoryDTO history = chatService.getMessageHistory(deliveryId, otherUserId, before,
+                    Math.min(size, 100), authentication);
+
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", true);
+            response.put("data", history.getMessages());
+            response.put("nextCursor", history.getNextCursor());
+            response.put("hasMore", history.isHasMore());
+            response.put("timestamp", LocalDateTime.now());
+            return ResponseEntity.ok(response);
+
+        } catch (IllegalArgumentException e) {
+            log.warn("Invalid message history request from user {}: {}", authentication.getName(), e.getMessage());
+            return ResponseEntity.badRequest().body(Map.of(
+                    "error", "Invalid request",
+                    "message", e.getMessage(),
+                    "timestamp", LocalDateTime.now()
+            ));
+        } catch (Exception e) {
+            log.error("Error retrieving message history for user {}: {}", authentication.getName(), e.getMessage(), e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(Map.of(
+                    "error", "Failed to retrieve messages",
+                    "message", "An unexpected error occurred. Please try again.",
+                    "timestamp", LocalDateTime.now()
+            ));
+        }
+    }
+
     @GetMapping("/rooms")
     @PreAuthorize(CHAT_AUTHORITIES)
     public ResponseEntity<?> getChatRooms(Authentication authentication) {
@@ -1,20 +1,35 @@
 package com.example.ExpedNow.controllers;
 
 import com.example.ExpedNow.dto.LocationDTO;
+import com.example.ExpedNow.dto.LocationPingDTO;
 import com.example.ExpedNow.models.DeliveryRequest;
+import com.example.ExpedNow.models.LocationHistoryPoint;
 import com.example.ExpedNow.models.User;
+import com.example.ExpedNow.models.UserLocation;
 import com.example.ExpedNow.services.core.impl.AutomatedDeliveryAssignmentServiceImpl;
 import com.example.ExpedNow.services.core.impl.DeliveryAssignmentServiceImpl;
+import com.example.ExpedNow.services.core.impl.LocationHistoryService;
+import com.example.ExpedNow.services.core.impl.LocationIngestService;
 import com.example.ExpedNow.services.core.impl.LocationServiceImpl;
 import com.example.ExpedNow.services.core.impl.UserServiceImpl;
 import com.example.ExpedNow.services.core.impl.DeliveryServiceImpl;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.OutputStream;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Date;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.stream.Stream;
 
 @RestController
 @RequestMapping("/api/deliveriesperson") // Make sure this matches your Angular service URL
@@ -32,9 +47,18 @@ public class DeliveryAssignmentController {
     @Autowired
     private LocationServiceImpl locationService;
 
+    @Autowired
+    private LocationIngestService locationIngestService;
+
+    @Autowired
+    private LocationHistoryService locationHistoryService;
+
     @Autowired
     private UserServiceImpl userService;
 
+    @Autowired
+    private ObjectMapper objectMapper;
+
     // This endpoint is kept for manual assignment if needed
     @PostMapping("/assign/{deliveryId}")
     @PreAuthorize("hasRole('ADMIN')")
@@ -80,10 +104,65 @@ public class DeliveryAssignmentController {
             @RequestBody LocationDTO location,
             @RequestHeader("Authorization") String token) {
         String userId = userService.getUserIdFromToken(token);
-        locationService.updateUserLocation(userId, location.getLatitude(), location.getLongitude());
+        locationIngestService.submit(userId, location.getLatitude(), location.getLongitude(), null);
         return ResponseEntity.ok().build();
     }
 
+    @PostMapping("/location/batch")
+    @PreAuthorize("hasAnyRole('ROLE_PROFESSIONAL', 'ROLE_TEMPORARY', 'DELIVERY_PERSON')")
+    public ResponseEntity<Map<String, Integer>> updateLocations(
+            @RequestBody List<LocationPingDTO> pings,
+            @RequestHeader("Authorization") String token) {
+        String userId = userService.getUserIdFromToken(token);
+        int accepted = locationIngestService.submitBatch(userId, pings);
+        return ResponseEntity.ok(Map.of("accepted", accepted));
+    }
+
+    // Raw location history of a courier, streamed as newline-delimited JSON straight from the cursor
+    @GetMapping(value = "/location/history/{courierId}", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<StreamingResponseBody> streamLocationHistory(
+            @PathVariable String courierId,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to) {
+        Date fromDate = Date.from(from.atZone(ZoneId.systemDefault()).toInstant());
+        Date toDate = Date.from(to.atZone(ZoneId.systemDefault()).toInstant());
+        StreamingResponseBody body = (OutputStream out) -> {
+            try (Stream<LocationHistoryPoint> points = locationHistoryService.streamCourierHistory(courierId, fromDate, toDate)) {
+                Iterator<LocationHistoryPoint> iterator = points.iterator();
+                while (iterator.hasNext()) {
+                    out.write(objectMapper.writeValueAsBytes(iterator.next()));
+                    out.write('\n');
+                }
+            }
+        };
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(body);
+    }
+
+    @GetMapping("/nearby-pending")
+    @PreAuthorize("hasAnyRole('ROLE_PROFESSIONAL', 'ROLE_TEMPORARY', 'DELIVERY_PERSON')")
+    public ResponseEntity<List<DeliveryRequest>> getNearbyPendingDeliveries(
+            @RequestParam(defaultValue = "5") double radiusKm,
+            @RequestHeader("Authorization") String token) {
+        String userId = userService.getUserIdFromToken(token);
+        LocationDTO location = locationService.getLastKnownLocation(userId);
+        if (location == null) {
+            return ResponseEntity.ok(List.of());
+        }
+        return ResponseEntity.ok(locationService.findPendingDeliveriesNear(
+                location.getLatitude(), location.getLongitude(), radiusKm));
+    }
+
+    @GetMapping("/nearby-couriers")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<List<UserLocation>> getNearbyCouriers(
+            @RequestParam double latitude,
+            @RequestParam double longitude,
+            @RequestParam(defaultValue = "5") double radiusKm,
+            @RequestParam(defaultValue = "20") int limit) {
+        return ResponseEntity.ok(locationService.findUserLocationsNear(latitude, longitude, radiusKm, limit));
+    }
+
     @PutMapping("/availability")
     @PreAuthorize("hasAnyRole('ROLE_PROFESSIONAL', 'ROLE_TEMPORARY', 'DELIVERY_PERSON')")
     public ResponseEntity<User> updateAvailability(
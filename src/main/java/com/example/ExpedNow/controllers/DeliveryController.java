@@ -3,6 +3,7 @@ package com.example.ExpedNow.controllers;
 import com.example.ExpedNow.dto.*;
 import com.example.ExpedNow.exception.ResourceNotFoundException;
 import com.example.ExpedNow.models.DeliveryRequest;
+import com.example.ExpedNow.models.DeliveryRoute;
 import com.example.ExpedNow.models.Mission;
 import com.example.ExpedNow.models.User;
 import com.example.ExpedNow.models.enums.PackageType;
@@ -13,6 +14,7 @@ import com.example.ExpedNow.services.core.MissionServiceInterface;
 import com.example.ExpedNow.services.core.UserServiceInterface;
 import com.example.ExpedNow.services.core.impl.DeliveryServiceImpl;
 import com.example.ExpedNow.services.core.impl.ImageAnalysisService;
+import com.example.ExpedNow.services.core.impl.LocationHistoryService;
 import jakarta.validation.Valid;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
@@ -41,15 +43,18 @@ public class DeliveryController {
     private final MissionServiceInterface missionService;
     private final UserServiceInterface userService;
     private final ImageAnalysisService imageAnalysisService;
+    private final LocationHistoryService locationHistoryService;
 
     public DeliveryController(DeliveryServiceImpl deliveryService,
                               MissionServiceInterface missionService,
                               UserServiceInterface userService,
-                              ImageAnalysisService imageAnalysisService) {
+                              ImageAnalysisService imageAnalysisService,
+                              LocationHistoryService locationHistoryService) {
         this.deliveryService = deliveryService;
         this.missionService = missionService;
         this.userService = userService;
         this.imageAnalysisService = imageAnalysisService;
+        this.locationHistoryService = locationHistoryService;
     }
 
     @PostMapping("/request-with-image")
@@ -460,6 +465,37 @@ public class DeliveryController {
         return ResponseEntity.ok(delivery);
     }
 
+    // Route the courier drove for this delivery (compacted once the delivery is old enough)
+    @GetMapping("/{deliveryId}/route")
+    @PreAuthorize("isAuthenticated()")
+    public ResponseEntity<?> getDeliveryRoute(
+            @PathVariable String deliveryId,
+            @AuthenticationPrincipal UserDetails userDetails) {
+        try {
+            String userId = ((CustomUserDetailsService.CustomUserDetails) userDetails).getUserId();
+            DeliveryRequest delivery = deliveryService.getDeliveryById(deliveryId);
+
+            // Only the client, the assigned courier and admins may see the courier's trail
+            boolean isAdmin = userDetails.getAuthorities().stream()
+                    .anyMatch(auth -> auth.getAuthority().equals("ROLE_ADMIN"));
+            boolean isClient = userId.equals(delivery.getClientId());
+            boolean isDeliveryPerson = userId.equals(delivery.getDeliveryPersonId());
+
+            if (!isAdmin && !isClient && !isDeliveryPerson) {
+                return ResponseEntity.status(HttpStatus.FORBIDDEN)
+                        .body(Map.of("error", "Not authorized to view this route"));
+            }
+
+            List<DeliveryRoute.RoutePoint> route = locationHistoryService.getDeliveryRoute(deliveryId);
+            return ResponseEntity.ok(route);
+
+        } catch (Exception e) {
+            logger.error("Error getting delivery route: {}", e.getMessage(), e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(Map.of("error", "Error retrieving route"));
+        }
+    }
+
     @PostMapping("/{deliveryId}/rate")
     @PreAuthorize("hasAnyAuthority('ROLE_CLIENT','ROLE_INDIVIDUAL','ROLE_ENTERPRISE')")
     public ResponseEntity<?> rateDelivery(
@@ -3,6 +3,7 @@ package com.example.ExpedNow.controllers;
 import com.example.ExpedNow.config.WebSocketEventListener;
 import com.example.ExpedNow.dto.*;
 import com.example.ExpedNow.services.core.impl.ChatService;
+import com.example.ExpedNow.services.core.impl.TypingIndicatorThrottle;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.messaging.handler.annotation.MessageMapping;
@@ -22,6 +23,7 @@ public class WebSocketChatController {
     private final ChatService chatService;
     private final SimpMessagingTemplate messagingTemplate;
     private final WebSocketEventListener webSocketEventListener;
+    private final TypingIndicatorThrottle typingThrottle;
 
     @MessageMapping("/chat/send")
     public void sendMessage(@Payload ChatMessageRequest request, Authentication authentication) {
@@ -79,28 +81,22 @@ public class WebSocketChatController {
     @MessageMapping("/chat/typing")
     public void handleTyping(@Payload TypingIndicator indicator, Authentication authentication) {
         try {
+            String senderId = authentication.getName();
             log.debug("Typing indicator from: {} to: {} for delivery: {}",
-                    authentication.getName(), indicator.getReceiverId(), indicator.getDeliveryId());
+                    senderId, indicator.getReceiverId(), indicator.getDeliveryId());
 
-            WebSocketMessage wsMessage = new WebSocketMessage(
-                    WebSocketMessage.WebSocketMessageType.TYPING_START,
-                    indicator,
-                    indicator.getReceiverId(),
-                    indicator.getDeliveryId()
-            );
-
-            // Send typing indicator to receiver
-            if (webSocketEventListener.isUserOnline(indicator.getReceiverId())) {
-                messagingTemplate.convertAndSendToUser(
-                        indicator.getReceiverId(),
-                        "/queue/typing",
-                        wsMessage
-                );
-                log.debug("Typing indicator sent to: {}", indicator.getReceiverId());
-            } else {
-                log.debug("User {} is offline, typing indicator not sent", indicator.getReceiverId());
+            if (!typingThrottle.tryAcquire(senderId)) {
+                log.debug("Typing indicator from {} dropped by rate limit", senderId);
+                return;
             }
 
+            // Only the first event of a typing streak is forwarded; the rest are coalesced
+            TypingIndicator stopIndicator = new TypingIndicator(indicator.getSenderId(),
+                    indicator.getReceiverId(), indicator.getDeliveryId(), false);
+            typingThrottle.start(senderId, indicator.getDeliveryId(),
+                    () -> sendTypingFrame(indicator, WebSocketMessage.WebSocketMessageType.TYPING_START),
+                    () -> sendTypingFrame(stopIndicator, WebSocketMessage.WebSocketMessageType.TYPING_STOP));
+
         } catch (Exception e) {
             log.error("Error handling typing indicator from {}: {}",
                     authentication.getName(), e.getMessage(), e);
@@ -110,31 +106,46 @@ public class WebSocketChatController {
     @MessageMapping("/chat/stop-typing")
     public void handleStopTyping(@Payload TypingIndicator indicator, Authentication authentication) {
         try {
+            String senderId = authentication.getName();
             log.debug("Stop typing from: {} to: {} for delivery: {}",
-                    authentication.getName(), indicator.getReceiverId(), indicator.getDeliveryId());
-
-            WebSocketMessage wsMessage = new WebSocketMessage(
-                    WebSocketMessage.WebSocketMessageType.TYPING_STOP,
-                    indicator,
-                    indicator.getReceiverId(),
-                    indicator.getDeliveryId()
-            );
+                    senderId, indicator.getReceiverId(), indicator.getDeliveryId());
 
-            if (webSocketEventListener.isUserOnline(indicator.getReceiverId())) {
-                messagingTemplate.convertAndSendToUser(
-                        indicator.getReceiverId(),
-                        "/queue/typing",
-                        wsMessage
-                );
-                log.debug("Stop typing sent to: {}", indicator.getReceiverId());
+            if (!typingThrottle.tryAcquire(senderId)) {
+                log.debug("Stop typing from {} dropped by rate limit", senderId);
+                return;
             }
 
+            // Sent at the end of the window unless typing resumes; the idle timeout covers a dropped stop
+            typingThrottle.stop(senderId, indicator.getDeliveryId(),
+                    () -> sendTypingFrame(indicator, WebSocketMessage.WebSocketMessageType.TYPING_STOP));
+
         } catch (Exception e) {
             log.error("Error handling stop typing from {}: {}",
                     authentication.getName(), e.getMessage(), e);
         }
     }
 
+    private void sendTypingFrame(TypingIndicator indicator, WebSocketMessage.WebSocketMessageType type) {
+        WebSocketMessage wsMessage = new WebSocketMessage(
+                type,
+                indicator,
+                indicator.getReceiverId(),
+                indicator.getDeliveryId()
+        );
+
+        // Send typing indicator to receiver
+        if (webSocketEventListener.isUserOnline(indicator.getReceiverId())) {
+            messagingTemplate.convertAndSendToUser(
+                    indicator.getReceiverId(),
+                    "/queue/typing",
+                    wsMessage
+            );
+            log.debug("{} sent to: {}", type, indicator.getReceiverId());
+        } else {
+            log.debug("User {} is offline, typing indicator not sent", indicator.getReceiverId());
+        }
+    }
+
     // **اضافة جديدة** - Method للتأكد من الـ message delivery
     @MessageMapping("/chat/ping")
     public void handlePing(@Payload Map<String, Object> payload, Authentication authentication) {
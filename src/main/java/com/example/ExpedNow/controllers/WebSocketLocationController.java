@@ -0,0 +1,62 @@
+package com.example.ExpedNow.controllers;
+
+import com.example.ExpedNow.dto.LocationPingDTO;
+import com.example.ExpedNow.services.core.impl.LocationIngestService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.messaging.handler.annotation.MessageMapping;
+import org.springframework.messaging.handler.annotation.Payload;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.stereotype.Controller;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+
+@Controller
+@RequiredArgsConstructor
+@Slf4j
+public class WebSocketLocationController {
+
+    // Same couriers the REST location endpoints admit; STOMP principals carry the token's mapped role names
+    private static final Set<String> COURIER_AUTHORITIES = Set.of(
+            "DELIVERY", "ROLE_PROFESSIONAL", "ROLE_TEMPORARY", "ROLE_DELIVERY_PERSON");
+
+    private final LocationIngestService locationIngestService;
+
+    // Fire-and-forget GPS ping from a courier's open socket; persisted by the ingest flusher
+    @MessageMapping("/location/update")
+    public void updateLocation(@Payload LocationPingDTO ping, Authentication authentication) {
+        if (!isCourier(authentication)) {
+            log.debug("Location ping rejected from non-courier {}", authentication != null ? authentication.getName() : null);
+            return;
+        }
+        Date timestamp = ping.getTimestamp() != null ? new Date(ping.getTimestamp()) : null;
+        if (!locationIngestService.submit(authentication.getName(), ping.getLatitude(), ping.getLongitude(), timestamp)) {
+            log.debug("Location ping from {} rejected", authentication.getName());
+        }
+    }
+
+    @MessageMapping("/location/batch")
+    public void updateLocations(@Payload List<LocationPingDTO> pings, Authentication authentication) {
+        if (!isCourier(authentication)) {
+            log.debug("Location batch rejected from non-courier {}", authentication != null ? authentication.getName() : null);
+            return;
+        }
+        int accepted = locationIngestService.submitBatch(authentication.getName(), pings);
+        log.debug("Accepted {} of {} location pings from {}", accepted, pings.size(), authentication.getName());
+    }
+
+    private static boolean isCourier(Authentication authentication) {
+        if (authentication == null) {
+            return false;
+        }
+        for (GrantedAuthority authority : authentication.getAuthorities()) {
+            if (COURIER_AUTHORITIES.contains(authority.getAuthority())) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
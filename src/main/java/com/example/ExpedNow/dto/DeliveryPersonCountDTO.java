@@ -0,0 +1,16 @@
+package com.example.ExpedNow.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Result row of the "count per delivery person" aggregations ($group on the delivery person id)
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class DeliveryPersonCountDTO {
+    private String id;
+    private long count;
+}
@@ -0,0 +1,14 @@
+package com.example.ExpedNow.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class LocationPingDTO {
+    private double latitude;
+    private double longitude;
+    private Long timestamp; // Device time in epoch millis, server time when absent
+}
@@ -0,0 +1,19 @@
+package com.example.ExpedNow.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * One page of chat history, newest first. nextCursor is passed back as "before" to load older messages.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class MessageHistoryDTO {
+    private List<MessageDTO> messages;
+    private String nextCursor;
+    private boolean hasMore;
+}
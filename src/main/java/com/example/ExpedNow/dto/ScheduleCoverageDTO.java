@@ -0,0 +1,34 @@
+package com.example.ExpedNow.dto;
+
+import com.example.ExpedNow.models.User;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Result of UserRepository.aggregateScheduleCoverage: fleet totals plus the couriers lacking a schedule
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ScheduleCoverageDTO {
+    private List<Totals> totals = new ArrayList<>(); // One row ($group with _id null), empty when there are no couriers
+    private List<User> withoutSchedule = new ArrayList<>();
+
+    public int getTotalDeliveryPersons() {
+        return totals.isEmpty() ? 0 : totals.get(0).getTotal();
+    }
+
+    public int getWithSchedule() {
+        return totals.isEmpty() ? 0 : totals.get(0).getWithSchedule();
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Totals {
+        private int total;
+        private int withSchedule;
+    }
+}
@@ -0,0 +1,23 @@
+package com.example.ExpedNow.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Date;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class TrackingFrameDTO {
+    private String deliveryId;
+    private String courierId;
+    private double latitude;
+    private double longitude;
+    private Date timestamp;
+    private String status;
+    private String target; // PICKUP while heading to the sender, DROPOFF once in transit
+    private double distanceRemainingKm;
+    private long etaSeconds;
+    private long sequence; // Increases with every position; clients can ignore out-of-order frames
+}
@@ -0,0 +1,28 @@
+package com.example.ExpedNow.events;
+
+/**
+ * Published when a new delivery request could not be assigned right away
+ */
+public class DeliveryCreatedEvent {
+    private final String deliveryId;
+    private final double pickupLatitude;
+    private final double pickupLongitude;
+
+    public DeliveryCreatedEvent(String deliveryId, double pickupLatitude, double pickupLongitude) {
+        this.deliveryId = deliveryId;
+        this.pickupLatitude = pickupLatitude;
+        this.pickupLongitude = pickupLongitude;
+    }
+
+    public String getDeliveryId() {
+        return deliveryId;
+    }
+
+    public double getPickupLatitude() {
+        return pickupLatitude;
+    }
+
+    public double getPickupLongitude() {
+        return pickupLongitude;
+    }
+}
@@ -0,0 +1,16 @@
+package com.example.ExpedNow.events;
+
+/**
+ * Published when a delivery person becomes available again (mission completed, availability switched on)
+ */
+public class DeliveryPersonFreedEvent {
+    private final String deliveryPersonId;
+
+    public DeliveryPersonFreedEvent(String deliveryPersonId) {
+        this.deliveryPersonId = deliveryPersonId;
+    }
+
+    public String getDeliveryPersonId() {
+        return deliveryPersonId;
+    }
+}
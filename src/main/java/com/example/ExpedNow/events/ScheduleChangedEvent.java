@@ -0,0 +1,16 @@
+package com.example.ExpedNow.events;
+
+/**
+ * Published after a user's availability schedule has been saved
+ */
+public class ScheduleChangedEvent {
+    private final String userId;
+
+    public ScheduleChangedEvent(String userId) {
+        this.userId = userId;
+    }
+
+    public String getUserId() {
+        return userId;
+    }
+}
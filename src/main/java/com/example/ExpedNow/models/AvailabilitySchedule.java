@@ -1,14 +1,14 @@
 package com.example.ExpedNow.models;
 
+import org.springframework.data.annotation.Transient;
 import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.Document;
+import org.springframework.data.mongodb.core.mapping.Field;
 
 import java.time.DayOfWeek;
 import java.time.LocalDate;
 import java.time.LocalTime;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.TreeMap;
+import java.util.*;
 
 @Document(collection = "Schedule")
 public class AvailabilitySchedule {
@@ -16,13 +16,21 @@ public class AvailabilitySchedule {
     private String id;
     private String userId;
     private Map<DayOfWeek, DaySchedule> weeklySchedule;
-    // Add monthly schedule mapping date to schedule
+
+    // Stored form of the date overrides: runs of consecutive dates with the same hours (see compactMonthlySchedule)
+    private List<ScheduleRange> monthlyRanges;
+
+    // Per-date map written before monthlyRanges existed; folded into the ranges on the next save
+    @Field("monthlySchedule")
+    private Map<LocalDate, DaySchedule> legacyMonthlySchedule;
+
+    // Add monthly schedule mapping date to schedule (expanded from the ranges on first access)
+    @Transient
     private Map<LocalDate, DaySchedule> monthlySchedule;
 
     // Default constructor
     public AvailabilitySchedule() {
         this.weeklySchedule = new HashMap<>();
-        this.monthlySchedule = new TreeMap<>(); // TreeMap to keep dates ordered
     }
 
     // Constructor with userId
@@ -64,6 +72,9 @@ public class AvailabilitySchedule {
 
     // New getters and setters for monthly schedule
     public Map<LocalDate, DaySchedule> getMonthlySchedule() {
+        if (monthlySchedule == null) {
+            monthlySchedule = expandMonthlySchedule();
+        }
         return monthlySchedule;
     }
 
@@ -71,6 +82,44 @@ public class AvailabilitySchedule {
         this.monthlySchedule = monthlySchedule;
     }
 
+    /**
+     * Drop overrides before keepFrom and re-encode the rest as ranges; called before every save
+     */
+    public void compactMonthlySchedule(LocalDate keepFrom) {
+        TreeMap<LocalDate, DaySchedule> dates = new TreeMap<>(getMonthlySchedule());
+        dates.headMap(keepFrom).clear();
+
+        List<ScheduleRange> ranges = new ArrayList<>();
+        ScheduleRange current = null;
+        for (Map.Entry<LocalDate, DaySchedule> entry : dates.entrySet()) {
+            if (current != null && current.getTo().plusDays(1).equals(entry.getKey()) && current.hasSameHours(entry.getValue())) {
+                current.setTo(entry.getKey());
+            } else {
+                current = new ScheduleRange(entry.getKey(), entry.getKey(), entry.getValue());
+                ranges.add(current);
+            }
+        }
+
+        this.monthlyRanges = ranges;
+        this.legacyMonthlySchedule = null;
+        this.monthlySchedule = dates;
+    }
+
+    private Map<LocalDate, DaySchedule> expandMonthlySchedule() {
+        TreeMap<LocalDate, DaySchedule> dates = new TreeMap<>(); // TreeMap to keep dates ordered
+        if (legacyMonthlySchedule != null) {
+            dates.putAll(legacyMonthlySchedule);
+        }
+        if (monthlyRanges != null) {
+            for (ScheduleRange range : monthlyRanges) {
+                for (LocalDate date = range.getFrom(); !date.isAfter(range.getTo()); date = date.plusDays(1)) {
+                    dates.put(date, new DaySchedule(range.isWorking(), range.getStartTime(), range.getEndTime()));
+                }
+            }
+        }
+        return dates;
+    }
+
     // Check if user is available at a specific day and time
     public boolean isAvailable(DayOfWeek day, LocalTime time) {
         DaySchedule schedule = weeklySchedule.get(day);
@@ -92,7 +141,7 @@ public class AvailabilitySchedule {
     // Check if user is available on a specific date and time
     public boolean isAvailable(LocalDate date, LocalTime time) {
         // First check if there's a specific schedule for this date
-        DaySchedule specificSchedule = monthlySchedule.get(date);
+        DaySchedule specificSchedule = getMonthlySchedule().get(date);
 
         if (specificSchedule != null) {
             // If there's a specific schedule for this date, use it
@@ -155,4 +204,72 @@ public class AvailabilitySchedule {
             this.endTime = endTime;
         }
     }
+
+    // Consecutive dates [from, to] sharing one day schedule
+    public static class ScheduleRange {
+        private LocalDate from;
+        private LocalDate to;
+        private boolean working;
+        private LocalTime startTime;
+        private LocalTime endTime;
+
+        // Default constructor
+        public ScheduleRange() {
+        }
+
+        public ScheduleRange(LocalDate from, LocalDate to, DaySchedule day) {
+            this.from = from;
+            this.to = to;
+            this.working = day.isWorking();
+            this.startTime = day.getStartTime();
+            this.endTime = day.getEndTime();
+        }
+
+        public boolean hasSameHours(DaySchedule day) {
+            return working == day.isWorking()
+                    && Objects.equals(startTime, day.getStartTime())
+                    && Objects.equals(endTime, day.getEndTime());
+        }
+
+        // Getters and setters
+        public LocalDate getFrom() {
+            return from;
+        }
+
+        public void setFrom(LocalDate from) {
+            this.from = from;
+        }
+
+        public LocalDate getTo() {
+            return to;
+        }
+
+        public void setTo(LocalDate to) {
+            this.to = to;
+        }
+
+        public boolean isWorking() {
+            return working;
+        }
+
+        public void setWorking(boolean working) {
+            this.working = working;
+        }
+
+        public LocalTime getStartTime() {
+            return startTime;
+        }
+
+        public void setStartTime(LocalTime startTime) {
+            this.startTime = startTime;
+        }
+
+        public LocalTime getEndTime() {
+            return endTime;
+        }
+
+        public void setEndTime(LocalTime endTime) {
+            this.endTime = endTime;
+        }
+    }
 }
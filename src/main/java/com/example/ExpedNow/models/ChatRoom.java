@@ -7,7 +7,9 @@ import lombok.AllArgsConstructor;
 import org.springframework.data.annotation.Id;
 import org.springframework.data.mongodb.core.mapping.Document;
 import java.time.LocalDateTime;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 @Document(collection = "chat_rooms")
 @Data
@@ -32,10 +34,14 @@ public class ChatRoom {
     private LocalDateTime lastMessageAt;
     private String lastMessageContent;
 
+    // Unread messages per participant id, $inc'd on send and reset when the participant reads
+    private Map<String, Integer> unreadCounts;
+
     // Custom constructor to set default values
     public ChatRoom(String id, String deliveryId, String clientId, String deliveryPersonId,
                     List<String> participants, boolean isActive, LocalDateTime createdAt,
-                    LocalDateTime updatedAt, LocalDateTime lastMessageAt, String lastMessageContent) {
+                    LocalDateTime updatedAt, LocalDateTime lastMessageAt, String lastMessageContent,
+                    Map<String, Integer> unreadCounts) {
         this.id = id;
         this.deliveryId = deliveryId;
         this.clientId = clientId;
@@ -46,6 +52,7 @@ public class ChatRoom {
         this.updatedAt = updatedAt != null ? updatedAt : LocalDateTime.now();
         this.lastMessageAt = lastMessageAt;
         this.lastMessageContent = lastMessageContent;
+        this.unreadCounts = unreadCounts != null ? unreadCounts : new HashMap<>();
     }
 
     // Default constructor with default values
@@ -53,5 +60,14 @@ public class ChatRoom {
         this.createdAt = LocalDateTime.now();
         this.updatedAt = LocalDateTime.now();
         this.isActive = true;
+        this.unreadCounts = new HashMap<>();
+    }
+
+    public int getUnreadCount(String userId) {
+        if (unreadCounts == null || userId == null) {
+            return 0;
+        }
+        Integer count = unreadCounts.get(userId);
+        return count != null ? Math.max(0, count) : 0;
     }
 }
\ No newline at end of file
@@ -3,9 +3,13 @@ package com.example.ExpedNow.models;
 import com.example.ExpedNow.models.enums.PackageType;
 import com.example.ExpedNow.models.enums.PaymentMethod;
 import com.example.ExpedNow.models.enums.PaymentStatus;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.Data;
 import org.springframework.data.annotation.Id;
 import org.springframework.data.annotation.LastModifiedDate;
+import org.springframework.data.mongodb.core.geo.GeoJsonPoint;
+import org.springframework.data.mongodb.core.index.GeoSpatialIndexType;
+import org.springframework.data.mongodb.core.index.GeoSpatialIndexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 import org.springframework.data.mongodb.core.mapping.Field;
 import org.springframework.data.mongodb.core.mapping.FieldType;
@@ -81,12 +85,34 @@ public class DeliveryRequest {
 
     private double pickupLongitude;
 
+    // GeoJSON copy of the pickup coordinates for the 2dsphere index, kept in sync by the setters below
+    @JsonIgnore
+    @GeoSpatialIndexed(type = GeoSpatialIndexType.GEO_2DSPHERE)
+    private GeoJsonPoint pickupLocation;
+
     private double deliveryLatitude;
     @LastModifiedDate
     private LocalDateTime updatedAt;
     private double deliveryLongitude;
 
 
+    public void setPickupLatitude(double pickupLatitude) {
+        this.pickupLatitude = pickupLatitude;
+        syncPickupLocation();
+    }
+
+    public void setPickupLongitude(double pickupLongitude) {
+        this.pickupLongitude = pickupLongitude;
+        syncPickupLocation();
+    }
+
+    private void syncPickupLocation() {
+        // (0, 0) is the "not set" marker used across the assignment code
+        this.pickupLocation = (pickupLatitude == 0 && pickupLongitude == 0)
+                ? null
+                : new GeoJsonPoint(pickupLongitude, pickupLatitude);
+    }
+
     public enum DeliveryReqStatus {
         PENDING,
         ASSIGNED,
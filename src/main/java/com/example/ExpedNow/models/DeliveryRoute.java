@@ -0,0 +1,44 @@
+package com.example.ExpedNow.models;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Compacted (Douglas-Peucker simplified) track of a finished delivery, kept after the raw history expires
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Document(collection = "delivery_routes")
+public class DeliveryRoute {
+    @Id
+    private String deliveryId;
+
+    private String courierId;
+
+    private List<RoutePoint> points = new ArrayList<>();
+
+    private int rawPointCount;
+
+    private Date startedAt;
+
+    private Date endedAt;
+
+    private Date compactedAt;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class RoutePoint {
+        private double latitude;
+        private double longitude;
+        private Date timestamp;
+    }
+}
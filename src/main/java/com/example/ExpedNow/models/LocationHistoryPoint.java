@@ -0,0 +1,42 @@
+package com.example.ExpedNow.models;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+import org.springframework.data.mongodb.core.mapping.TimeSeries;
+import org.springframework.data.mongodb.core.timeseries.Granularity;
+
+import java.util.Date;
+
+/**
+ * One recorded courier position in the append-only location history (time-series collection).
+ * Raw points expire after the retention window; finished delivery tracks are kept as a DeliveryRoute.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Document(collection = "location_history")
+@TimeSeries(timeField = "timestamp", metaField = "source", granularity = Granularity.SECONDS)
+public class LocationHistoryPoint {
+    @Id
+    private String id;
+
+    private Date timestamp;
+
+    private Source source;
+
+    private double latitude;
+
+    private double longitude;
+
+    // Time-series meta field: points are bucketed per courier and delivery
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Source {
+        private String courierId;
+        private String deliveryId; // Null while the courier has no active delivery
+    }
+}
@@ -2,6 +2,9 @@ package com.example.ExpedNow.models;
 
 import lombok.Data;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.geo.GeoJsonPoint;
+import org.springframework.data.mongodb.core.index.GeoSpatialIndexType;
+import org.springframework.data.mongodb.core.index.GeoSpatialIndexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 import java.util.Date;
@@ -18,5 +21,9 @@ public class UserLocation {
 
     private double longitude;
 
+    // GeoJSON copy of latitude/longitude backing the 2dsphere index (coordinates are [longitude, latitude])
+    @GeoSpatialIndexed(type = GeoSpatialIndexType.GEO_2DSPHERE)
+    private GeoJsonPoint location;
+
     private Date lastUpdated;
 }
@@ -4,6 +4,7 @@ import com.example.ExpedNow.models.AvailabilitySchedule;
 import org.springframework.data.mongodb.repository.MongoRepository;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -11,4 +12,5 @@ import java.util.Optional;
 public interface AvailabilityRepository extends MongoRepository<AvailabilitySchedule, String> {
     List<AvailabilitySchedule> findAllByUserId(String userId);
     Optional<AvailabilitySchedule> findByUserId(String userId);
+    List<AvailabilitySchedule> findByUserIdIn(Collection<String> userIds);
 }
\ No newline at end of file
@@ -1,5 +1,6 @@
 package com.example.ExpedNow.repositories;
 
+import com.example.ExpedNow.dto.DeliveryPersonCountDTO;
 import com.example.ExpedNow.models.DeliveryRequest;
 import org.springframework.data.domain.Sort;
 import org.springframework.data.mongodb.repository.Aggregation;
@@ -10,6 +11,7 @@ import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -40,6 +42,33 @@ public interface DeliveryReqRepository extends MongoRepository<DeliveryRequest,
     @Query("{ 'deliveryPersonId': ?0, 'status': { $in: ['ASSIGNED', 'APPROVED', 'IN_TRANSIT'] } }")
     List<DeliveryRequest> findActiveDeliveriesByDeliveryPerson(String deliveryPersonId);
 
+    @Query(value = "{ 'deliveryPersonId': ?0, 'status': { $in: ['ASSIGNED', 'APPROVED', 'IN_TRANSIT'] } }", count = true)
+    long countActiveDeliveriesByDeliveryPerson(String deliveryPersonId);
+
+    /**
+     * Count active deliveries (ASSIGNED, APPROVED, IN_TRANSIT) for a batch of delivery persons in one round-trip
+     */
+    @Aggregation(pipeline = {
+            "{ $match: { 'deliveryPersonId': { $in: ?0 }, 'status': { $in: ['ASSIGNED', 'APPROVED', 'IN_TRANSIT'] } } }",
+            "{ $group: { '_id': '$deliveryPersonId', 'count': { $sum: 1 } } }"
+    })
+    List<DeliveryPersonCountDTO> countActiveDeliveriesByDeliveryPersons(Collection<String> deliveryPersonIds);
+
+    /**
+     * Deliveries a batch of delivery persons is carrying or completed since the given time,
+     * only the fields needed to tag location history
+     */
+    @Query(value = "{ 'deliveryPersonId': { $in: ?0 }, $or: [ { 'status': { $in: ['ASSIGNED', 'APPROVED', 'IN_TRANSIT'] } }, { 'completedAt': { $gte: ?1 } } ] }",
+            fields = "{ 'deliveryPersonId': 1, 'status': 1, 'assignedAt': 1, 'completedAt': 1 }")
+    List<DeliveryRequest> findDeliveriesCarriedSince(Collection<String> deliveryPersonIds, LocalDateTime since);
+
+    /**
+     * Unassigned pending deliveries around a point, nearest pickup first (2dsphere index on 'pickupLocation')
+     */
+    @Query("{ 'status': 'PENDING', 'deliveryPersonId': null, " +
+            "'pickupLocation': { $nearSphere: { $geometry: { type: 'Point', coordinates: [?0, ?1] }, $maxDistance: ?2 } } }")
+    List<DeliveryRequest> findPendingDeliveriesNear(double longitude, double latitude, double maxDistanceMeters);
+
     @Query("{ 'vehicleId': ?0 }")
     List<DeliveryRequest> findByVehicleId(String vehicleId);
 
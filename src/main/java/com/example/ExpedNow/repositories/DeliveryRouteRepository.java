@@ -0,0 +1,7 @@
+package com.example.ExpedNow.repositories;
+
+import com.example.ExpedNow.models.DeliveryRoute;
+import org.springframework.data.mongodb.repository.MongoRepository;
+
+public interface DeliveryRouteRepository extends MongoRepository<DeliveryRoute, String> {
+}
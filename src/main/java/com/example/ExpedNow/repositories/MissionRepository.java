@@ -1,12 +1,15 @@
 package com.example.ExpedNow.repositories;
 
+import com.example.ExpedNow.dto.DeliveryPersonCountDTO;
 import com.example.ExpedNow.models.Mission;
+import org.bson.types.ObjectId;
 import org.springframework.data.mongodb.repository.Aggregation;
 import org.springframework.data.mongodb.repository.MongoRepository;
 import org.springframework.data.mongodb.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -53,6 +56,16 @@ public interface MissionRepository extends MongoRepository<Mission, String> {
     @Query(value = "{ 'deliveryPerson.$id': ObjectId(?0), 'status': { '$in': ['PENDING', 'IN_PROGRESS'] } }", count = true)
     long countActiveMissionsByDeliveryPersonId(String deliveryPersonId);
 
+    /**
+     * Count active missions (PENDING or IN_PROGRESS) for a batch of delivery persons in one round-trip.
+     * The DBRef id is read with $getField because '$deliveryPerson.$id' is not a valid field path.
+     */
+    @Aggregation(pipeline = {
+            "{ '$match': { 'deliveryPerson.$id': { '$in': ?0 }, 'status': { '$in': ['PENDING', 'IN_PROGRESS'] } } }",
+            "{ '$group': { '_id': { '$getField': { 'field': { '$literal': '$id' }, 'input': '$deliveryPerson' } }, 'count': { '$sum': 1 } } }"
+    })
+    List<DeliveryPersonCountDTO> countActiveMissionsByDeliveryPersonIds(Collection<ObjectId> deliveryPersonIds);
+
     /**
      * Check if delivery person has any missions with specific statuses
      */
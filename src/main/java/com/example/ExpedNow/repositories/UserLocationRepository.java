@@ -1,11 +1,22 @@
 package com.example.ExpedNow.repositories;
 
 import com.example.ExpedNow.models.UserLocation;
+import org.springframework.data.mongodb.repository.Aggregation;
 import org.springframework.data.mongodb.repository.MongoRepository;
 
+import java.util.List;
 import java.util.Optional;
 
 public interface UserLocationRepository extends MongoRepository<UserLocation, String> {
 
     Optional<UserLocation> findByUserId(String userId);
+
+    /**
+     * Nearest stored locations to a point using the 2dsphere index on 'location'
+     */
+    @Aggregation(pipeline = {
+            "{ $geoNear: { near: { type: 'Point', coordinates: [?0, ?1] }, distanceField: 'distanceMeters', maxDistance: ?2, spherical: true } }",
+            "{ $limit: ?3 }"
+    })
+    List<UserLocation> findNearest(double longitude, double latitude, double maxDistanceMeters, int limit);
 }
\ No newline at end of file
@@ -1,5 +1,6 @@
 package com.example.ExpedNow.repositories;
 
+import com.example.ExpedNow.dto.ScheduleCoverageDTO;
 import com.example.ExpedNow.models.enums.Role;
 import com.example.ExpedNow.models.User;
 import org.springframework.data.mongodb.repository.Aggregation;
@@ -22,6 +23,36 @@ public interface UserRepository extends MongoRepository<User, String> {
     List<User> findByRolesInAndEnabled(List<Role> roles, boolean enabled);
     List<User> findAllByRolesContaining(Role role);
 
+    // Only the names, for labelling chat rooms and messages in bulk
+    @Query(value = "{ '_id': { $in: ?0 } }", fields = "{ 'firstName': 1, 'lastName': 1 }")
+    List<User> findNamesByIdIn(Collection<String> ids);
+
+    // Only the flags that decide whether a user can be dispatched
+    @Query(value = "{ 'roles': ?0 }", fields = "{ 'enabled': 1, 'available': 1 }")
+    List<User> findDispatchFlagsByRole(Role role);
+
+    /**
+     * Schedule coverage of the courier fleet in one round-trip. A courier has a schedule when a weekly day is
+     * working or it has date overrides (same rule as AvailabilityServiceImpl.hasExistingSchedule).
+     */
+    @Aggregation(pipeline = {
+            "{ $match: { 'roles': 'ROLE_DELIVERY_PERSON' } }",
+            "{ $addFields: { 'uid': { $toString: '$_id' } } }",
+            "{ $lookup: { from: 'Schedule', localField: 'uid', foreignField: 'userId', as: 'schedules', pipeline: [" +
+                    "{ $project: { '_id': 0, 'hasSchedule': { $or: [" +
+                    "{ $anyElementTrue: [ { $map: { input: { $objectToArray: { $ifNull: ['$weeklySchedule', {}] } }, in: { $eq: ['$$this.v.working', true] } } } ] }, " +
+                    "{ $gt: [ { $size: { $ifNull: ['$monthlyRanges', []] } }, 0 ] }, " +
+                    "{ $gt: [ { $size: { $objectToArray: { $ifNull: ['$monthlySchedule', {}] } } }, 0 ] }" +
+                    "] } } }, " +
+                    "{ $match: { 'hasSchedule': true } }, { $limit: 1 } ] } }",
+            "{ $project: { 'email': 1, 'firstName': 1, 'lastName': 1, 'enabled': 1, 'available': 1, " +
+                    "'hasSchedule': { $gt: [ { $size: '$schedules' }, 0 ] } } }",
+            "{ $facet: { " +
+                    "'totals': [ { $group: { '_id': null, 'total': { $sum: 1 }, 'withSchedule': { $sum: { $cond: ['$hasSchedule', 1, 0] } } } } ], " +
+                    "'withoutSchedule': [ { $match: { 'hasSchedule': false } }, { $project: { 'hasSchedule': 0 } } ] } }"
+    })
+    ScheduleCoverageDTO aggregateScheduleCoverage();
+
     // Add this method for the BonusService
     @Query("{ 'roles': ?0 }")
     List<User> findByRole(String role);
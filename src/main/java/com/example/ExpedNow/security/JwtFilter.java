@@ -30,10 +30,13 @@ public class JwtFilter extends OncePerRequestFilter {
 
     private final JwtUtil jwtUtil;
     private final UserDetailsService userDetailsService;
+    private final PrincipalCache principalCache;
 
-    public JwtFilter(JwtUtil jwtUtil, @Qualifier("customUserDetailsService") UserDetailsService userDetailsService) {
+    public JwtFilter(JwtUtil jwtUtil, @Qualifier("customUserDetailsService") UserDetailsService userDetailsService,
+                     PrincipalCache principalCache) {
         this.jwtUtil = jwtUtil;
         this.userDetailsService = userDetailsService;
+        this.principalCache = principalCache;
     }
 
     @Override
@@ -43,8 +46,8 @@ public class JwtFilter extends OncePerRequestFilter {
         final String requestPath = request.getRequestURI();
         logger.debug("Processing request path: {}", requestPath);
 
-        // Skip filter for public endpoints - including uploads and health check
-        if (isPublicEndpoint(requestPath)) {
+        // Skip filter for public endpoints - same list SecurityConfig permits
+        if (PublicEndpoints.matches(request.getMethod(), requestPath)) {
             logger.debug("Skipping JWT filter for public endpoint: {}", requestPath);
             filterChain.doFilter(request, response);
             return;
@@ -62,19 +65,17 @@ public class JwtFilter extends OncePerRequestFilter {
 
         String token = authHeader.substring(7);
         try {
-            String email = jwtUtil.getEmailFromToken(token);
+            // Parsing verifies signature and expiry; an invalid token throws and is rejected below
+            Claims claims = jwtUtil.getAllClaimsFromToken(token);
+            String email = claims.get("email", String.class);
 
             if (email != null && SecurityContextHolder.getContext().getAuthentication() == null) {
-                UserDetails userDetails = userDetailsService.loadUserByUsername(email);
-                if (jwtUtil.validateToken(token)) {
-                    UsernamePasswordAuthenticationToken authToken =
-                            new UsernamePasswordAuthenticationToken(userDetails, null, userDetails.getAuthorities());
-                    authToken.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
-                    SecurityContextHolder.getContext().setAuthentication(authToken);
-                    logger.debug("Successfully authenticated user: {}", email);
-                } else {
-                    logger.warn("Invalid JWT token for email: {}", email);
-                }
+                UserDetails userDetails = resolvePrincipal(claims.getSubject(), email);
+                UsernamePasswordAuthenticationToken authToken =
+                        new UsernamePasswordAuthenticationToken(userDetails, null, userDetails.getAuthorities());
+                authToken.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
+                SecurityContextHolder.getContext().setAuthentication(authToken);
+                logger.debug("Successfully authenticated user: {}", email);
             }
         } catch (Exception e) {
             logger.error("Cannot set user authentication: {}", e.getMessage());
@@ -87,61 +88,19 @@ public class JwtFilter extends OncePerRequestFilter {
         filterChain.doFilter(request, response);
     }
 
-    private boolean isPublicEndpoint(String requestPath) {
-        // Static resources
-        if (requestPath.startsWith("/uploads/")) {
-            return true;
+    // The token only carries mapped role names, so authorities and account state come from the user
+    // document, loaded once and then served from the principal cache
+    private UserDetails resolvePrincipal(String userId, String email) {
+        CustomUserDetailsService.CustomUserDetails cached = principalCache.get(userId);
+        if (cached != null && email.equals(cached.getUsername())) {
+            return cached;
         }
-
-        // Auth endpoints
-        if (requestPath.startsWith("/api/auth/register") ||
-                requestPath.startsWith("/api/auth/login") ||
-                requestPath.startsWith("/api/auth/confirm-account") ||
-                requestPath.startsWith("/api/auth/forgot-password") ||
-                requestPath.startsWith("/api/auth/reset-password")) {
-            return true;
-        }
-
-        // OAuth2 endpoints
-        if (requestPath.startsWith("/oauth2/")) {
-            return true;
-        }
-
-        // API documentation
-        if (requestPath.startsWith("/v3/api-docs") ||
-                requestPath.startsWith("/swagger-ui")) {
-            return true;
-        }
-
-        // WebSocket
-        if (requestPath.startsWith("/ws/")) {
-            return true;
-        }
-
-        // AI health check
-        if (requestPath.equals("/api/ai/health")) {
-            return true;
-        }
-
-        // Pricing endpoints
-        if (requestPath.startsWith("/api/pricing/")) {
-            return true;
-        }
-
-        // Public AI chat
-        if (requestPath.equals("/api/ai/chat/public")) {
-            return true;
-        }
-
-        // WebSocket related paths
-        if (requestPath.startsWith("/topic/") ||
-                requestPath.startsWith("/app/") ||
-                requestPath.startsWith("/user/") ||
-                requestPath.startsWith("/queue/")) {
-            return true;
+        UserDetails userDetails = userDetailsService.loadUserByUsername(email);
+        if (userDetails instanceof CustomUserDetailsService.CustomUserDetails principal
+                && principal.getUserId().equals(userId)) {
+            principalCache.put(principal);
         }
-
-        return false;
+        return userDetails;
     }
 
     private Collection<GrantedAuthority> getAuthoritiesFromJwt(Claims claims) {
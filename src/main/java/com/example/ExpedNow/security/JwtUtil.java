@@ -10,8 +10,13 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
 import java.security.Key;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 @Component
@@ -19,21 +24,27 @@ public class JwtUtil {
     private final Key jwtSecretKey;
     private final long jwtExpirationMs;
     private final UserRepository userRepository;
+    private final JwtParser jwtParser;
+    private final int claimsCacheMaxSize;
+
+    // Verified claims keyed by SHA-256 of the token, valid until the token's own expiry
+    private final ConcurrentHashMap<String, Claims> verifiedClaims = new ConcurrentHashMap<>();
 
     public JwtUtil(@Value("${jwt.secret}") String secretKey,
                    @Value("${jwt.expirationMs}") long expirationMs,
+                   @Value("${jwt.claims-cache.max-size:10000}") int claimsCacheMaxSize,
                    UserRepository userRepository) {
         this.jwtSecretKey = Keys.hmacShaKeyFor(Decoders.BASE64.decode(secretKey));
         this.jwtExpirationMs = expirationMs;
+        this.claimsCacheMaxSize = Math.max(0, claimsCacheMaxSize);
         this.userRepository = userRepository;
+        this.jwtParser = Jwts.parserBuilder()
+                .setSigningKey(jwtSecretKey)
+                .build();
     }
 
     public Collection<? extends GrantedAuthority> getAuthoritiesFromToken(String token) {
-        Claims claims = Jwts.parserBuilder()
-                .setSigningKey(jwtSecretKey)
-                .build()
-                .parseClaimsJws(token)
-                .getBody();
+        Claims claims = getAllClaimsFromToken(token);
 
         List<String> roles = claims.get("roles", List.class);
         if (roles == null || roles.isEmpty()) {
@@ -45,12 +56,52 @@ public class JwtUtil {
                 .collect(Collectors.toList());
     }
 
+    /**
+     * Verified claims of the token. Repeated calls for the same token are served from memory until
+     * it expires; anything not in the cache goes through full signature verification.
+     */
     public Claims getAllClaimsFromToken(String token) {
-        return Jwts.parserBuilder()
-                .setSigningKey(jwtSecretKey)
-                .build()
-                .parseClaimsJws(token)
-                .getBody();
+        if (token == null || claimsCacheMaxSize == 0) {
+            return jwtParser.parseClaimsJws(token).getBody();
+        }
+        String key = hash(token);
+        Claims cached = verifiedClaims.get(key);
+        if (cached != null) {
+            if (cached.getExpiration().getTime() > System.currentTimeMillis()) {
+                return cached;
+            }
+            verifiedClaims.remove(key, cached);
+        }
+
+        // Throws for bad signatures and expired tokens, which are never cached
+        Claims claims = jwtParser.parseClaimsJws(token).getBody();
+        if (claims.getExpiration() != null) {
+            if (verifiedClaims.size() >= claimsCacheMaxSize) {
+                evictClaims();
+            }
+            verifiedClaims.put(key, claims);
+        }
+        return claims;
+    }
+
+    // Drop expired tokens first; if still full, drop arbitrary ones until there is space
+    private void evictClaims() {
+        long now = System.currentTimeMillis();
+        verifiedClaims.values().removeIf(claims -> claims.getExpiration().getTime() <= now);
+        Iterator<String> keys = verifiedClaims.keySet().iterator();
+        while (verifiedClaims.size() >= claimsCacheMaxSize && keys.hasNext()) {
+            keys.next();
+            keys.remove();
+        }
+    }
+
+    private static String hash(String token) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8));
+            return Base64.getEncoder().encodeToString(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
     }
 
     public String generateToken(String userId) {
@@ -92,10 +143,7 @@ public class JwtUtil {
 
     public boolean validateToken(String token) {
         try {
-            Jwts.parserBuilder()
-                    .setSigningKey(jwtSecretKey)
-                    .build()
-                    .parseClaimsJws(token);
+            getAllClaimsFromToken(token);
             return true;
         } catch (JwtException e) {
             return false;
@@ -103,20 +151,10 @@ public class JwtUtil {
     }
 
     public String getUserIdFromToken(String token) {
-        return Jwts.parserBuilder()
-                .setSigningKey(jwtSecretKey)
-                .build()
-                .parseClaimsJws(token)
-                .getBody()
-                .getSubject();
+        return getAllClaimsFromToken(token).getSubject();
     }
 
     public String getEmailFromToken(String token) {
-        return Jwts.parserBuilder()
-                .setSigningKey(jwtSecretKey)
-                .build()
-                .parseClaimsJws(token)
-                .getBody()
-                .get("email", String.class);
+        return getAllClaimsFromToken(token).get("email", String.class);
     }
 }
\ No newline at end of file
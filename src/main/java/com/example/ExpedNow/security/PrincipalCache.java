@@ -0,0 +1,87 @@
+package com.example.ExpedNow.security;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Authenticated principals keyed by user id, so JwtFilter only reads the user document on a miss.
+ * Entries expire after a short TTL and are evicted explicitly whenever roles, enabled/approved
+ * state or credentials change; the TTL bounds staleness for writes made on other instances.
+ */
+@Component
+public class PrincipalCache {
+
+    private final ConcurrentHashMap<String, Entry> principals = new ConcurrentHashMap<>();
+    private final long ttlMs;
+    private final int maxSize;
+
+    public PrincipalCache(@Value("${jwt.principal-cache.ttl-ms:60000}") long ttlMs,
+                          @Value("${jwt.principal-cache.max-size:10000}") int maxSize) {
+        this.ttlMs = Math.max(0, ttlMs);
+        this.maxSize = Math.max(1, maxSize);
+    }
+
+    public CustomUserDetailsService.CustomUserDetails get(String userId) {
+        if (userId == null) {
+            return null;
+        }
+        Entry entry = principals.get(userId);
+        if (entry == null) {
+            return null;
+        }
+        if (System.currentTimeMillis() - entry.loadedAt >= ttlMs) {
+            principals.remove(userId, entry);
+            return null;
+        }
+        return entry.principal;
+    }
+
+    public void put(CustomUserDetailsService.CustomUserDetails principal) {
+        if (principal == null || principal.getUserId() == null || ttlMs == 0) {
+            return;
+        }
+        if (principals.size() >= maxSize) {
+            makeRoom();
+        }
+        principals.put(principal.getUserId(), new Entry(principal, System.currentTimeMillis()));
+    }
+
+    public void evict(String userId) {
+        if (userId != null) {
+            principals.remove(userId);
+        }
+    }
+
+    public void evictAll() {
+        principals.clear();
+    }
+
+    public int size() {
+        return principals.size();
+    }
+
+    // Drop expired entries first; if the cache is still full, drop arbitrary ones until there is space
+    private void makeRoom() {
+        long now = System.currentTimeMillis();
+        principals.values().removeIf(entry -> now - entry.loadedAt >= ttlMs);
+        Iterator<Map.Entry<String, Entry>> iterator = principals.entrySet().iterator();
+        while (principals.size() >= maxSize && iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
+        }
+    }
+
+    private static class Entry {
+        private final CustomUserDetailsService.CustomUserDetails principal;
+        private final long loadedAt;
+
+        private Entry(CustomUserDetailsService.CustomUserDetails principal, long loadedAt) {
+            this.principal = principal;
+            this.loadedAt = loadedAt;
+        }
+    }
+}
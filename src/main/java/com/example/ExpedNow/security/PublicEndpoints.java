@@ -0,0 +1,189 @@
+package com.example.ExpedNow.security;
+
+import org.springframework.http.HttpMethod;
+import org.springframework.security.config.annotation.web.builders.HttpSecurity;
+import org.springframework.security.config.annotation.web.configurers.AuthorizeHttpRequestsConfigurer;
+
+import java.util.*;
+
+/**
+ * The single list of endpoints reachable without a token. SecurityConfig registers these as permitAll and
+ * JwtFilter skips token checks for them, so both always agree.
+ * Patterns are literal paths, optionally ending in "/**"; they are compiled once into a segment trie so
+ * the bypass check is one walk down the request path.
+ */
+public final class PublicEndpoints {
+
+    public static final List<Route> ROUTES = List.of(
+            // Static resources
+            Route.any("/uploads/**"),
+
+            // Sentry/test endpoints, health and error pages
+            Route.any("/public/**"),
+            Route.any("/api/test/**"),
+            Route.any("/test/**"),
+            Route.any("/actuator/health"),
+            Route.any("/error"),
+
+            // CORS preflight
+            Route.of(HttpMethod.OPTIONS, "/**"),
+
+            // Auth endpoints (the rest of /api/auth, e.g. /profile, needs a token)
+            Route.any("/api/auth/register/**"),
+            Route.any("/api/auth/login/**"),
+            Route.any("/api/auth/confirm-account/**"),
+            Route.any("/api/auth/forgot-password/**"),
+            Route.any("/api/auth/reset-password/**"),
+
+            // OAuth2 login flow
+            Route.any("/oauth2/**"),
+            Route.any("/login/**"),
+            Route.any("/logout/**"),
+
+            // WebSocket endpoint and STOMP destinations
+            Route.any("/ws/**"),
+            Route.any("/topic/**"),
+            Route.any("/app/**"),
+            Route.any("/user/**"),
+            Route.any("/queue/**"),
+
+            // API documentation
+            Route.any("/v3/api-docs/**"),
+            Route.any("/swagger-ui/**"),
+            Route.any("/swagger-ui.html"),
+            Route.any("/swagger-resources/**"),
+            Route.any("/webjars/**"),
+
+            // Pricing
+            Route.any("/api/pricing/**"),
+
+            // AI chatbot health and public chat
+            Route.of(HttpMethod.GET, "/api/ai/health"),
+            Route.of(HttpMethod.POST, "/api/ai/chat/public")
+    );
+
+    private static final Node ROOT = compile(ROUTES);
+
+    private PublicEndpoints() {
+    }
+
+    /**
+     * Whether the request can skip authentication
+     */
+    public static boolean matches(String method, String path) {
+        if (path == null) {
+            return false;
+        }
+        Node node = ROOT;
+        int start = 0;
+        int length = path.length();
+        while (true) {
+            if (node.prefix.allows(method)) {
+                return true;
+            }
+            while (start < length && path.charAt(start) == '/') {
+                start++;
+            }
+            if (start >= length) {
+                return node.exact.allows(method);
+            }
+            int end = path.indexOf('/', start);
+            if (end < 0) {
+                end = length;
+            }
+            node = node.children.get(path.substring(start, end));
+            if (node == null) {
+                return false;
+            }
+            start = end;
+        }
+    }
+
+    /**
+     * Register every public route as permitAll, ahead of the role rules
+     */
+    public static AuthorizeHttpRequestsConfigurer<HttpSecurity>.AuthorizationManagerRequestMatcherRegistry permitAll(
+            AuthorizeHttpRequestsConfigurer<HttpSecurity>.AuthorizationManagerRequestMatcherRegistry auth) {
+        for (Route route : ROUTES) {
+            if (route.method == null) {
+                auth.requestMatchers(route.pattern).permitAll();
+            } else {
+                auth.requestMatchers(route.method, route.pattern).permitAll();
+            }
+        }
+        return auth;
+    }
+
+    private static Node compile(List<Route> routes) {
+        Node root = new Node();
+        for (Route route : routes) {
+            String pattern = route.pattern;
+            boolean prefix = pattern.endsWith("/**");
+            String literal = prefix ? pattern.substring(0, pattern.length() - 3) : pattern;
+            if (!pattern.startsWith("/") || literal.contains("*") || literal.contains("{")) {
+                throw new IllegalArgumentException("Unsupported public endpoint pattern: " + pattern);
+            }
+            Node node = root;
+            for (String segment : literal.split("/")) {
+                if (!segment.isEmpty()) {
+                    node = node.children.computeIfAbsent(segment, key -> new Node());
+                }
+            }
+            // "/x/**" also matches "/x" itself, as in Spring's path patterns
+            node.exact.add(route.method);
+            if (prefix) {
+                node.prefix.add(route.method);
+            }
+        }
+        return root;
+    }
+
+    public static final class Route {
+        private final HttpMethod method; // null means any method
+        private final String pattern;
+
+        private Route(HttpMethod method, String pattern) {
+            this.method = method;
+            this.pattern = pattern;
+        }
+
+        public static Route any(String pattern) {
+            return new Route(null, pattern);
+        }
+
+        public static Route of(HttpMethod method, String pattern) {
+            return new Route(method, pattern);
+        }
+
+        public HttpMethod getMethod() {
+            return method;
+        }
+
+        public String getPattern() {
+            return pattern;
+        }
+    }
+
+    private static class Node {
+        private final Map<String, Node> children = new HashMap<>();
+        private final Methods exact = new Methods();
+        private final Methods prefix = new Methods();
+    }
+
+    private static class Methods {
+        private boolean any;
+        private final Set<String> methods = new HashSet<>();
+
+        private void add(HttpMethod method) {
+            if (method == null) {
+                any = true;
+            } else {
+                methods.add(method.name());
+            }
+        }
+
+        private boolean allows(String method) {
+            return any || (method != null && !methods.isEmpty() && methods.contains(method));
+        }
+    }
+}
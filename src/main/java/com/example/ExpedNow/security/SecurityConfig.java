@@ -73,51 +73,10 @@ public class SecurityConfig {
         return http
                 .cors(cors -> cors.configurationSource(corsConfigurationSource()))
                 .csrf(AbstractHttpConfigurer::disable)
-                .authorizeHttpRequests(auth -> auth
-                        // Static resources - MUST BE FIRST
-                        .requestMatchers("/uploads/**").permitAll()
-                        .requestMatchers("/uploads/vehicle-photos/**").permitAll()
-
-                        // PUBLIC ENDPOINTS - CRITICAL: MUST BE EARLY IN THE LIST
-                        .requestMatchers("/public/**").permitAll()                    // ✅ SENTRY TEST ENDPOINTS
-                        .requestMatchers("/api/test/**").permitAll()                  // ✅ GENERAL TEST ENDPOINTS
-                        .requestMatchers("/actuator/health").permitAll()              // ✅ HEALTH CHECK
-                        .requestMatchers("/error").permitAll()
-                        .requestMatchers("/test/**").permitAll()                      // أضف هذا للـ Sentry Test// ✅ ERROR PAGES
-                        .requestMatchers(HttpMethod.OPTIONS, "/**").permitAll()      // ✅ CORS PREFLIGHT
-
-                        // Auth & OAuth endpoints
-                        .requestMatchers(
-                                "/api/auth/**",
-                                "/oauth2/**",
-                                "/login/**",
-                                "/logout/**"
-                        ).permitAll()
-
-                        // WebSocket endpoints
-                        .requestMatchers(
-                                "/ws/**",
-                                "/topic/**",
-                                "/app/**",
-                                "/user/**",
-                                "/queue/**"
-                        ).permitAll()
-
-                        // API Documentation
-                        .requestMatchers(
-                                "/v3/api-docs/**",
-                                "/swagger-ui/**",
-                                "/swagger-ui.html",
-                                "/swagger-resources/**",
-                                "/webjars/**"
-                        ).permitAll()
-
-                        // Pricing endpoints
-                        .requestMatchers("/api/pricing/**").permitAll()
+                // Public endpoints first; the same list lets JwtFilter skip token checks
+                .authorizeHttpRequests(auth -> PublicEndpoints.permitAll(auth)
 
                         // AI Chatbot endpoints
-                        .requestMatchers(HttpMethod.GET, "/api/ai/health").permitAll()
-                        .requestMatchers(HttpMethod.POST, "/api/ai/chat/public").permitAll()
                         .requestMatchers("/api/ai/**").hasAnyAuthority(
                                 "CLIENT", "INDIVIDUAL", "ENTERPRISE",
                                 "DELIVERY_PERSON", "PROFESSIONAL", "TEMPORARY", "ADMIN"
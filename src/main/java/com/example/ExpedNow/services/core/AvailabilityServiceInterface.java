@@ -1,7 +1,9 @@
 package com.example.ExpedNow.services.core;
 
 import com.example.ExpedNow.dto.AvailabilityDTO;
+import com.example.ExpedNow.dto.ScheduleCoverageDTO;
 import com.example.ExpedNow.models.AvailabilitySchedule;
+import com.example.ExpedNow.models.User;
 import org.springframework.security.access.AccessDeniedException;
 
 import java.time.DayOfWeek;
@@ -32,4 +34,11 @@ public interface AvailabilityServiceInterface {
      * @return true if the user has a meaningful schedule, false otherwise
      */
     boolean hasExistingSchedule(String userId);
+
+    /**
+     * Totals and the couriers without a meaningful schedule, computed in one aggregation
+     * @return the (possibly cached) coverage of the courier fleet
+     */
+    ScheduleCoverageDTO getScheduleCoverage();
+    List<User> getDeliveryPersonsWithoutSchedule();
 }
\ No newline at end of file
@@ -1,8 +1,11 @@
 package com.example.ExpedNow.services.core;
 
 import com.example.ExpedNow.dto.LocationDTO;
+import com.example.ExpedNow.models.DeliveryRequest;
 import com.example.ExpedNow.models.UserLocation;
 
+import java.util.List;
+
 public interface LocationServiceInterface {
     /**
      * Updates a user's location in the system
@@ -18,4 +21,24 @@ public interface LocationServiceInterface {
      * Gets coordinates for an address (simplified - in a real app, this would call a geocoding API)
      */
     LocationDTO getCoordinates(String address);
-}
\ No newline at end of file
+
+    /**
+     * Gets the IDs of the k users closest to a point, nearest first
+     */
+    List<String> findNearestUsers(double latitude, double longitude, int k);
+
+    /**
+     * Gets the IDs of the users within radiusKm of a point, nearest first
+     */
+    List<String> findUsersWithinRadius(double latitude, double longitude, double radiusKm);
+
+    /**
+     * Gets the stored locations within radiusKm of a point, nearest first (database 2dsphere query)
+     */
+    List<UserLocation> findUserLocationsNear(double latitude, double longitude, double radiusKm, int limit);
+
+    /**
+     * Gets unassigned pending deliveries whose pickup is within radiusKm of a point, nearest first
+     */
+    List<DeliveryRequest> findPendingDeliveriesNear(double latitude, double longitude, double radiusKm);
+}
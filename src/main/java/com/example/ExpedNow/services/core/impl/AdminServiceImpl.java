@@ -8,6 +8,7 @@ import com.example.ExpedNow.models.Vehicle;
 import com.example.ExpedNow.models.enums.Role;
 import com.example.ExpedNow.repositories.UserRepository;
 import com.example.ExpedNow.repositories.VehicleRepository;
+import com.example.ExpedNow.security.PrincipalCache;
 import com.example.ExpedNow.services.core.AdminServiceInterface;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Primary;
@@ -31,12 +32,15 @@ public class AdminServiceImpl implements AdminServiceInterface {
     private final UserRepository userRepository;
     private final VehicleRepository vehicleRepository;
     private final MongoTemplate mongoTemplate; // Add MongoTemplate
+    private final PrincipalCache principalCache;
 
     @Autowired
-    public AdminServiceImpl(UserRepository userRepository, VehicleRepository vehicleRepository, MongoTemplate mongoTemplate) {
+    public AdminServiceImpl(UserRepository userRepository, VehicleRepository vehicleRepository, MongoTemplate mongoTemplate,
+                            PrincipalCache principalCache) {
         this.userRepository = userRepository;
         this.vehicleRepository = vehicleRepository;
         this.mongoTemplate = mongoTemplate; // Inject MongoTemplate
+        this.principalCache = principalCache;
     }
 
     @Override
@@ -184,6 +188,7 @@ public class AdminServiceImpl implements AdminServiceInterface {
 
         // Add status field to User model and implement status update logic
         userRepository.save(user);
+        principalCache.evict(userId);
     }
 
     @Override
@@ -203,6 +208,7 @@ public class AdminServiceImpl implements AdminServiceInterface {
 
         user.setRoles(roles);
         userRepository.save(user);
+        principalCache.evict(userId);
     }
 
     @Override
@@ -1,17 +1,29 @@
 package com.example.ExpedNow.services.core.impl;
 
+import com.example.ExpedNow.dto.DeliveryPersonCountDTO;
 import com.example.ExpedNow.models.DeliveryRequest;
 import com.example.ExpedNow.repositories.DeliveryReqRepository;
 import com.example.ExpedNow.services.core.AutomatedDeliveryAssignmentServiceInterface;
 import com.example.ExpedNow.services.core.DeliveryAssignmentServiceInterface;
+import com.example.ExpedNow.services.core.NotificationServiceInterface;
+import com.mongodb.bulk.BulkWriteResult;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Primary;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
-import java.util.List;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+import java.util.stream.Collectors;
 
 @Service
 @Primary
@@ -25,9 +37,24 @@ public class AutomatedDeliveryAssignmentServiceImpl implements AutomatedDelivery
     @Autowired
     private DeliveryAssignmentServiceInterface deliveryAssignmentService;
 
+    @Autowired
+    private DeliveryCandidateScoringService candidateScoringService;
+
+    @Autowired
+    private NotificationServiceInterface notificationService;
+
+    @Autowired
+    private ChatService chatService;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Value("${assignment.bulk.enabled:true}")
+    private boolean bulkMatchingEnabled;
+
     /**
-     * Automatically assigns pending deliveries to available delivery persons
-     * This method runs every 5 minutes
+     * Safety sweep for pending deliveries the event-driven DeliveryDispatchService missed
+     * (queue full, no courier at the time, node restart). This method runs every 5 minutes
      */
     @Override
     @Scheduled(fixedRate = 300000) // 5 minutes in milliseconds
@@ -44,6 +71,177 @@ public class AutomatedDeliveryAssignmentServiceImpl implements AutomatedDelivery
         }
 
         logger.info("📦 Found {} pending requests for assignment.", pendingDeliveries.size());
+
+        int assignedCount = bulkMatchingEnabled
+                ? assignInBulk(pendingDeliveries)
+                : assignOneByOne(pendingDeliveries);
+
+        logger.info("🏁 Assignment process completed. Successfully assigned {} out of {} requests.",
+                assignedCount, pendingDeliveries.size());
+    }
+
+    /**
+     * Solve the whole backlog against one courier snapshot and persist it with a single bulk write
+     */
+    private int assignInBulk(List<DeliveryRequest> pendingDeliveries) {
+        DeliveryCandidateScoringService.CandidateSnapshot snapshot = candidateScoringService.loadSnapshot();
+        List<DeliveryCandidateScoringService.PlannedAssignment> plan =
+                candidateScoringService.planAssignments(snapshot, pendingDeliveries);
+
+        if (plan.isEmpty()) {
+            logger.warn("⚠️ No available delivery person for any of the {} pending requests", pendingDeliveries.size());
+            return 0;
+        }
+
+        // Millisecond precision, as stored, so the reconciliation below can recognise this run's writes
+        LocalDateTime assignedAt = LocalDateTime.now().truncatedTo(ChronoUnit.MILLIS);
+        BulkOperations bulkOps = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, DeliveryRequest.class);
+        for (DeliveryCandidateScoringService.PlannedAssignment assignment : plan) {
+            // Guarded on PENDING/unassigned so a delivery picked up concurrently is left untouched
+            Query query = new Query(Criteria.where("_id").is(assignment.getDelivery().getId())
+                    .and("status").is(DeliveryRequest.DeliveryReqStatus.PENDING)
+                    .and("deliveryPersonId").is(null));
+            Update update = new Update()
+                    .set("status", DeliveryRequest.DeliveryReqStatus.ASSIGNED)
+                    .set("deliveryPersonId", assignment.getDeliveryPerson().getId())
+                    .set("assignedAt", assignedAt);
+            bulkOps.updateOne(query, update);
+        }
+
+        BulkWriteResult result;
+        try {
+            result = bulkOps.execute();
+        } catch (Exception e) {
+            logger.error("❌ Bulk assignment write failed: {}", e.getMessage(), e);
+            return 0;
+        }
+
+        List<DeliveryCandidateScoringService.PlannedAssignment> applied = plan;
+        if (result.getModifiedCount() < plan.size()) {
+            // Some deliveries changed under us; keep only the pairings this run wrote
+            Set<String> plannedIds = plan.stream()
+                    .map(assignment -> assignment.getDelivery().getId())
+                    .collect(Collectors.toSet());
+            applied = keepWritten(plan, deliveryRepository.findAllById(plannedIds), assignedAt);
+        }
+
+        List<DeliveryCandidateScoringService.PlannedAssignment> released = releaseOverCapacity(applied, assignedAt);
+        if (!released.isEmpty()) {
+            applied = new ArrayList<>(applied);
+            applied.removeAll(released);
+        }
+
+        for (DeliveryCandidateScoringService.PlannedAssignment assignment : applied) {
+            DeliveryRequest delivery = assignment.getDelivery();
+            String deliveryPersonId = assignment.getDeliveryPerson().getId();
+            delivery.setStatus(DeliveryRequest.DeliveryReqStatus.ASSIGNED);
+            delivery.setDeliveryPersonId(deliveryPersonId);
+            delivery.setAssignedAt(assignedAt);
+            logger.info("✔️ Successfully assigned delivery request ID: {} to delivery person ID: {}",
+                    delivery.getId(), deliveryPersonId);
+
+            try {
+                notificationService.sendAssignmentRequestNotification(deliveryPersonId, delivery);
+            } catch (Exception e) {
+                logger.error("Failed to send notification for delivery {}: {}", delivery.getId(), e.getMessage());
+            }
+
+            try {
+                chatService.getOrCreateChatRoom(delivery.getId(), delivery.getClientId(), deliveryPersonId);
+            } catch (Exception e) {
+                logger.error("Failed to create chat room for delivery {}: {}", delivery.getId(), e.getMessage());
+            }
+        }
+
+        return applied.size();
+    }
+
+    /**
+     * Dispatch workers assign against their own snapshots at the same time, so re-check every courier this
+     * run assigned to and release this run's excess, last planned first, as DeliveryAssignmentServiceImpl does
+     */
+    private List<DeliveryCandidateScoringService.PlannedAssignment> releaseOverCapacity(
+            List<DeliveryCandidateScoringService.PlannedAssignment> applied, LocalDateTime assignedAt) {
+        if (applied.isEmpty()) {
+            return List.of();
+        }
+        Set<String> courierIds = applied.stream()
+                .map(assignment -> assignment.getDeliveryPerson().getId())
+                .collect(Collectors.toSet());
+        Map<String, Long> activeCounts = new HashMap<>();
+        for (DeliveryPersonCountDTO row : deliveryRepository.countActiveDeliveriesByDeliveryPersons(courierIds)) {
+            activeCounts.put(row.getId(), row.getCount());
+        }
+
+        List<DeliveryCandidateScoringService.PlannedAssignment> excess = overCapacity(applied, activeCounts);
+        if (excess.isEmpty()) {
+            return excess;
+        }
+        BulkOperations bulkOps = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, DeliveryRequest.class);
+        for (DeliveryCandidateScoringService.PlannedAssignment assignment : excess) {
+            bulkOps.updateOne(
+                    new Query(Criteria.where("_id").is(assignment.getDelivery().getId())
+                            .and("status").is(DeliveryRequest.DeliveryReqStatus.ASSIGNED)
+                            .and("deliveryPersonId").is(assignment.getDeliveryPerson().getId())
+                            .and("assignedAt").is(assignedAt)),
+                    new Update()
+                            .set("status", DeliveryRequest.DeliveryReqStatus.PENDING)
+                            .unset("deliveryPersonId")
+                            .unset("assignedAt"));
+        }
+        try {
+            bulkOps.execute();
+            logger.info("Released {} bulk assignments that put couriers over capacity", excess.size());
+        } catch (Exception e) {
+            logger.error("❌ Failed to release over-capacity assignments: {}", e.getMessage(), e);
+        }
+        return excess;
+    }
+
+    /**
+     * The planned pairings this run wrote: still assigned to the planned courier with this run's assignedAt.
+     * A delivery another worker assigned to the same courier meanwhile has a different assignedAt.
+     */
+    static List<DeliveryCandidateScoringService.PlannedAssignment> keepWritten(
+            List<DeliveryCandidateScoringService.PlannedAssignment> plan, Iterable<DeliveryRequest> persisted,
+            LocalDateTime assignedAt) {
+        Map<String, DeliveryRequest> byId = new HashMap<>();
+        for (DeliveryRequest delivery : persisted) {
+            byId.put(delivery.getId(), delivery);
+        }
+        List<DeliveryCandidateScoringService.PlannedAssignment> written = new ArrayList<>();
+        for (DeliveryCandidateScoringService.PlannedAssignment assignment : plan) {
+            DeliveryRequest stored = byId.get(assignment.getDelivery().getId());
+            if (stored != null
+                    && stored.getStatus() == DeliveryRequest.DeliveryReqStatus.ASSIGNED
+                    && assignment.getDeliveryPerson().getId().equals(stored.getDeliveryPersonId())
+                    && assignedAt.equals(stored.getAssignedAt())) {
+                written.add(assignment);
+            }
+        }
+        return written;
+    }
+
+    /**
+     * Per courier, the assignments of this run beyond MAX_ACTIVE_DELIVERIES, taken from the end of the plan
+     */
+    static List<DeliveryCandidateScoringService.PlannedAssignment> overCapacity(
+            List<DeliveryCandidateScoringService.PlannedAssignment> applied, Map<String, Long> activeCounts) {
+        Map<String, List<DeliveryCandidateScoringService.PlannedAssignment>> byCourier = new LinkedHashMap<>();
+        for (DeliveryCandidateScoringService.PlannedAssignment assignment : applied) {
+            byCourier.computeIfAbsent(assignment.getDeliveryPerson().getId(), id -> new ArrayList<>()).add(assignment);
+        }
+        List<DeliveryCandidateScoringService.PlannedAssignment> excess = new ArrayList<>();
+        byCourier.forEach((courierId, assignments) -> {
+            long over = activeCounts.getOrDefault(courierId, 0L) - DeliveryCandidateScoringService.MAX_ACTIVE_DELIVERIES;
+            for (int i = assignments.size() - 1; i >= 0 && over > 0; i--, over--) {
+                excess.add(assignments.get(i));
+            }
+        });
+        return excess;
+    }
+
+    private int assignOneByOne(List<DeliveryRequest> pendingDeliveries) {
         int assignedCount = 0;
 
         for (DeliveryRequest delivery : pendingDeliveries) {
@@ -61,7 +259,6 @@ public class AutomatedDeliveryAssignmentServiceImpl implements AutomatedDelivery
             }
         }
 
-        logger.info("🏁 Assignment process completed. Successfully assigned {} out of {} requests.",
-                assignedCount, pendingDeliveries.size());
+        return assignedCount;
     }
-}
\ No newline at end of file
+}
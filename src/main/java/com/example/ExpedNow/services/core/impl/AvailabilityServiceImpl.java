@@ -2,6 +2,8 @@
 package com.example.ExpedNow.services.core.impl;
 
 import com.example.ExpedNow.dto.AvailabilityDTO;
+import com.example.ExpedNow.dto.ScheduleCoverageDTO;
+import com.example.ExpedNow.events.ScheduleChangedEvent;
 import com.example.ExpedNow.exception.ResourceNotFoundException;
 import com.example.ExpedNow.models.AvailabilitySchedule;
 import com.example.ExpedNow.models.User;
@@ -12,6 +14,8 @@ import com.example.ExpedNow.services.core.AvailabilityServiceInterface;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.context.annotation.Primary;
 import org.springframework.stereotype.Service;
 
@@ -30,11 +34,35 @@ public class AvailabilityServiceImpl implements AvailabilityServiceInterface {
 
     private final AvailabilityRepository availabilityRepository;
     private final UserRepository userRepository;
+    private final ApplicationEventPublisher eventPublisher;
+    private final CourierAvailabilityCache availabilityCache;
+    private final long fleetRefreshMs;
+    private final long coverageTtlMs;
+    private volatile long fleetLoadedAt;
+    private volatile ScheduleCoverageDTO coverage;
+    private volatile long coverageLoadedAt;
 
     @Autowired
-    public AvailabilityServiceImpl(AvailabilityRepository availabilityRepository, UserRepository userRepository) {
+    public AvailabilityServiceImpl(AvailabilityRepository availabilityRepository, UserRepository userRepository,
+                                   ApplicationEventPublisher eventPublisher,
+                                   CourierAvailabilityCache availabilityCache,
+                                   @Value("${availability.index.fleet-refresh-ms:15000}") long fleetRefreshMs,
+                                   @Value("${availability.statistics.ttl-ms:30000}") long coverageTtlMs) {
         this.availabilityRepository = availabilityRepository;
         this.userRepository = userRepository;
+        this.eventPublisher = eventPublisher;
+        this.availabilityCache = availabilityCache;
+        this.fleetRefreshMs = Math.max(0, fleetRefreshMs);
+        this.coverageTtlMs = Math.max(0, coverageTtlMs);
+    }
+
+    // Every schedule write goes through here so the availability cache and dispatch see the change
+    private AvailabilitySchedule saveAndPublish(AvailabilitySchedule schedule) {
+        AvailabilitySchedule saved = availabilityRepository.save(schedule);
+        availabilityCache.put(saved);
+        coverage = null;
+        eventPublisher.publishEvent(new ScheduleChangedEvent(saved.getUserId()));
+        return saved;
     }
 
     @Override
@@ -121,7 +149,7 @@ public class AvailabilityServiceImpl implements AvailabilityServiceInterface {
         }
 
         // Save and return
-        return availabilityRepository.save(schedule);
+        return saveAndPublish(schedule);
     }
 
     // Helper method for converting weekly schedule DTO to entity
@@ -200,18 +228,12 @@ public class AvailabilityServiceImpl implements AvailabilityServiceInterface {
 
     @Override
     public boolean isUserAvailableAt(String userId, DayOfWeek day, LocalTime time) {
-        AvailabilitySchedule schedule = availabilityRepository.findByUserId(userId)
-                .orElse(new AvailabilitySchedule(userId));
-
-        return schedule.isAvailable(day, time);
+        return availabilityCache.isAvailable(userId, day, time);
     }
 
     @Override
     public boolean isUserAvailableAt(String userId, LocalDate date, LocalTime time) {
-        AvailabilitySchedule schedule = availabilityRepository.findByUserId(userId)
-                .orElse(new AvailabilitySchedule(userId));
-
-        return schedule.isAvailable(date, time);
+        return availabilityCache.isAvailable(userId, date, time);
     }
 
     @Override
@@ -241,7 +263,7 @@ public class AvailabilityServiceImpl implements AvailabilityServiceInterface {
         schedule.getWeeklySchedule().put(day, daySchedule);
 
         // Save and return
-        return availabilityRepository.save(schedule);
+        return saveAndPublish(schedule);
     }
 
     @Override
@@ -265,7 +287,7 @@ public class AvailabilityServiceImpl implements AvailabilityServiceInterface {
         schedule.getMonthlySchedule().put(date, daySchedule);
 
         // Save and return
-        return availabilityRepository.save(schedule);
+        return saveAndPublish(schedule);
     }
 
     @Override
@@ -304,14 +326,22 @@ public class AvailabilityServiceImpl implements AvailabilityServiceInterface {
         }
 
         // حفظ التحديثات
-        return availabilityRepository.save(schedule);
+        return saveAndPublish(schedule);
     }
 
     @Override
     public List<String> findAvailableDeliveryPersonsAt(LocalDateTime dateTime) {
-        List<User> deliveryPersons = userRepository.findAllByRolesContaining(Role.ROLE_DELIVERY_PERSON);
-        List<String> availableUserIds = new ArrayList<>();
+        List<User> deliveryPersons = refreshFleetIfStale();
+        List<String> indexed = availabilityCache.findAvailableAt(dateTime);
+        if (indexed != null) {
+            return indexed;
+        }
 
+        // Outside the indexed horizon: test each courier against the cached schedules
+        if (deliveryPersons == null) {
+            deliveryPersons = userRepository.findDispatchFlagsByRole(Role.ROLE_DELIVERY_PERSON);
+        }
+        List<String> availableUserIds = new ArrayList<>();
         for (User user : deliveryPersons) {
             if (user.isEnabled() && user.isAvailable() && isUserAvailableAt(user.getId(), dateTime)) {
                 availableUserIds.add(user.getId());
@@ -321,6 +351,26 @@ public class AvailabilityServiceImpl implements AvailabilityServiceInterface {
         return availableUserIds;
     }
 
+    /**
+     * Keep the availability index in step with the courier fleet: one projected user query and one schedule
+     * query for missing or expired entries, at most every fleet-refresh-ms. Returns the couriers when it reloaded.
+     */
+    private synchronized List<User> refreshFleetIfStale() {
+        long now = System.currentTimeMillis();
+        if (availabilityCache.isIndexComplete() && now - fleetLoadedAt < fleetRefreshMs) {
+            return null;
+        }
+        List<User> deliveryPersons = userRepository.findDispatchFlagsByRole(Role.ROLE_DELIVERY_PERSON);
+        availabilityCache.preload(deliveryPersons.stream().map(User::getId).collect(Collectors.toList()));
+        availabilityCache.replaceEligible(deliveryPersons.stream()
+                .filter(user -> user.isEnabled() && user.isAvailable())
+                .map(User::getId)
+                .collect(Collectors.toList()));
+        availabilityCache.markIndexComplete();
+        fleetLoadedAt = now;
+        return deliveryPersons;
+    }
+
     /**
      * Generate default monthly schedule based on weekly schedule for a specific month
      * This is useful for filling in a full month with the weekly pattern
@@ -360,7 +410,7 @@ public class AvailabilityServiceImpl implements AvailabilityServiceInterface {
         }
 
         // Save and return
-        return availabilityRepository.save(schedule);
+        return saveAndPublish(schedule);
     }
 
     /**
@@ -398,7 +448,7 @@ public class AvailabilityServiceImpl implements AvailabilityServiceInterface {
         }
 
         // Save and return
-        return availabilityRepository.save(schedule);
+        return saveAndPublish(schedule);
     }
 
     /**
@@ -448,7 +498,7 @@ public class AvailabilityServiceImpl implements AvailabilityServiceInterface {
         schedule.getMonthlySchedule().putAll(newEntries);
 
         // Save and return
-        return availabilityRepository.save(schedule);
+        return saveAndPublish(schedule);
     }
 
     /**
@@ -462,7 +512,7 @@ public class AvailabilityServiceImpl implements AvailabilityServiceInterface {
         schedule.getMonthlySchedule().clear();
 
         // Save and return
-        return availabilityRepository.save(schedule);
+        return saveAndPublish(schedule);
     }
 
     // Helper methods to convert between DTO and entity
@@ -573,11 +623,35 @@ public class AvailabilityServiceImpl implements AvailabilityServiceInterface {
     /**
      * Get delivery persons without schedules
      */
+    @Override
     public List<User> getDeliveryPersonsWithoutSchedule() {
-        List<User> allDeliveryPersons = userRepository.findAllByRolesContaining(Role.ROLE_DELIVERY_PERSON);
-        return allDeliveryPersons.stream()
-                .filter(user -> !hasExistingSchedule(user.getId()))
-                .collect(Collectors.toList());
+        return getScheduleCoverage().getWithoutSchedule();
+    }
+
+    /**
+     * Fleet schedule coverage from a single users/Schedule aggregation, cached for a short TTL
+     * and dropped on every local schedule save
+     */
+    @Override
+    public ScheduleCoverageDTO getScheduleCoverage() {
+        ScheduleCoverageDTO current = coverage;
+        long now = System.currentTimeMillis();
+        if (current != null && now - coverageLoadedAt < coverageTtlMs) {
+            return current;
+        }
+        synchronized (this) {
+            // Another dashboard request may have refreshed it while we waited
+            if (coverage != null && System.currentTimeMillis() - coverageLoadedAt < coverageTtlMs) {
+                return coverage;
+            }
+            ScheduleCoverageDTO loaded = userRepository.aggregateScheduleCoverage();
+            if (loaded == null) {
+                loaded = new ScheduleCoverageDTO();
+            }
+            coverageLoadedAt = System.currentTimeMillis();
+            coverage = loaded;
+            return loaded;
+        }
     }
 
     /**
@@ -624,7 +698,7 @@ public class AvailabilityServiceImpl implements AvailabilityServiceInterface {
                         new AvailabilitySchedule.DaySchedule(true, LocalTime.of(8,0), LocalTime.of(18,0)));
             }
         }
-        return availabilityRepository.save(schedule);
+        return saveAndPublish(schedule);
     }
 
     /**
@@ -654,6 +728,6 @@ public class AvailabilityServiceImpl implements AvailabilityServiceInterface {
             }
         }
 
-        return availabilityRepository.save(existingSchedule);
+        return saveAndPublish(existingSchedule);
     }
 }
\ No newline at end of file
@@ -5,11 +5,18 @@ import com.example.ExpedNow.models.*;
 import com.example.ExpedNow.repositories.*;
 import com.example.ExpedNow.security.CustomUserDetailsService;
 import lombok.RequiredArgsConstructor;
+import org.bson.Document;
+import org.bson.types.ObjectId;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.AggregationUpdate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.security.core.Authentication;
 import org.springframework.stereotype.Service;
@@ -17,6 +24,7 @@ import org.springframework.transaction.annotation.Transactional;
 import org.springframework.validation.annotation.Validated;
 
 import jakarta.validation.Valid;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
 import java.util.*;
 import java.util.stream.Collectors;
@@ -31,6 +39,8 @@ public class ChatService {
     private final ChatRoomRepository chatRoomRepository;
     private final UserRepository userRepository;
     private final SimpMessagingTemplate messagingTemplate;
+    private final MongoTemplate mongoTemplate;
+    private final ChatWriteBehindBuffer writeBehindBuffer;
 
     @Transactional
     public MessageDTO sendMessage(@Valid ChatMessageRequest request, Authentication authentication) {
@@ -66,10 +76,18 @@ public class ChatService {
                     .timestamp(LocalDateTime.now())
                     .build();
 
-            Message savedMessage = messageRepository.save(message);
+            Message savedMessage;
+            if (writeBehindBuffer.isEnabled()) {
+                // Journaled now, inserted with the room update in the next group commit
+                message.setId(new ObjectId().toHexString());
+                writeBehindBuffer.submit(chatRoom.getId(), message);
+                savedMessage = message;
+            } else {
+                savedMessage = messageRepository.save(message);
 
-            // Update chat room with last message info
-            updateChatRoomLastMessage(chatRoom, savedMessage);
+                // Update chat room with last message info and the receiver's unread counter
+                updateChatRoomLastMessage(chatRoom, savedMessage);
+            }
 
             // Convert to DTO
             MessageDTO messageDTO = convertToMessageDTO(savedMessage, sender);
@@ -117,6 +135,57 @@ public class ChatService {
         }
     }
 
+    /**
+     * Keyset pagination over (deliveryId, timestamp, _id): each page seeks from the previous page's last
+     * message instead of skipping, and no total count is computed.
+     */
+    public MessageHistoryDTO getMessageHistory(String deliveryId, String otherUserId, String before, int size,
+                                               Authentication authentication) {
+        CustomUserDetailsService.CustomUserDetails userDetails = getUserDetails(authentication);
+        String currentUserId = userDetails.getUserId();
+
+        if (size <= 0 || size > 100) size = 20; // Limit max page size
+
+        List<Criteria> filters = new ArrayList<>();
+        filters.add(Criteria.where("deliveryId").is(deliveryId));
+        filters.add(new Criteria().orOperator(
+                Criteria.where("senderId").is(currentUserId).and("receiverId").is(otherUserId),
+                Criteria.where("senderId").is(otherUserId).and("receiverId").is(currentUserId)));
+        if (before != null && !before.isBlank()) {
+            MessageCursor cursor = MessageCursor.decode(before);
+            filters.add(new Criteria().orOperator(
+                    Criteria.where("timestamp").lt(cursor.timestamp),
+                    Criteria.where("timestamp").is(cursor.timestamp).and("_id").lt(cursor.id)));
+        }
+
+        // One extra row tells whether an older page exists
+        Query query = new Query(new Criteria().andOperator(filters.toArray(new Criteria[0])))
+                .with(Sort.by(Sort.Order.desc("timestamp"), Sort.Order.desc("_id")))
+                .limit(size + 1);
+        List<Message> messages = mongoTemplate.find(query, Message.class);
+
+        boolean hasMore = messages.size() > size;
+        if (hasMore) {
+            messages = messages.subList(0, size);
+        }
+
+        Map<String, User> senders = new HashMap<>();
+        for (User user : userRepository.findNamesByIdIn(new HashSet<>(List.of(currentUserId, otherUserId)))) {
+            senders.put(user.getId(), user);
+        }
+        List<MessageDTO> dtos = messages.stream()
+                .map(message -> convertToMessageDTO(message, senders.get(message.getSenderId())))
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+
+        String nextCursor = null;
+        if (hasMore) {
+            Message last = messages.get(messages.size() - 1);
+            nextCursor = new MessageCursor(last.getTimestamp(), last.getId()).encode();
+        }
+        return new MessageHistoryDTO(dtos, nextCursor, hasMore);
+    }
+
     public List<ChatRoomDTO> getUserChatRooms(Authentication authentication) {
         try {
             CustomUserDetailsService.CustomUserDetails userDetails = getUserDetails(authentication);
@@ -128,9 +197,12 @@ public class ChatService {
             List<ChatRoom> chatRooms = chatRoomRepository.findAllUserChatRooms(userId);
             log.info("Found {} chat rooms for user: {}", chatRooms.size(), userId);
 
+            // One batched lookup for participant names; unread counts are carried by the rooms
+            Map<String, String> userNames = loadUserNames(chatRooms);
+
             // Convert to DTOs and sort by last message date
             List<ChatRoomDTO> result = chatRooms.stream()
-                    .map(room -> convertToChatRoomDTO(room, userId))
+                    .map(room -> convertToChatRoomDTO(room, userId, userNames))
                     .filter(Objects::nonNull)
                     .sorted(Comparator.comparing(
                             ChatRoomDTO::getLastMessageAt,
@@ -153,26 +225,29 @@ public class ChatService {
             CustomUserDetailsService.CustomUserDetails userDetails = getUserDetails(authentication);
             String currentUserId = userDetails.getUserId();
 
-            // Find unread messages more efficiently
-            List<Message> unreadMessages = messageRepository.findUnreadMessagesBetweenUsers(
-                    senderId, currentUserId, deliveryId);
+            // Messages still waiting for the group commit would otherwise be inserted unread afterwards;
+            // throws (and skips the update) while they cannot be committed
+            writeBehindBuffer.flushDelivery(deliveryId);
 
-            if (!unreadMessages.isEmpty()) {
-                LocalDateTime readTime = LocalDateTime.now();
+            // Mark everything unread from this sender in one write
+            LocalDateTime readTime = LocalDateTime.now();
+            Query unread = new Query(Criteria.where("senderId").is(senderId)
+                    .and("receiverId").is(currentUserId)
+                    .and("deliveryId").is(deliveryId)
+                    .and("status").ne(Message.MessageStatus.READ));
+            Update markRead = new Update()
+                    .set("status", Message.MessageStatus.READ)
+                    .set("readAt", readTime);
+            int readCount = (int) mongoTemplate.updateMulti(unread, markRead, Message.class).getModifiedCount();
 
-                // Mark messages as read
-                unreadMessages.forEach(message -> {
-                    message.setStatus(Message.MessageStatus.READ);
-                    message.setReadAt(readTime);
-                });
-
-                messageRepository.saveAll(unreadMessages);
+            if (readCount > 0) {
+                decrementUnreadCount(deliveryId, senderId, currentUserId, readCount);
 
                 // Send read receipt notification
-                sendReadReceiptNotification(senderId, deliveryId, unreadMessages.size(), readTime, currentUserId);
+                sendReadReceiptNotification(senderId, deliveryId, readCount, readTime, currentUserId);
 
                 log.info("Marked {} messages as read for delivery {} from sender {}",
-                        unreadMessages.size(), deliveryId, senderId);
+                        readCount, deliveryId, senderId);
             }
         } catch (Exception e) {
             log.error("Error marking messages as read for delivery {} from sender {}: {}",
@@ -186,8 +261,10 @@ public class ChatService {
             CustomUserDetailsService.CustomUserDetails userDetails = getUserDetails(authentication);
             String userId = userDetails.getUserId();
 
-            return messageRepository.countByDeliveryIdAndReceiverIdAndStatusNot(
-                    deliveryId, userId, Message.MessageStatus.READ);
+            // Read from the rooms' counters instead of counting message documents
+            return chatRoomRepository.findUserChatRoomsByDeliveryIds(userId, List.of(deliveryId)).stream()
+                    .mapToLong(room -> room.getUnreadCount(userId))
+                    .sum();
 
         } catch (Exception e) {
             log.error("Error getting unread message count for delivery {} and user {}: {}",
@@ -216,11 +293,13 @@ public class ChatService {
                 ChatRoom room = existingRoom.get();
                 log.info("Found existing chat room: {}", room.getId());
 
-                // Reactivate if inactive
+                // Reactivate if inactive; only these fields, a full save would overwrite concurrent unread counters
                 if (!room.isActive()) {
+                    LocalDateTime now = LocalDateTime.now();
+                    mongoTemplate.updateFirst(new Query(Criteria.where("_id").is(room.getId())),
+                            new Update().set("isActive", true).set("updatedAt", now), ChatRoom.class);
                     room.setActive(true);
-                    room.setUpdatedAt(LocalDateTime.now());
-                    room = chatRoomRepository.save(room);
+                    room.setUpdatedAt(now);
                     log.info("Reactivated chat room: {}", room.getId());
                 }
 
@@ -356,14 +435,28 @@ public class ChatService {
 
 
 
+    // Single atomic update so concurrent senders never overwrite each other's counters
     private void updateChatRoomLastMessage(ChatRoom chatRoom, Message message) {
-        chatRoom.setLastMessageAt(message.getTimestamp());
-        chatRoom.setLastMessageContent(truncateContent(message.getContent()));
-        chatRoom.setUpdatedAt(LocalDateTime.now());
-        chatRoomRepository.save(chatRoom);
+        Update update = new Update()
+                .set("lastMessageAt", message.getTimestamp())
+                .set("lastMessageContent", truncateContent(message.getContent()))
+                .set("updatedAt", LocalDateTime.now())
+                .inc("unreadCounts." + message.getReceiverId(), 1);
+        mongoTemplate.updateFirst(new Query(Criteria.where("_id").is(chatRoom.getId())), update, ChatRoom.class);
     }
 
-    private String truncateContent(String content) {
+    // Subtract only what was just marked read: messages counted after the updateMulti stay unread
+    private void decrementUnreadCount(String deliveryId, String senderId, String readerId, int readCount) {
+        Query room = new Query(Criteria.where("deliveryId").is(deliveryId).orOperator(
+                Criteria.where("clientId").is(senderId).and("deliveryPersonId").is(readerId),
+                Criteria.where("clientId").is(readerId).and("deliveryPersonId").is(senderId)));
+        String counter = "unreadCounts." + readerId;
+        Document decremented = new Document("$max", List.of(0, new Document("$subtract",
+                List.of(new Document("$ifNull", List.of("$" + counter, 0)), readCount))));
+        mongoTemplate.updateMulti(room, AggregationUpdate.update().set(counter).toValue(decremented), ChatRoom.class);
+    }
+
+    static String truncateContent(String content) {
         if (content == null) return null;
         return content.length() > 100 ? content.substring(0, 97) + "..." : content;
     }
@@ -473,7 +566,7 @@ public class ChatService {
     }
 
 
-    private ChatRoomDTO convertToChatRoomDTO(ChatRoom room, String currentUserId) {
+    private ChatRoomDTO convertToChatRoomDTO(ChatRoom room, String currentUserId, Map<String, String> userNames) {
         try {
             if (room == null) {
                 log.warn("Attempting to convert null ChatRoom to DTO");
@@ -494,11 +587,11 @@ public class ChatService {
             if (currentUserId.equals(room.getClientId())) {
                 // Current user is client, other user is delivery person
                 dto.setOtherUserId(room.getDeliveryPersonId());
-                dto.setOtherUserName(getUserName(room.getDeliveryPersonId()).orElse("Delivery Person"));
+                dto.setOtherUserName(userNames.getOrDefault(room.getDeliveryPersonId(), "Delivery Person"));
             } else if (currentUserId.equals(room.getDeliveryPersonId())) {
                 // Current user is delivery person, other user is client
                 dto.setOtherUserId(room.getClientId());
-                dto.setOtherUserName(getUserName(room.getClientId()).orElse("Client"));
+                dto.setOtherUserName(userNames.getOrDefault(room.getClientId(), "Client"));
             } else {
                 log.error("Current user {} is not a participant in room {}. ClientId: {}, DeliveryPersonId: {}",
                         currentUserId, room.getId(), room.getClientId(), room.getDeliveryPersonId());
@@ -506,11 +599,11 @@ public class ChatService {
             }
 
             // Set user names safely
-            dto.setClientName(getUserName(room.getClientId()).orElse("Unknown Client"));
-            dto.setDeliveryPersonName(getUserName(room.getDeliveryPersonId()).orElse("Unknown Delivery Person"));
+            dto.setClientName(userNames.getOrDefault(room.getClientId(), "Unknown Client"));
+            dto.setDeliveryPersonName(userNames.getOrDefault(room.getDeliveryPersonId(), "Unknown Delivery Person"));
 
             // Set unread count
-            dto.setUnreadCount(getUnreadCountForRoom(room.getDeliveryId(), currentUserId));
+            dto.setUnreadCount(room.getUnreadCount(currentUserId));
 
             log.debug("Converted room {} for user {} - other user: {}",
                     room.getId(), currentUserId, dto.getOtherUserId());
@@ -523,26 +616,49 @@ public class ChatService {
         }
     }
 
-    private Optional<String> getUserName(String userId) {
-        if (userId == null) return Optional.empty();
-
+    private Map<String, String> loadUserNames(List<ChatRoom> rooms) {
+        Set<String> userIds = new HashSet<>();
+        for (ChatRoom room : rooms) {
+            if (room.getClientId() != null) userIds.add(room.getClientId());
+            if (room.getDeliveryPersonId() != null) userIds.add(room.getDeliveryPersonId());
+        }
+        Map<String, String> names = new HashMap<>();
+        if (userIds.isEmpty()) {
+            return names;
+        }
         try {
-            return userRepository.findById(userId)
-                    .map(User::getFullName);
+            for (User user : userRepository.findNamesByIdIn(userIds)) {
+                names.put(user.getId(), user.getFullName());
+            }
         } catch (Exception e) {
-            log.error("Error finding user name for ID {}: {}", userId, e.getMessage(), e);
-            return Optional.empty();
+            log.error("Error loading user names for {} chat participants: {}", userIds.size(), e.getMessage(), e);
         }
+        return names;
     }
 
-    private int getUnreadCountForRoom(String deliveryId, String currentUserId) {
-        try {
-            return (int) messageRepository.countByDeliveryIdAndReceiverIdAndStatusNot(
-                    deliveryId, currentUserId, Message.MessageStatus.READ);
-        } catch (Exception e) {
-            log.error("Error counting unread messages for delivery {} and user {}: {}",
-                    deliveryId, currentUserId, e.getMessage(), e);
-            return 0;
+    // Opaque "before" cursor: the timestamp and id of the last message of the previous page
+    static class MessageCursor {
+        final LocalDateTime timestamp;
+        final String id;
+
+        MessageCursor(LocalDateTime timestamp, String id) {
+            this.timestamp = timestamp;
+            this.id = id;
+        }
+
+        String encode() {
+            String raw = timestamp + "|" + id;
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+        }
+
+        static MessageCursor decode(String cursor) {
+            try {
+                String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+                int separator = raw.indexOf('|');
+                return new MessageCursor(LocalDateTime.parse(raw.substring(0, separator)), raw.substring(separator + 1));
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException("Invalid message cursor");
+            }
         }
     }
-}
\ No newline at end of file
+}
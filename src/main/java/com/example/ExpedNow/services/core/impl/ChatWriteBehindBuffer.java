@@ -0,0 +1,466 @@
+package com.example.ExpedNow.services.core.impl;
+
+import com.example.ExpedNow.models.ChatRoom;
+import com.example.ExpedNow.models.Message;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.mongodb.bulk.BulkWriteError;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+/**
+ * Optional write-behind path for chat messages (chat.write-behind.enabled).
+ * ChatService hands a message over once it is appended to a local journal, pushes it to the clients and
+ * returns; a background committer inserts the buffered messages and applies one room update per chat room
+ * as a group commit every flush interval or as soon as max-batch-size messages are waiting.
+ * Appends are forced to disk as a group: a syncer fsyncs the journal every sync interval or once sync-batch-size
+ * appends are waiting, and submit returns only after a sync covered its append. Each commit rotates the journal
+ * into a batch file that is deleted only after Mongo accepted the batch, so batches left on disk by a process
+ * or machine crash are replayed on the next start. Replayed inserts skip messages that
+ * were already written; room counters may be incremented twice for a batch interrupted mid-commit.
+ */
+@Component
+public class ChatWriteBehindBuffer {
+
+    private static final Logger logger = LoggerFactory.getLogger(ChatWriteBehindBuffer.class);
+
+    private static final String CURRENT_JOURNAL = "current.log";
+    private static final String BATCH_PREFIX = "batch-";
+    private static final int DUPLICATE_KEY = 11000;
+    private static final long SYNC_TIMEOUT_MS = 5000;
+
+    private final MongoTemplate mongoTemplate;
+    private final ObjectMapper objectMapper;
+    private final ObjectReader entryReader;
+    private final boolean enabled;
+    private final long flushIntervalMs;
+    private final int maxBatchSize;
+    private final long syncIntervalMs;
+    private final int syncBatchSize;
+    private final Path journalDir;
+
+    private final Object journalLock = new Object();
+    private final List<JournalEntry> buffered = new ArrayList<>();
+    private final AtomicBoolean flushRequested = new AtomicBoolean(false);
+    private final AtomicBoolean syncRequested = new AtomicBoolean(false);
+    private FileChannel journal;
+    private long batchSequence;
+    private volatile boolean batchesOnDisk = true; // Startup may find batches from a previous run
+
+    // Appends are numbered; submitters wait until durableSequence reaches theirs
+    private final Object durableLock = new Object();
+    private long appendedSequence;
+    private long durableSequence;
+    private long failedSequence;
+
+    private ScheduledExecutorService committer;
+    private ScheduledExecutorService syncer;
+
+    @Autowired
+    public ChatWriteBehindBuffer(
+            MongoTemplate mongoTemplate,
+            ObjectMapper objectMapper,
+            @Value("${chat.write-behind.enabled:false}") boolean enabled,
+            @Value("${chat.write-behind.flush-interval-ms:50}") long flushIntervalMs,
+            @Value("${chat.write-behind.max-batch-size:256}") int maxBatchSize,
+            @Value("${chat.write-behind.sync-interval-ms:5}") long syncIntervalMs,
+            @Value("${chat.write-behind.sync-batch-size:64}") int syncBatchSize,
+            @Value("${chat.write-behind.journal-dir:chat-journal}") String journalDir) {
+        this.mongoTemplate = mongoTemplate;
+        this.objectMapper = objectMapper;
+        // Derived getters (Message.isRead) are journaled too and must not make a line unreadable on replay
+        this.entryReader = objectMapper.readerFor(JournalEntry.class)
+                .without(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+        this.enabled = enabled;
+        this.flushIntervalMs = Math.max(1, flushIntervalMs);
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+        this.syncIntervalMs = Math.max(1, syncIntervalMs);
+        this.syncBatchSize = Math.max(1, syncBatchSize);
+        this.journalDir = Paths.get(journalDir);
+    }
+
+    @PostConstruct
+    public void start() throws IOException {
+        if (!enabled) {
+            return;
+        }
+        Files.createDirectories(journalDir);
+        synchronized (journalLock) {
+            // Whatever a crash left in the live journal becomes the first batch to replay
+            Path current = journalDir.resolve(CURRENT_JOURNAL);
+            if (Files.exists(current) && Files.size(current) > 0) {
+                Files.move(current, nextBatchFile());
+            }
+            journal = openJournal();
+        }
+        committer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "chat-write-behind");
+            thread.setDaemon(true);
+            return thread;
+        });
+        committer.scheduleWithFixedDelay(this::flush, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+        syncer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "chat-journal-sync");
+            thread.setDaemon(true);
+            return thread;
+        });
+        syncer.scheduleWithFixedDelay(this::syncJournal, syncIntervalMs, syncIntervalMs, TimeUnit.MILLISECONDS);
+        logger.info("Chat write-behind enabled (flush every {} ms or {} messages, journal in {})",
+                flushIntervalMs, maxBatchSize, journalDir.toAbsolutePath());
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (committer == null) {
+            return;
+        }
+        committer.shutdown();
+        try {
+            committer.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+        synchronized (journalLock) {
+            forceJournal();
+            closeJournal();
+        }
+        syncer.shutdownNow();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Journal the message for a later group commit and return once the append is on disk.
+     * The message must already carry its id and timestamp.
+     */
+    public void submit(String chatRoomId, Message message) {
+        JournalEntry entry = new JournalEntry(chatRoomId, message);
+        int size;
+        long sequence;
+        synchronized (journalLock) {
+            if (journal == null) {
+                throw new IllegalStateException("Chat write-behind journal is not open");
+            }
+            try {
+                ByteBuffer line = ByteBuffer.wrap((objectMapper.writeValueAsString(entry) + "\n").getBytes(StandardCharsets.UTF_8));
+                while (line.hasRemaining()) {
+                    journal.write(line);
+                }
+            } catch (IOException e) {
+                throw new IllegalStateException("Failed to journal chat message: " + e.getMessage(), e);
+            }
+            buffered.add(entry);
+            size = buffered.size();
+            sequence = ++appendedSequence;
+        }
+        if (sequence - durableSequence() >= syncBatchSize && syncRequested.compareAndSet(false, true)) {
+            syncer.execute(this::syncJournal);
+        }
+        awaitDurable(sequence);
+        if (size >= maxBatchSize && flushRequested.compareAndSet(false, true)) {
+            committer.execute(this::flush);
+        }
+    }
+
+    /**
+     * Commit now if any message of the delivery is still waiting, so an update that must see those messages
+     * in Mongo (marking them read) does not run before they are inserted. Throws if they could not be committed.
+     */
+    public void flushDelivery(String deliveryId) {
+        if (!enabled) {
+            return;
+        }
+        boolean pending;
+        synchronized (journalLock) {
+            pending = buffered.stream().anyMatch(entry -> Objects.equals(deliveryId, entry.getMessage().getDeliveryId()));
+        }
+        // Batches left by a failed commit may hold the delivery's messages too
+        if ((pending || batchesOnDisk) && !flush()) {
+            throw new IllegalStateException("Chat messages of delivery " + deliveryId + " are not committed yet");
+        }
+    }
+
+    /**
+     * Commit every journaled batch, oldest first. A failed batch stays on disk and is retried next time.
+     * Returns false if something is still left to commit.
+     */
+    public synchronized boolean flush() {
+        flushRequested.set(false);
+        if (!enabled) {
+            return true;
+        }
+        try {
+            rotateJournal();
+            if (!batchesOnDisk) {
+                return true;
+            }
+            for (Path batch : listBatchFiles()) {
+                commit(readBatch(batch));
+                Files.delete(batch);
+            }
+            batchesOnDisk = false;
+            return true;
+        } catch (Exception e) {
+            logger.error("Chat write-behind commit failed, will retry: {}", e.getMessage());
+            return false;
+        }
+    }
+
+    // One fsync for every append made since the previous one
+    private void syncJournal() {
+        syncRequested.set(false);
+        long target;
+        FileChannel channel;
+        synchronized (journalLock) {
+            target = appendedSequence;
+            channel = journal;
+        }
+        if (channel == null || target <= durableSequence()) {
+            return;
+        }
+        try {
+            channel.force(false);
+            markDurable(target);
+        } catch (ClosedChannelException e) {
+            // Rotated meanwhile; the rotation forced these appends itself
+        } catch (IOException e) {
+            syncFailed(target, e);
+        }
+    }
+
+    // Called with journalLock held, before the live journal is closed
+    private void forceJournal() {
+        if (journal == null) {
+            return;
+        }
+        try {
+            journal.force(false);
+            markDurable(appendedSequence);
+        } catch (IOException e) {
+            syncFailed(appendedSequence, e);
+        }
+    }
+
+    private long durableSequence() {
+        synchronized (durableLock) {
+            return durableSequence;
+        }
+    }
+
+    private void markDurable(long sequence) {
+        synchronized (durableLock) {
+            if (sequence > durableSequence) {
+                durableSequence = sequence;
+                durableLock.notifyAll();
+            }
+        }
+    }
+
+    // Submitters waiting on these appends fail instead of acknowledging a message that may not be on disk
+    private void syncFailed(long sequence, IOException e) {
+        logger.error("Failed to sync chat journal: {}", e.getMessage());
+        synchronized (durableLock) {
+            failedSequence = Math.max(failedSequence, sequence);
+            durableLock.notifyAll();
+        }
+    }
+
+    private void awaitDurable(long sequence) {
+        long deadline = System.currentTimeMillis() + SYNC_TIMEOUT_MS;
+        synchronized (durableLock) {
+            while (durableSequence < sequence) {
+                if (failedSequence >= sequence) {
+                    throw new IllegalStateException("Failed to sync chat journal");
+                }
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    throw new IllegalStateException("Timed out waiting for the chat journal sync");
+                }
+                try {
+                    durableLock.wait(remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted while waiting for the chat journal sync", e);
+                }
+            }
+        }
+    }
+
+    // Moves the live journal aside so the batch file holds exactly the messages buffered so far
+    private void rotateJournal() throws IOException {
+        synchronized (journalLock) {
+            if (buffered.isEmpty()) {
+                return;
+            }
+            forceJournal();
+            closeJournal();
+            Files.move(journalDir.resolve(CURRENT_JOURNAL), nextBatchFile());
+            batchesOnDisk = true;
+            buffered.clear();
+            journal = openJournal();
+        }
+    }
+
+    private void commit(List<JournalEntry> entries) {
+        for (int from = 0; from < entries.size(); from += maxBatchSize) {
+            List<JournalEntry> chunk = entries.subList(from, Math.min(entries.size(), from + maxBatchSize));
+            insertMessages(chunk);
+            updateRooms(chunk);
+        }
+    }
+
+    private void insertMessages(List<JournalEntry> entries) {
+        BulkOperations bulkOps = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Message.class);
+        for (JournalEntry entry : entries) {
+            bulkOps.insert(entry.getMessage());
+        }
+        try {
+            bulkOps.execute();
+        } catch (BulkOperationException e) {
+            // Replaying a batch that was partly written before a crash
+            for (BulkWriteError error : e.getErrors()) {
+                if (error.getCode() != DUPLICATE_KEY) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    // One update per room: latest message wins, unread counters grow by the messages each receiver got
+    private void updateRooms(List<JournalEntry> entries) {
+        Map<String, Message> latestByRoom = new LinkedHashMap<>();
+        Map<String, Map<String, Integer>> unreadByRoom = new HashMap<>();
+        for (JournalEntry entry : entries) {
+            if (entry.getChatRoomId() == null) {
+                continue;
+            }
+            Message message = entry.getMessage();
+            latestByRoom.merge(entry.getChatRoomId(), message,
+                    (current, next) -> next.getTimestamp().isBefore(current.getTimestamp()) ? current : next);
+            unreadByRoom.computeIfAbsent(entry.getChatRoomId(), id -> new HashMap<>())
+                    .merge(message.getReceiverId(), 1, Integer::sum);
+        }
+        if (latestByRoom.isEmpty()) {
+            return;
+        }
+
+        LocalDateTime now = LocalDateTime.now();
+        BulkOperations bulkOps = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, ChatRoom.class);
+        for (Map.Entry<String, Message> room : latestByRoom.entrySet()) {
+            Message latest = room.getValue();
+            Update update = new Update()
+                    .set("updatedAt", now)
+                    .set("lastMessageContent", ChatService.truncateContent(latest.getContent()));
+            // Never move lastMessageAt backwards if a newer message was committed first
+            update.max("lastMessageAt", latest.getTimestamp());
+            unreadByRoom.get(room.getKey()).forEach((receiverId, count) -> update.inc("unreadCounts." + receiverId, count));
+            bulkOps.updateOne(new Query(Criteria.where("_id").is(room.getKey())), update);
+        }
+        bulkOps.execute();
+    }
+
+    private List<JournalEntry> readBatch(Path batch) throws IOException {
+        List<JournalEntry> entries = new ArrayList<>();
+        for (String line : Files.readAllLines(batch, StandardCharsets.UTF_8)) {
+            if (line.isBlank()) {
+                continue;
+            }
+            try {
+                entries.add(entryReader.readValue(line));
+            } catch (IOException e) {
+                // A torn last line from a crash mid-append; the message was never acknowledged
+                logger.warn("Skipping unreadable chat journal entry in {}: {}", batch.getFileName(), e.getMessage());
+            }
+        }
+        return entries;
+    }
+
+    private List<Path> listBatchFiles() throws IOException {
+        try (Stream<Path> files = Files.list(journalDir)) {
+            return files.filter(path -> path.getFileName().toString().startsWith(BATCH_PREFIX))
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    private Path nextBatchFile() {
+        // Zero-padded time plus sequence keeps lexical order equal to commit order
+        return journalDir.resolve(String.format("%s%020d-%06d.log", BATCH_PREFIX,
+                System.currentTimeMillis(), batchSequence++ % 1_000_000));
+    }
+
+    private FileChannel openJournal() throws IOException {
+        return FileChannel.open(journalDir.resolve(CURRENT_JOURNAL),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    private void closeJournal() {
+        if (journal == null) {
+            return;
+        }
+        try {
+            journal.close();
+        } catch (IOException e) {
+            logger.warn("Failed to close chat journal: {}", e.getMessage());
+        }
+        journal = null;
+    }
+
+    public static class JournalEntry {
+        private String chatRoomId;
+        private Message message;
+
+        public JournalEntry() {
+        }
+
+        public JournalEntry(String chatRoomId, Message message) {
+            this.chatRoomId = chatRoomId;
+            this.message = message;
+        }
+
+        public String getChatRoomId() {
+            return chatRoomId;
+        }
+
+        public void setChatRoomId(String chatRoomId) {
+            this.chatRoomId = chatRoomId;
+        }
+
+        public Message getMessage() {
+            return message;
+        }
+
+        public void setMessage(Message message) {
+            this.message = message;
+        }
+    }
+}
@@ -0,0 +1,388 @@
+package com.example.ExpedNow.services.core.impl;
+
+import com.example.ExpedNow.models.AvailabilitySchedule;
+import com.example.ExpedNow.repositories.AvailabilityRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Availability schedules compiled into bitmaps of 15-minute slots over a rolling horizon.
+ * A slot's "full" bit means the courier is available for the whole slot; its "partial" bit marks a
+ * slot cut by a start or end time, which is resolved exactly against the cached schedule. Checks are
+ * bit tests with no database access; entries are replaced on every schedule save and expire after a TTL
+ * so saves made on other instances are picked up.
+ * The same bitmaps are inverted into a per-slot set of couriers (BitSets over courier ordinals), kept in
+ * step on every compile, so "who is available at T" is one slot lookup intersected with the eligible set.
+ */
+@Component
+public class CourierAvailabilityCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(CourierAvailabilityCache.class);
+
+    static final int SLOT_MINUTES = 15;
+    static final int SLOTS_PER_DAY = 24 * 60 / SLOT_MINUTES;
+    private static final long SLOT_NANOS = TimeUnit.MINUTES.toNanos(SLOT_MINUTES);
+
+    private final AvailabilityRepository availabilityRepository;
+    private final int horizonDays;
+    private final long ttlMs;
+
+    private final ConcurrentHashMap<String, CompiledAvailability> entries = new ConcurrentHashMap<>();
+
+    // Inverted index, guarded by indexLock
+    private final ReentrantReadWriteLock indexLock = new ReentrantReadWriteLock();
+    private final Map<String, Integer> ordinals = new HashMap<>();
+    private final List<String> userIdsByOrdinal = new ArrayList<>();
+    private final BitSet eligible = new BitSet();
+    private BitSet[] fullBySlot;
+    private BitSet[] partialBySlot;
+    private LocalDate indexHorizonStart;
+    private boolean indexComplete;
+
+    public CourierAvailabilityCache(AvailabilityRepository availabilityRepository,
+                                    @Value("${availability.cache.horizon-weeks:8}") int horizonWeeks,
+                                    @Value("${availability.cache.ttl-minutes:10}") long ttlMinutes) {
+        this.availabilityRepository = availabilityRepository;
+        this.horizonDays = Math.max(1, horizonWeeks) * 7;
+        this.ttlMs = TimeUnit.MINUTES.toMillis(Math.max(1, ttlMinutes));
+    }
+
+    public boolean isAvailable(String userId, LocalDateTime dateTime) {
+        return get(userId).isAvailable(dateTime.toLocalDate(), dateTime.toLocalTime());
+    }
+
+    public boolean isAvailable(String userId, LocalDate date, LocalTime time) {
+        return get(userId).isAvailable(date, time);
+    }
+
+    public boolean isAvailable(String userId, DayOfWeek day, LocalTime time) {
+        return get(userId).schedule.isAvailable(day, time);
+    }
+
+    /**
+     * Make sure all the given users are cached, loading the missing or expired ones in one query
+     */
+    public void preload(Collection<String> userIds) {
+        long now = System.currentTimeMillis();
+        LocalDate today = LocalDate.now();
+        List<String> missing = new ArrayList<>();
+        for (String userId : userIds) {
+            CompiledAvailability entry = entries.get(userId);
+            if (entry == null || !entry.isFresh(now, today)) {
+                missing.add(userId);
+            }
+        }
+        if (missing.isEmpty()) {
+            return;
+        }
+        Map<String, AvailabilitySchedule> loaded = new HashMap<>();
+        for (AvailabilitySchedule schedule : availabilityRepository.findByUserIdIn(missing)) {
+            loaded.putIfAbsent(schedule.getUserId(), schedule);
+        }
+        for (String userId : missing) {
+            // Users without a schedule are cached too, as never available
+            AvailabilitySchedule schedule = loaded.getOrDefault(userId, new AvailabilitySchedule(userId));
+            store(userId, compile(schedule, today, now));
+        }
+    }
+
+    /**
+     * Replace a user's entry with a freshly saved schedule
+     */
+    public void put(AvailabilitySchedule schedule) {
+        if (schedule == null || schedule.getUserId() == null) {
+            return;
+        }
+        store(schedule.getUserId(), compile(schedule, LocalDate.now(), System.currentTimeMillis()));
+    }
+
+    public void invalidate(String userId) {
+        entries.remove(userId);
+        indexLock.writeLock().lock();
+        try {
+            Integer ordinal = ordinals.get(userId);
+            if (ordinal != null && fullBySlot != null) {
+                for (int slot = 0; slot < fullBySlot.length; slot++) {
+                    fullBySlot[slot].clear(ordinal);
+                    partialBySlot[slot].clear(ordinal);
+                }
+                indexComplete = false;
+            }
+        } finally {
+            indexLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Users available at dateTime among the eligible set, or null when dateTime is outside the indexed horizon
+     */
+    public List<String> findAvailableAt(LocalDateTime dateTime) {
+        LocalDate date = dateTime.toLocalDate();
+        LocalTime time = dateTime.toLocalTime();
+        List<String> partialIds = new ArrayList<>();
+        List<String> available = new ArrayList<>();
+        indexLock.readLock().lock();
+        try {
+            if (indexHorizonStart == null) {
+                return null;
+            }
+            long dayOffset = date.toEpochDay() - indexHorizonStart.toEpochDay();
+            if (dayOffset < 0 || dayOffset >= horizonDays) {
+                return null;
+            }
+            int slot = (int) dayOffset * SLOTS_PER_DAY + (int) (time.toNanoOfDay() / SLOT_NANOS);
+            BitSet full = (BitSet) fullBySlot[slot].clone();
+            full.and(eligible);
+            for (int ordinal = full.nextSetBit(0); ordinal >= 0; ordinal = full.nextSetBit(ordinal + 1)) {
+                available.add(userIdsByOrdinal.get(ordinal));
+            }
+            BitSet partial = (BitSet) partialBySlot[slot].clone();
+            partial.and(eligible);
+            for (int ordinal = partial.nextSetBit(0); ordinal >= 0; ordinal = partial.nextSetBit(ordinal + 1)) {
+                partialIds.add(userIdsByOrdinal.get(ordinal));
+            }
+        } finally {
+            indexLock.readLock().unlock();
+        }
+        // Slots cut by a start/end time are settled exactly against the cached schedule
+        for (String userId : partialIds) {
+            CompiledAvailability entry = entries.get(userId);
+            if (entry != null && entry.schedule.isAvailable(date, time)) {
+                available.add(userId);
+            }
+        }
+        return available;
+    }
+
+    /**
+     * Replace the set of users findAvailableAt may return (e.g. enabled and available couriers)
+     */
+    public void replaceEligible(Collection<String> userIds) {
+        indexLock.writeLock().lock();
+        try {
+            eligible.clear();
+            for (String userId : userIds) {
+                eligible.set(ordinalOf(userId));
+            }
+        } finally {
+            indexLock.writeLock().unlock();
+        }
+    }
+
+    public void setEligible(String userId, boolean isEligible) {
+        indexLock.writeLock().lock();
+        try {
+            eligible.set(ordinalOf(userId), isEligible);
+        } finally {
+            indexLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * False until every eligible user has been indexed for the current horizon (e.g. after the day rolled over)
+     */
+    public boolean isIndexComplete() {
+        indexLock.readLock().lock();
+        try {
+            return indexComplete && LocalDate.now().equals(indexHorizonStart);
+        } finally {
+            indexLock.readLock().unlock();
+        }
+    }
+
+    public void markIndexComplete() {
+        indexLock.writeLock().lock();
+        try {
+            indexComplete = indexHorizonStart != null;
+        } finally {
+            indexLock.writeLock().unlock();
+        }
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    private CompiledAvailability get(String userId) {
+        long now = System.currentTimeMillis();
+        LocalDate today = LocalDate.now();
+        CompiledAvailability entry = entries.get(userId);
+        if (entry != null && entry.isFresh(now, today)) {
+            return entry;
+        }
+        AvailabilitySchedule schedule;
+        try {
+            schedule = availabilityRepository.findByUserId(userId).orElse(new AvailabilitySchedule(userId));
+        } catch (Exception e) {
+            if (entry != null) {
+                logger.warn("Using expired availability for user {}: {}", userId, e.getMessage());
+                return entry;
+            }
+            throw e;
+        }
+        CompiledAvailability compiled = compile(schedule, today, now);
+        store(userId, compiled);
+        return compiled;
+    }
+
+    private void store(String userId, CompiledAvailability compiled) {
+        entries.put(userId, compiled);
+        indexLock.writeLock().lock();
+        try {
+            if (indexHorizonStart == null || compiled.horizonStart.isAfter(indexHorizonStart)) {
+                // New day: start an empty index on the new horizon; the fleet refresh refills it
+                int slots = horizonDays * SLOTS_PER_DAY;
+                fullBySlot = new BitSet[slots];
+                partialBySlot = new BitSet[slots];
+                for (int slot = 0; slot < slots; slot++) {
+                    fullBySlot[slot] = new BitSet();
+                    partialBySlot[slot] = new BitSet();
+                }
+                indexHorizonStart = compiled.horizonStart;
+                indexComplete = false;
+            } else if (compiled.horizonStart.isBefore(indexHorizonStart)) {
+                return; // Compiled just before midnight; the next refresh recompiles it
+            }
+            int ordinal = ordinalOf(userId);
+            for (int slot = 0; slot < fullBySlot.length; slot++) {
+                fullBySlot[slot].clear(ordinal);
+                partialBySlot[slot].clear(ordinal);
+            }
+            setOrdinalBits(compiled.full, fullBySlot, ordinal);
+            setOrdinalBits(compiled.partial, partialBySlot, ordinal);
+        } finally {
+            indexLock.writeLock().unlock();
+        }
+    }
+
+    // Caller holds the write lock
+    private int ordinalOf(String userId) {
+        Integer ordinal = ordinals.get(userId);
+        if (ordinal == null) {
+            ordinal = userIdsByOrdinal.size();
+            ordinals.put(userId, ordinal);
+            userIdsByOrdinal.add(userId);
+        }
+        return ordinal;
+    }
+
+    private static void setOrdinalBits(long[] bits, BitSet[] bySlot, int ordinal) {
+        for (int word = 0; word < bits.length; word++) {
+            long remaining = bits[word];
+            while (remaining != 0) {
+                int slot = (word << 6) + Long.numberOfTrailingZeros(remaining);
+                bySlot[slot].set(ordinal);
+                remaining &= remaining - 1;
+            }
+        }
+    }
+
+    private CompiledAvailability compile(AvailabilitySchedule source, LocalDate horizonStart, long compiledAt) {
+        AvailabilitySchedule schedule = copyOf(source);
+        int slots = horizonDays * SLOTS_PER_DAY;
+        long[] full = new long[(slots + 63) / 64];
+        long[] partial = new long[full.length];
+        for (int dayOffset = 0; dayOffset < horizonDays; dayOffset++) {
+            LocalDate date = horizonStart.plusDays(dayOffset);
+            AvailabilitySchedule.DaySchedule day = schedule.getMonthlySchedule().get(date);
+            if (day == null) {
+                day = schedule.getWeeklySchedule().get(date.getDayOfWeek());
+            }
+            if (day == null || !day.isWorking()) {
+                continue;
+            }
+            int base = dayOffset * SLOTS_PER_DAY;
+            if (day.getStartTime() == null || day.getEndTime() == null) {
+                for (int slot = 0; slot < SLOTS_PER_DAY; slot++) {
+                    setBit(full, base + slot);
+                }
+                continue;
+            }
+            // Same inclusive [start, end] test as AvailabilitySchedule.isAvailable
+            long start = day.getStartTime().toNanoOfDay();
+            long end = day.getEndTime().toNanoOfDay();
+            for (int slot = 0; slot < SLOTS_PER_DAY; slot++) {
+                long slotStart = slot * SLOT_NANOS;
+                long slotLast = slotStart + SLOT_NANOS - 1;
+                if (start <= slotStart && slotLast <= end) {
+                    setBit(full, base + slot);
+                } else if (start <= slotLast && end >= slotStart) {
+                    setBit(partial, base + slot);
+                }
+            }
+        }
+        return new CompiledAvailability(schedule, horizonStart, horizonDays, full, partial, compiledAt, ttlMs);
+    }
+
+    // Detached copy so later edits to the saved entity cannot change the cached answers
+    private static AvailabilitySchedule copyOf(AvailabilitySchedule source) {
+        AvailabilitySchedule copy = new AvailabilitySchedule();
+        copy.setId(source.getId());
+        copy.setUserId(source.getUserId());
+        if (source.getWeeklySchedule() != null) {
+            copy.setWeeklySchedule(new HashMap<>(source.getWeeklySchedule()));
+        }
+        if (source.getMonthlySchedule() != null) {
+            copy.setMonthlySchedule(new TreeMap<>(source.getMonthlySchedule()));
+        }
+        return copy;
+    }
+
+    private static void setBit(long[] bits, int index) {
+        bits[index >>> 6] |= 1L << (index & 63);
+    }
+
+    private static boolean testBit(long[] bits, int index) {
+        return (bits[index >>> 6] & (1L << (index & 63))) != 0;
+    }
+
+    static final class CompiledAvailability {
+        private final AvailabilitySchedule schedule;
+        private final LocalDate horizonStart;
+        private final int horizonDays;
+        private final long[] full;
+        private final long[] partial;
+        private final long compiledAt;
+        private final long ttlMs;
+
+        private CompiledAvailability(AvailabilitySchedule schedule, LocalDate horizonStart, int horizonDays,
+                                     long[] full, long[] partial, long compiledAt, long ttlMs) {
+            this.schedule = schedule;
+            this.horizonStart = horizonStart;
+            this.horizonDays = horizonDays;
+            this.full = full;
+            this.partial = partial;
+            this.compiledAt = compiledAt;
+            this.ttlMs = ttlMs;
+        }
+
+        boolean isAvailable(LocalDate date, LocalTime time) {
+            long dayOffset = date.toEpochDay() - horizonStart.toEpochDay();
+            if (dayOffset < 0 || dayOffset >= horizonDays) {
+                // Outside the compiled horizon: still answered from memory
+                return schedule.isAvailable(date, time);
+            }
+            int index = (int) dayOffset * SLOTS_PER_DAY + (int) (time.toNanoOfDay() / SLOT_NANOS);
+            if (testBit(full, index)) {
+                return true;
+            }
+            return testBit(partial, index) && schedule.isAvailable(date, time);
+        }
+
+        // Recompiled once the TTL passes or the day rolls over (keeps the horizon rolling)
+        boolean isFresh(long now, LocalDate today) {
+            return now - compiledAt < ttlMs && horizonStart.equals(today);
+        }
+    }
+}
@@ -0,0 +1,274 @@
+package com.example.ExpedNow.services.core.impl;
+
+import com.example.ExpedNow.dto.LocationDTO;
+import com.example.ExpedNow.models.UserLocation;
+import com.example.ExpedNow.repositories.UserLocationRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * In-memory geohash index of live courier positions.
+ * Positions are keyed by a 52-bit interleaved geohash in a skip list, so a radius query is a
+ * handful of O(log n) range scans over the covering cells instead of a haversine over the fleet.
+ */
+@Component
+public class CourierLocationIndex {
+
+    private static final Logger logger = LoggerFactory.getLogger(CourierLocationIndex.class);
+
+    private static final int BITS_PER_AXIS = 26;
+    private static final double EARTH_RADIUS_KM = 6371;
+    private static final double KM_PER_DEGREE = 111.32;
+    private static final double MIN_KNN_RADIUS_KM = 1.0;
+    private static final double MAX_KNN_RADIUS_KM = 20000.0;
+
+    private final UserLocationRepository userLocationRepository;
+
+    private final ConcurrentHashMap<String, Position> positions = new ConcurrentHashMap<>();
+    private final ConcurrentSkipListMap<Long, Set<String>> cells = new ConcurrentSkipListMap<>();
+    private volatile boolean loaded;
+
+    public CourierLocationIndex(UserLocationRepository userLocationRepository) {
+        this.userLocationRepository = userLocationRepository;
+    }
+
+    /**
+     * Insert or move a courier
+     */
+    public void update(String userId, double latitude, double longitude, Date updatedAt) {
+        long hash = encode(latitude, longitude);
+        Position next = new Position(latitude, longitude, hash, updatedAt);
+        positions.compute(userId, (id, previous) -> {
+            if (previous != null && previous.hash != hash) {
+                removeFromCell(previous.hash, id);
+            }
+            if (previous == null || previous.hash != hash) {
+                addToCell(hash, id);
+            }
+            return next;
+        });
+    }
+
+    public void remove(String userId) {
+        positions.computeIfPresent(userId, (id, previous) -> {
+            removeFromCell(previous.hash, id);
+            return null;
+        });
+    }
+
+    public LocationDTO getLocation(String userId) {
+        ensureLoaded();
+        Position position = positions.get(userId);
+        return position == null ? null : new LocationDTO(position.latitude, position.longitude);
+    }
+
+    public Date getLastUpdated(String userId) {
+        ensureLoaded();
+        Position position = positions.get(userId);
+        return position == null ? null : position.updatedAt;
+    }
+
+    public int size() {
+        return positions.size();
+    }
+
+    /**
+     * Couriers within radiusKm of the point, nearest first
+     */
+    public List<String> findWithinRadius(double latitude, double longitude, double radiusKm) {
+        ensureLoaded();
+        List<Neighbour> neighbours = collectWithinRadius(latitude, longitude, radiusKm);
+        List<String> ids = new ArrayList<>(neighbours.size());
+        for (Neighbour neighbour : neighbours) {
+            ids.add(neighbour.userId);
+        }
+        return ids;
+    }
+
+    /**
+     * The k couriers closest to the point, nearest first. Widens the search radius until k are found.
+     */
+    public List<String> findNearest(double latitude, double longitude, int k) {
+        ensureLoaded();
+        if (k <= 0 || positions.isEmpty()) {
+            return Collections.emptyList();
+        }
+        double radiusKm = MIN_KNN_RADIUS_KM;
+        List<Neighbour> neighbours = collectWithinRadius(latitude, longitude, radiusKm);
+        while (neighbours.size() < k && neighbours.size() < positions.size() && radiusKm < MAX_KNN_RADIUS_KM) {
+            radiusKm *= 2;
+            neighbours = collectWithinRadius(latitude, longitude, radiusKm);
+        }
+        List<String> ids = new ArrayList<>(Math.min(k, neighbours.size()));
+        for (int i = 0; i < neighbours.size() && i < k; i++) {
+            ids.add(neighbours.get(i).userId);
+        }
+        return ids;
+    }
+
+    public static double distanceKm(double lat1, double lon1, double lat2, double lon2) {
+        double latDistance = Math.toRadians(lat2 - lat1);
+        double lonDistance = Math.toRadians(lon2 - lon1);
+        double a = Math.sin(latDistance / 2) * Math.sin(latDistance / 2)
+                + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2))
+                * Math.sin(lonDistance / 2) * Math.sin(lonDistance / 2);
+        return EARTH_RADIUS_KM * 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
+    }
+
+    private List<Neighbour> collectWithinRadius(double latitude, double longitude, double radiusKm) {
+        List<Neighbour> result = new ArrayList<>();
+        if (radiusKm <= 0) {
+            return result;
+        }
+
+        int bits = precisionFor(latitude, radiusKm);
+        int shift = 2 * (BITS_PER_AXIS - bits);
+        long latCells = 1L << bits;
+        long lonCells = 1L << bits;
+        long latIndex = axisIndex(latitude, -90, 180, bits);
+        long lonIndex = axisIndex(longitude, -180, 360, bits);
+
+        // Cells are at least radiusKm wide, so the 3x3 block around the point covers the circle
+        Set<Long> visited = new HashSet<>();
+        for (long dLat = -1; dLat <= 1; dLat++) {
+            long cellLat = latIndex + dLat;
+            if (cellLat < 0 || cellLat >= latCells) {
+                continue;
+            }
+            for (long dLon = -1; dLon <= 1; dLon++) {
+                long cellLon = Math.floorMod(lonIndex + dLon, lonCells);
+                long prefix = interleave(cellLat, cellLon, bits);
+                if (!visited.add(prefix)) {
+                    continue;
+                }
+                long from = prefix << shift;
+                long to = (prefix + 1) << shift;
+                ConcurrentNavigableMap<Long, Set<String>> range = cells.subMap(from, true, to, false);
+                for (Set<String> ids : range.values()) {
+                    for (String id : ids) {
+                        Position position = positions.get(id);
+                        if (position == null) {
+                            continue;
+                        }
+                        double distance = distanceKm(latitude, longitude, position.latitude, position.longitude);
+                        if (distance <= radiusKm) {
+                            result.add(new Neighbour(id, distance));
+                        }
+                    }
+                }
+            }
+        }
+
+        result.sort(Comparator.comparingDouble(neighbour -> neighbour.distanceKm));
+        return result;
+    }
+
+    // Finest precision whose cells are still at least radiusKm tall and wide at this latitude
+    private int precisionFor(double latitude, double radiusKm) {
+        double latDegrees = radiusKm / KM_PER_DEGREE;
+        // Use the circle's most poleward latitude, where a km spans the most longitude
+        double poleward = Math.min(90, Math.abs(latitude) + latDegrees);
+        double cosLat = Math.max(Math.cos(Math.toRadians(poleward)), 1e-6);
+        double lonDegrees = radiusKm / (KM_PER_DEGREE * cosLat);
+        int bits = BITS_PER_AXIS;
+        while (bits > 0 && (180.0 / (1L << bits) < latDegrees || 360.0 / (1L << bits) < lonDegrees)) {
+            bits--;
+        }
+        return bits;
+    }
+
+    private static long encode(double latitude, double longitude) {
+        long latIndex = axisIndex(latitude, -90, 180, BITS_PER_AXIS);
+        long lonIndex = axisIndex(longitude, -180, 360, BITS_PER_AXIS);
+        return interleave(latIndex, lonIndex, BITS_PER_AXIS);
+    }
+
+    private static long axisIndex(double value, double min, double span, int bits) {
+        long cellsOnAxis = 1L << bits;
+        long index = (long) Math.floor((value - min) / span * cellsOnAxis);
+        return Math.max(0, Math.min(cellsOnAxis - 1, index));
+    }
+
+    // Geohash bit order: longitude bit first, most significant bits first
+    private static long interleave(long latIndex, long lonIndex, int bits) {
+        long code = 0;
+        for (int i = bits - 1; i >= 0; i--) {
+            code = (code << 1) | ((lonIndex >>> i) & 1);
+            code = (code << 1) | ((latIndex >>> i) & 1);
+        }
+        return code;
+    }
+
+    // Inside compute so a concurrent removeFromCell cannot drop the set between lookup and add
+    private void addToCell(long hash, String userId) {
+        cells.compute(hash, (key, ids) -> {
+            Set<String> updated = ids != null ? ids : ConcurrentHashMap.newKeySet();
+            updated.add(userId);
+            return updated;
+        });
+    }
+
+    private void removeFromCell(long hash, String userId) {
+        cells.computeIfPresent(hash, (key, ids) -> {
+            ids.remove(userId);
+            return ids.isEmpty() ? null : ids;
+        });
+    }
+
+    // Loaded on first read rather than at startup so the application can boot without the database
+    private void ensureLoaded() {
+        if (loaded) {
+            return;
+        }
+        synchronized (this) {
+            if (loaded) {
+                return;
+            }
+            try {
+                List<UserLocation> locations = userLocationRepository.findAll();
+                for (UserLocation location : locations) {
+                    positions.computeIfAbsent(location.getUserId(), id -> {
+                        long hash = encode(location.getLatitude(), location.getLongitude());
+                        addToCell(hash, id);
+                        return new Position(location.getLatitude(), location.getLongitude(), hash,
+                                location.getLastUpdated());
+                    });
+                }
+                loaded = true;
+                logger.info("Courier location index loaded with {} positions", positions.size());
+            } catch (Exception e) {
+                logger.error("Failed to load courier location index: {}", e.getMessage());
+            }
+        }
+    }
+
+    private static class Position {
+        private final double latitude;
+        private final double longitude;
+        private final long hash;
+        private final Date updatedAt;
+
+        private Position(double latitude, double longitude, long hash, Date updatedAt) {
+            this.latitude = latitude;
+            this.longitude = longitude;
+            this.hash = hash;
+            this.updatedAt = updatedAt;
+        }
+    }
+
+    private static class Neighbour {
+        private final String userId;
+        private final double distanceKm;
+
+        private Neighbour(String userId, double distanceKm) {
+            this.userId = userId;
+            this.distanceKm = distanceKm;
+        }
+    }
+}
@@ -1,32 +1,31 @@
 package com.example.ExpedNow.services.core.impl;
 
 import com.example.ExpedNow.dto.LocationDTO;
+import com.example.ExpedNow.events.DeliveryPersonFreedEvent;
 import com.example.ExpedNow.exception.ResourceNotFoundException;
 import com.example.ExpedNow.models.ChatRoom;
 import com.example.ExpedNow.models.DeliveryRequest;
 import com.example.ExpedNow.models.Mission;
 import com.example.ExpedNow.models.User;
-import com.example.ExpedNow.models.enums.PackageType;
-import com.example.ExpedNow.models.enums.Role;
 import com.example.ExpedNow.repositories.DeliveryReqRepository;
 import com.example.ExpedNow.repositories.MissionRepository;
 import com.example.ExpedNow.repositories.UserRepository;
 import com.example.ExpedNow.services.core.AvailabilityServiceInterface;
 import com.example.ExpedNow.services.core.DeliveryAssignmentServiceInterface;
-import com.example.ExpedNow.services.core.LocationServiceInterface;
 import com.example.ExpedNow.services.core.NotificationServiceInterface;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.context.annotation.Primary;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.stereotype.Service;
 
-import java.time.DayOfWeek;
-import java.time.LocalDate;
 import java.time.LocalDateTime;
-import java.time.LocalTime;
 import java.util.*;
-import java.util.stream.Collectors;
 
 @Service
 @Primary
@@ -38,9 +37,11 @@ public class DeliveryAssignmentServiceImpl implements DeliveryAssignmentServiceI
     private final UserRepository userRepository;
     private final MissionRepository missionRepository;
     private final NotificationServiceInterface notificationService;
-    private final LocationServiceInterface locationService;
     private final AvailabilityServiceInterface availabilityService;
     private final ChatService chatService;
+    private final DeliveryCandidateScoringService candidateScoringService;
+    private final ApplicationEventPublisher eventPublisher;
+    private final MongoTemplate mongoTemplate;
 
     @Autowired
     public DeliveryAssignmentServiceImpl(
@@ -48,16 +49,20 @@ public class DeliveryAssignmentServiceImpl implements DeliveryAssignmentServiceI
             UserRepository userRepository,
             MissionRepository missionRepository,
             NotificationServiceInterface notificationService,
-            LocationServiceInterface locationService,
             AvailabilityServiceInterface availabilityService,
-            ChatService chatService) {
+            ChatService chatService,
+            DeliveryCandidateScoringService candidateScoringService,
+            ApplicationEventPublisher eventPublisher,
+            MongoTemplate mongoTemplate) {
         this.deliveryRepository = deliveryRepository;
         this.userRepository = userRepository;
         this.missionRepository = missionRepository;
         this.notificationService = notificationService;
-        this.locationService = locationService;
         this.availabilityService = availabilityService;
         this.chatService = chatService;
+        this.candidateScoringService = candidateScoringService;
+        this.eventPublisher = eventPublisher;
+        this.mongoTemplate = mongoTemplate;
     }
 
     /**
@@ -86,11 +91,11 @@ public class DeliveryAssignmentServiceImpl implements DeliveryAssignmentServiceI
 
             // Check if delivery person is suitable
             if (isSuitableForDelivery(deliveryPerson, delivery, deliveryTime)) {
-                // Assign delivery
-                delivery.setStatus(DeliveryRequest.DeliveryReqStatus.ASSIGNED);
-                delivery.setDeliveryPersonId(userId);
-                delivery.setAssignedAt(LocalDateTime.now());
-                DeliveryRequest savedDelivery = deliveryRepository.save(delivery);
+                // Assign delivery; skipped if another worker got to it first
+                if (!claimDelivery(delivery, userId)) {
+                    continue;
+                }
+                DeliveryRequest savedDelivery = delivery;
                 assignedDeliveries.add(savedDelivery);
 
                 // Notify delivery person
@@ -120,7 +125,7 @@ public class DeliveryAssignmentServiceImpl implements DeliveryAssignmentServiceI
     private boolean isSuitableForDelivery(User user, DeliveryRequest delivery, LocalDateTime time) {
         // Use existing logic from findSuitableDeliveryPersons()
         return availabilityService.isUserAvailableAt(user.getId(), time.toLocalDate(), time.toLocalTime())
-                && canHandlePackageType(user, delivery.getPackageType())
+                && candidateScoringService.canHandlePackageType(user, delivery.getPackageType())
                 && !hasExcessiveWorkload(user.getId())
                 && !hasActiveMissionInProgress(user.getId());
     }
@@ -150,18 +155,6 @@ public class DeliveryAssignmentServiceImpl implements DeliveryAssignmentServiceI
                 delivery.getScheduledDate() : LocalDateTime.now();
         logger.info("Finding suitable delivery persons for delivery at time: {}", deliveryTime);
 
-        // Find suitable delivery persons considering availability and mission status
-        List<User> suitablePersons = findSuitableDeliveryPersons(delivery, deliveryTime);
-        if (suitablePersons.isEmpty()) {
-            logger.warn("No suitable delivery persons found for delivery {} at time {}",
-                    deliveryId, deliveryTime);
-            return delivery;
-        }
-        logger.info("Found {} suitable delivery persons", suitablePersons.size());
-
-        // Get previous delivery person from the delivery itself
-        String previousDeliveryPersonId = delivery.getDeliveryPersonId();
-
         // Get pickup location
         LocationDTO pickupLocation = new LocationDTO(
                 delivery.getPickupLatitude(),
@@ -174,8 +167,29 @@ public class DeliveryAssignmentServiceImpl implements DeliveryAssignmentServiceI
             pickupLocation = new LocationDTO(0.0, 0.0);
         }
 
+        // Try the couriers around the pickup first, then the whole pool (including relaxed constraints)
+        List<User> suitablePersons = Collections.emptyList();
+        DeliveryCandidateScoringService.CandidateSnapshot snapshot = candidateScoringService.loadSnapshotNear(pickupLocation);
+        if (snapshot != null) {
+            suitablePersons = candidateScoringService.findStrictlySuitableDeliveryPersons(snapshot, delivery, deliveryTime);
+        }
+        if (suitablePersons.isEmpty()) {
+            snapshot = candidateScoringService.loadSnapshot();
+            suitablePersons = candidateScoringService.findSuitableDeliveryPersons(snapshot, delivery, deliveryTime);
+        }
+        if (suitablePersons.isEmpty()) {
+            logger.warn("No suitable delivery persons found for delivery {} at time {}",
+                    deliveryId, deliveryTime);
+            return delivery;
+        }
+        logger.info("Found {} suitable delivery persons", suitablePersons.size());
+
+        // Get previous delivery person from the delivery itself
+        String previousDeliveryPersonId = delivery.getDeliveryPersonId();
+
         // Pass previousDeliveryPersonId to best match finder
-        User bestMatch = findBestMatchDeliveryPerson(suitablePersons, pickupLocation, previousDeliveryPersonId);
+        User bestMatch = candidateScoringService.findBestMatchDeliveryPerson(
+                snapshot, suitablePersons, pickupLocation, previousDeliveryPersonId);
         logger.info("Best match found: {} - {}", bestMatch.getId(),
                 bestMatch.getFirstName() + " " + bestMatch.getLastName());
 
@@ -188,11 +202,11 @@ public class DeliveryAssignmentServiceImpl implements DeliveryAssignmentServiceI
         }
         // ===== END OF VALIDATION CHECK =====
 
-        // Assign the delivery
-        delivery.setStatus(DeliveryRequest.DeliveryReqStatus.ASSIGNED);
-        delivery.setDeliveryPersonId(bestMatch.getId());
-        delivery.setAssignedAt(LocalDateTime.now());
-        DeliveryRequest savedDelivery = deliveryRepository.save(delivery);
+        // Assign the delivery; the dispatch workers and the scheduled assigner may race for it
+        if (!claimDelivery(delivery, bestMatch.getId())) {
+            return deliveryRepository.findById(deliveryId).orElse(delivery);
+        }
+        DeliveryRequest savedDelivery = delivery;
         logger.info("Delivery {} successfully assigned to {}", deliveryId, bestMatch.getId());
 
         // Send notification
@@ -228,95 +242,48 @@ public class DeliveryAssignmentServiceImpl implements DeliveryAssignmentServiceI
         return savedDelivery;
     }
 
-    private List<User> findSuitableDeliveryPersons(DeliveryRequest delivery, LocalDateTime deliveryTime) {
-        // Get day and time for availability check
-        DayOfWeek dayOfWeek = deliveryTime.getDayOfWeek();
-        LocalTime time = deliveryTime.toLocalTime();
-        LocalDate date = deliveryTime.toLocalDate();
-
-        // Get all active delivery persons
-        List<User> potentialDeliveryPersons = userRepository.findByRolesInAndEnabled(
-                        List.of(Role.ROLE_PROFESSIONAL, Role.ROLE_DELIVERY_PERSON, Role.ROLE_TEMPORARY),
-                        true
-                ).stream()
-                .filter(User::isAvailable) // Must be marked as available
-                .collect(Collectors.toList());
-
-        logger.info("Found {} potential delivery persons before filtering", potentialDeliveryPersons.size());
-
-        if (potentialDeliveryPersons.isEmpty()) {
-            logger.warn("No active delivery persons found in the system");
-            return Collections.emptyList();
+    /**
+     * Assign the delivery only if it is still PENDING and unassigned, then re-check the courier's workload.
+     * Returns false, with nothing changed, when another thread assigned the delivery first or concurrent
+     * assignments pushed the courier past capacity; callers must not notify in that case.
+     */
+    private boolean claimDelivery(DeliveryRequest delivery, String deliveryPersonId) {
+        LocalDateTime assignedAt = LocalDateTime.now();
+        Query pending = new Query(Criteria.where("_id").is(delivery.getId())
+                .and("status").is(DeliveryRequest.DeliveryReqStatus.PENDING)
+                .and("deliveryPersonId").is(null));
+        Update assign = new Update()
+                .set("status", DeliveryRequest.DeliveryReqStatus.ASSIGNED)
+                .set("deliveryPersonId", deliveryPersonId)
+                .set("assignedAt", assignedAt);
+        if (mongoTemplate.updateFirst(pending, assign, DeliveryRequest.class).getModifiedCount() == 0) {
+            logger.info("Delivery {} was assigned or changed concurrently, skipping", delivery.getId());
+            return false;
         }
 
-        List<User> availablePersons = potentialDeliveryPersons.stream()
-                .filter(user -> {
-                    try {
-                        // 1. Must have an existing schedule
-                        if (!availabilityService.hasExistingSchedule(user.getId())) {
-                            logger.debug("User {} has no availability schedule", user.getId());
-                            return false;
-                        }
-
-                        // 2. Check time availability
-                        boolean availableOnDate = availabilityService.isUserAvailableAt(user.getId(), date, time);
-                        if (!availableOnDate) {
-                            availableOnDate = availabilityService.isUserAvailableAt(user.getId(), dayOfWeek, time);
-                        }
-
-                        if (!availableOnDate) {
-                            logger.debug("User {} not available on {} at {}", user.getId(), date, time);
-                        }
-                        return availableOnDate;
-                    } catch (Exception e) {
-                        logger.error("Error checking availability for user {}: {}", user.getId(), e.getMessage());
-                        return false; // Treat errors as unavailable
-                    }
-                })
-                .filter(user -> canHandlePackageType(user, delivery.getPackageType()))
-                .filter(user -> !hasExcessiveWorkload(user.getId()))
-                .filter(user -> !hasActiveMissionInProgress(user.getId()))
-                .collect(Collectors.toList());
-
-        logger.info("After strict filtering, found {} available delivery persons", availablePersons.size());
-
-        // Debug: Check missions for each user
-        for (User user : potentialDeliveryPersons) {
-            try {
-                List<Mission> userMissions = missionRepository.findByDeliveryPersonIdAndStatusIn(
-                        user.getId(),
-                        Arrays.asList("IN_PROGRESS", "PENDING")
-                );
-                logger.debug("User {} has {} active mission(s)", user.getId(), userMissions.size());
-            } catch (Exception e) {
-                logger.debug("Could not check missions for user {}: {}", user.getId(), e.getMessage());
-            }
+        // Workers in other zones may have given the same courier a delivery at the same time
+        if (deliveryRepository.countActiveDeliveriesByDeliveryPerson(deliveryPersonId)
+                > DeliveryCandidateScoringService.MAX_ACTIVE_DELIVERIES) {
+            mongoTemplate.updateFirst(
+                    new Query(Criteria.where("_id").is(delivery.getId())
+                            .and("status").is(DeliveryRequest.DeliveryReqStatus.ASSIGNED)
+                            .and("deliveryPersonId").is(deliveryPersonId)),
+                    new Update()
+                            .set("status", DeliveryRequest.DeliveryReqStatus.PENDING)
+                            .unset("deliveryPersonId")
+                            .unset("assignedAt"),
+                    DeliveryRequest.class);
+            logger.info("Delivery person {} went over capacity, delivery {} released", deliveryPersonId, delivery.getId());
+            return false;
         }
 
-        // If no one found, use relaxed constraints (but still require schedule and availability flag)
-        if (availablePersons.isEmpty() && !potentialDeliveryPersons.isEmpty()) {
-            logger.warn("No delivery persons available after strict filtering. Relaxing time constraints.");
-
-            availablePersons = potentialDeliveryPersons.stream()
-                    .filter(user -> user.isAvailable()) // Must be available (flag)
-                    .filter(user -> {
-                        try {
-                            return availabilityService.hasExistingSchedule(user.getId()); // Must have schedule
-                        } catch (Exception e) {
-                            logger.error("Error checking schedule: {}", e.getMessage());
-                            return false;
-                        }
-                    })
-                    .filter(user -> canHandlePackageType(user, delivery.getPackageType()))
-                    .filter(user -> !hasActiveMissionInProgress(user.getId()))
-                    .limit(3)
-                    .collect(Collectors.toList());
-
-            logger.info("After relaxing constraints, found {} delivery persons with schedules", availablePersons.size());
-        }
+        delivery.setStatus(DeliveryRequest.DeliveryReqStatus.ASSIGNED);
+        delivery.setDeliveryPersonId(deliveryPersonId);
+        delivery.setAssignedAt(assignedAt);
+        return true;
+    }
 
-        return availablePersons;
-    }    /**
+    /**
      * Check if delivery person has any active missions in progress
      * Only considers missions that are truly active (IN_PROGRESS or PENDING)
      * Completed missions should not block new assignments
@@ -326,125 +293,14 @@ public class DeliveryAssignmentServiceImpl implements DeliveryAssignmentServiceI
         return activeCount > 0;
     }
     private boolean hasExcessiveWorkload(String userId) {
-        final int MAX_ACTIVE_DELIVERIES = 5;
         List<DeliveryRequest> activeDeliveries = deliveryRepository.findActiveDeliveriesByDeliveryPerson(userId);
-        boolean excessive = activeDeliveries.size() >= MAX_ACTIVE_DELIVERIES;
+        boolean excessive = activeDeliveries.size() >= DeliveryCandidateScoringService.MAX_ACTIVE_DELIVERIES;
         if (excessive) {
             logger.debug("User {} has excessive workload: {} active deliveries", userId, activeDeliveries.size());
         }
         return excessive;
     }
 
-    private boolean canHandlePackageType(User user, PackageType packageType) {
-        if (packageType == null) {
-            return true;
-        }
-
-        if (user.getVehicleType() == null) {
-            logger.debug("User {} has no vehicle type, assuming can handle only small packages", user.getId());
-            return packageType == PackageType.SMALL || packageType == PackageType.FRAGILE;
-        }
-
-        return switch (packageType) {
-            case SMALL, FRAGILE -> true;
-            case MEDIUM -> user.getVehicleType().getMaxWeight() >= 10;
-            case LARGE -> user.getVehicleType().getMaxWeight() >= 20;
-            case HEAVY -> user.getVehicleType().getMaxWeight() >= 50;
-        };
-    }
-
-    private User findBestMatchDeliveryPerson(List<User> deliveryPersons, LocationDTO pickupLocation, String previousDeliveryPersonId) {
-        if (deliveryPersons.isEmpty()) {
-            throw new IllegalArgumentException("No delivery persons available");
-        }
-        if (deliveryPersons.size() == 1) {
-            logger.info("Only one delivery person available, selecting them automatically");
-            return deliveryPersons.get(0);
-        }
-
-        final double DISTANCE_WEIGHT = 0.4;
-        final double WORKLOAD_WEIGHT = 0.3;
-        final double RATING_WEIGHT = 0.2;
-        final double PREVIOUS_BOOST = 0.1; // Boost for previous delivery person
-
-        boolean hasPrevious = previousDeliveryPersonId != null && !previousDeliveryPersonId.isEmpty();
-
-        Map<User, Double> scores = new HashMap<>();
-        double maxDistance = 0.1;
-        int maxWorkload = 0;
-        double maxRating = 5.0;
-
-        Map<User, Double> distances = new HashMap<>();
-        for (User person : deliveryPersons) {
-            LocationDTO personLocation = locationService.getLastKnownLocation(person.getId());
-            if (personLocation == null) {
-                logger.debug("No location data for user {}, using default distance", person.getId());
-                distances.put(person, 10.0);
-                continue;
-            }
-            double distance = calculateDistance(personLocation, pickupLocation);
-            distances.put(person, distance);
-            maxDistance = Math.max(maxDistance, distance);
-        }
-
-        Map<User, Integer> workloads = new HashMap<>();
-        for (User person : deliveryPersons) {
-            List<DeliveryRequest> activeDeliveries = deliveryRepository.findActiveDeliveriesByDeliveryPerson(person.getId());
-            int workload = activeDeliveries.size();
-            workloads.put(person, workload);
-            maxWorkload = Math.max(maxWorkload, workload);
-        }
-
-        for (User person : deliveryPersons) {
-            double distanceScore = 0;
-            if (distances.get(person) < Double.MAX_VALUE) {
-                distanceScore = maxDistance > 0.1 ? 1 - (distances.get(person) / maxDistance) : 0.5;
-            }
-            double workloadScore = maxWorkload == 0 ? 1 : 1 - ((double) workloads.get(person) / maxWorkload);
-            double ratingScore = (person.getRating() > 0 && maxRating > 0)
-                    ? person.getRating() / maxRating
-                    : 0.5;
-
-            double totalScore = (distanceScore * DISTANCE_WEIGHT) +
-                    (workloadScore * WORKLOAD_WEIGHT) +
-                    (ratingScore * RATING_WEIGHT);
-
-            // Boost score if this is the previous delivery person
-            if (hasPrevious && person.getId().equals(previousDeliveryPersonId)) {
-                totalScore += PREVIOUS_BOOST;
-            }
-
-            scores.put(person, totalScore);
-        }
-
-        return scores.entrySet().stream()
-                .max(Map.Entry.comparingByValue())
-                .map(Map.Entry::getKey)
-                .orElseThrow(() -> new IllegalStateException("Could not determine best delivery person"));
-    }    private double calculateDistance(LocationDTO loc1, LocationDTO loc2) {
-        if (loc1 == null || loc2 == null) {
-            return Double.MAX_VALUE;
-        }
-
-        if ((loc1.getLatitude() == 0 && loc1.getLongitude() == 0) ||
-                (loc2.getLatitude() == 0 && loc2.getLongitude() == 0)) {
-            return 10.0;
-        }
-
-        final int R = 6371;
-
-        double latDistance = Math.toRadians(loc2.getLatitude() - loc1.getLatitude());
-        double lonDistance = Math.toRadians(loc2.getLongitude() - loc1.getLongitude());
-
-        double a = Math.sin(latDistance / 2) * Math.sin(latDistance / 2)
-                + Math.cos(Math.toRadians(loc1.getLatitude())) * Math.cos(Math.toRadians(loc2.getLatitude()))
-                * Math.sin(lonDistance / 2) * Math.sin(lonDistance / 2);
-
-        double c = 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
-
-        return R * c;
-    }
-
     @Override
     public DeliveryRequest updateDeliveryStatus(String deliveryId, DeliveryRequest.DeliveryReqStatus newStatus, String deliveryPersonId) {
         DeliveryRequest delivery = deliveryRepository.findById(deliveryId)
@@ -532,6 +388,7 @@ public class DeliveryAssignmentServiceImpl implements DeliveryAssignmentServiceI
                 deliveryPerson.setAvailable(true); // Always set to available
                 userRepository.save(deliveryPerson);
                 logger.info("Delivery person {} set as available after mission", deliveryPersonId);
+                eventPublisher.publishEvent(new DeliveryPersonFreedEvent(deliveryPersonId));
             }
         } catch (Exception e) {
             logger.error("Error setting delivery person {} as available: {}", deliveryPersonId, e.getMessage(), e);
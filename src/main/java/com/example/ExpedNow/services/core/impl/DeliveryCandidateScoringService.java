@@ -0,0 +1,426 @@
+package com.example.ExpedNow.services.core.impl;
+
+import com.example.ExpedNow.dto.DeliveryPersonCountDTO;
+import com.example.ExpedNow.dto.LocationDTO;
+import com.example.ExpedNow.models.AvailabilitySchedule;
+import com.example.ExpedNow.models.DeliveryRequest;
+import com.example.ExpedNow.models.User;
+import com.example.ExpedNow.models.enums.PackageType;
+import com.example.ExpedNow.models.enums.Role;
+import com.example.ExpedNow.repositories.AvailabilityRepository;
+import com.example.ExpedNow.repositories.DeliveryReqRepository;
+import com.example.ExpedNow.repositories.MissionRepository;
+import com.example.ExpedNow.repositories.UserRepository;
+import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * Loads every delivery person candidate with a fixed number of queries and scores them in memory.
+ * Assignment cost no longer grows with one round-trip per courier.
+ */
+@Service
+public class DeliveryCandidateScoringService {
+
+    private static final Logger logger = LoggerFactory.getLogger(DeliveryCandidateScoringService.class);
+
+    public static final List<Role> DELIVERY_ROLES =
+            List.of(Role.ROLE_PROFESSIONAL, Role.ROLE_DELIVERY_PERSON, Role.ROLE_TEMPORARY);
+    public static final int MAX_ACTIVE_DELIVERIES = 5;
+
+    private static final double DISTANCE_WEIGHT = 0.4;
+    private static final double WORKLOAD_WEIGHT = 0.3;
+    private static final double RATING_WEIGHT = 0.2;
+    private static final double PREVIOUS_BOOST = 0.1; // Boost for previous delivery person
+    private static final double DEFAULT_DISTANCE_KM = 10.0;
+    private static final double MAX_RATING = 5.0;
+    private static final int RELAXED_CANDIDATE_LIMIT = 3;
+
+    private final UserRepository userRepository;
+    private final DeliveryReqRepository deliveryRepository;
+    private final MissionRepository missionRepository;
+    private final AvailabilityRepository availabilityRepository;
+    private final CourierLocationIndex courierLocationIndex;
+    private final double searchRadiusKm;
+
+    @Autowired
+    public DeliveryCandidateScoringService(
+            UserRepository userRepository,
+            DeliveryReqRepository deliveryRepository,
+            MissionRepository missionRepository,
+            AvailabilityRepository availabilityRepository,
+            CourierLocationIndex courierLocationIndex,
+            @Value("${assignment.search-radius-km:25}") double searchRadiusKm) {
+        this.userRepository = userRepository;
+        this.deliveryRepository = deliveryRepository;
+        this.missionRepository = missionRepository;
+        this.availabilityRepository = availabilityRepository;
+        this.courierLocationIndex = courierLocationIndex;
+        this.searchRadiusKm = searchRadiusKm;
+    }
+
+    /**
+     * Load enabled and available delivery persons together with their workload, missions and
+     * schedules (four queries, whatever the fleet size). Locations come from the in-memory index.
+     */
+    public CandidateSnapshot loadSnapshot() {
+        List<User> couriers = userRepository.findByRolesInAndEnabled(DELIVERY_ROLES, true).stream()
+                .filter(User::isAvailable)
+                .collect(Collectors.toList());
+        return buildSnapshot(couriers);
+    }
+
+    /**
+     * Load only the couriers the location index places within the search radius of the pickup,
+     * further restricted to each courier's own deliveryRadius when set.
+     * Returns null when the pickup has no coordinates or nobody is nearby, so callers can fall back to loadSnapshot.
+     */
+    public CandidateSnapshot loadSnapshotNear(LocationDTO pickupLocation) {
+        if (pickupLocation == null || (pickupLocation.getLatitude() == 0 && pickupLocation.getLongitude() == 0)) {
+            return null;
+        }
+
+        List<String> nearbyIds = courierLocationIndex.findWithinRadius(
+                pickupLocation.getLatitude(), pickupLocation.getLongitude(), searchRadiusKm);
+        if (nearbyIds.isEmpty()) {
+            return null;
+        }
+
+        List<User> couriers = new ArrayList<>();
+        for (User user : userRepository.findAllById(nearbyIds)) {
+            if (!user.isEnabled() || !user.isAvailable() || user.getRoles() == null
+                    || user.getRoles().stream().noneMatch(DELIVERY_ROLES::contains)) {
+                continue;
+            }
+            if (user.getDeliveryRadius() > 0) {
+                double distance = calculateDistance(courierLocationIndex.getLocation(user.getId()), pickupLocation);
+                if (distance > user.getDeliveryRadius()) {
+                    continue;
+                }
+            }
+            couriers.add(user);
+        }
+
+        if (couriers.isEmpty()) {
+            return null;
+        }
+        logger.debug("Location index found {} couriers within {} km of pickup", couriers.size(), searchRadiusKm);
+        return buildSnapshot(couriers);
+    }
+
+    private CandidateSnapshot buildSnapshot(List<User> couriers) {
+        if (couriers.isEmpty()) {
+            return new CandidateSnapshot(couriers, new HashMap<>(), Map.of(), Map.of(), Map.of());
+        }
+
+        List<String> ids = couriers.stream().map(User::getId).collect(Collectors.toList());
+
+        Map<String, Integer> activeDeliveries = new HashMap<>();
+        for (DeliveryPersonCountDTO row : deliveryRepository.countActiveDeliveriesByDeliveryPersons(ids)) {
+            activeDeliveries.put(row.getId(), (int) row.getCount());
+        }
+
+        List<ObjectId> objectIds = ids.stream()
+                .filter(ObjectId::isValid)
+                .map(ObjectId::new)
+                .collect(Collectors.toList());
+        Map<String, Long> activeMissions = new HashMap<>();
+        for (DeliveryPersonCountDTO row : missionRepository.countActiveMissionsByDeliveryPersonIds(objectIds)) {
+            activeMissions.put(row.getId(), row.getCount());
+        }
+
+        Map<String, AvailabilitySchedule> schedules = new HashMap<>();
+        for (AvailabilitySchedule schedule : availabilityRepository.findByUserIdIn(ids)) {
+            // Same rule as findByUserId on duplicates: keep the first one
+            schedules.putIfAbsent(schedule.getUserId(), schedule);
+        }
+
+        Map<String, LocationDTO> locations = new HashMap<>();
+        for (String id : ids) {
+            LocationDTO location = courierLocationIndex.getLocation(id);
+            if (location != null) {
+                locations.put(id, location);
+            }
+        }
+
+        logger.debug("Loaded candidate snapshot: {} couriers, {} schedules, {} locations",
+                couriers.size(), schedules.size(), locations.size());
+        return new CandidateSnapshot(couriers, activeDeliveries, activeMissions, schedules, locations);
+    }
+
+    /**
+     * Filter the snapshot down to the couriers able to take the delivery at the given time.
+     * Falls back to relaxed constraints (schedule, package type, no active mission) when nobody matches.
+     */
+    public List<User> findSuitableDeliveryPersons(CandidateSnapshot snapshot, DeliveryRequest delivery,
+                                                  LocalDateTime deliveryTime) {
+        if (snapshot.getCouriers().isEmpty()) {
+            logger.warn("No active delivery persons found in the system");
+            return Collections.emptyList();
+        }
+
+        List<User> availablePersons = findStrictlySuitableDeliveryPersons(snapshot, delivery, deliveryTime);
+        logger.info("After strict filtering, found {} available delivery persons", availablePersons.size());
+
+        if (availablePersons.isEmpty()) {
+            logger.warn("No delivery persons available after strict filtering. Relaxing time constraints.");
+
+            availablePersons = snapshot.getCouriers().stream()
+                    .filter(user -> snapshot.hasSchedule(user.getId()))
+                    .filter(user -> canHandlePackageType(user, delivery.getPackageType()))
+                    .filter(user -> !snapshot.hasActiveMission(user.getId()))
+                    .limit(RELAXED_CANDIDATE_LIMIT)
+                    .collect(Collectors.toList());
+
+            logger.info("After relaxing constraints, found {} delivery persons with schedules", availablePersons.size());
+        }
+
+        return availablePersons;
+    }
+
+    /**
+     * Couriers that are scheduled at the given time, can carry the package and have spare capacity
+     */
+    public List<User> findStrictlySuitableDeliveryPersons(CandidateSnapshot snapshot, DeliveryRequest delivery,
+                                                          LocalDateTime deliveryTime) {
+        LocalDate date = deliveryTime.toLocalDate();
+        LocalTime time = deliveryTime.toLocalTime();
+
+        return snapshot.getCouriers().stream()
+                .filter(user -> snapshot.hasSchedule(user.getId()))
+                .filter(user -> snapshot.isAvailableAt(user.getId(), date, time))
+                .filter(user -> canHandlePackageType(user, delivery.getPackageType()))
+                .filter(user -> snapshot.getActiveDeliveryCount(user.getId()) < MAX_ACTIVE_DELIVERIES)
+                .filter(user -> !snapshot.hasActiveMission(user.getId()))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Score the candidates on distance, workload and rating and return the best one
+     */
+    public User findBestMatchDeliveryPerson(CandidateSnapshot snapshot, List<User> deliveryPersons,
+                                            LocationDTO pickupLocation, String previousDeliveryPersonId) {
+        if (deliveryPersons.isEmpty()) {
+            throw new IllegalArgumentException("No delivery persons available");
+        }
+        if (deliveryPersons.size() == 1) {
+            logger.info("Only one delivery person available, selecting them automatically");
+            return deliveryPersons.get(0);
+        }
+
+        boolean hasPrevious = previousDeliveryPersonId != null && !previousDeliveryPersonId.isEmpty();
+
+        double maxDistance = 0.1;
+        int maxWorkload = 0;
+        double[] distances = new double[deliveryPersons.size()];
+        for (int i = 0; i < deliveryPersons.size(); i++) {
+            String userId = deliveryPersons.get(i).getId();
+            LocationDTO personLocation = snapshot.getLocation(userId);
+            if (personLocation == null) {
+                distances[i] = DEFAULT_DISTANCE_KM;
+            } else {
+                distances[i] = calculateDistance(personLocation, pickupLocation);
+                maxDistance = Math.max(maxDistance, distances[i]);
+            }
+            maxWorkload = Math.max(maxWorkload, snapshot.getActiveDeliveryCount(userId));
+        }
+
+        User best = null;
+        double bestScore = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < deliveryPersons.size(); i++) {
+            User person = deliveryPersons.get(i);
+            double distanceScore = 0;
+            if (distances[i] < Double.MAX_VALUE) {
+                distanceScore = maxDistance > 0.1 ? 1 - (distances[i] / maxDistance) : 0.5;
+            }
+            int workload = snapshot.getActiveDeliveryCount(person.getId());
+            double workloadScore = maxWorkload == 0 ? 1 : 1 - ((double) workload / maxWorkload);
+            double ratingScore = person.getRating() > 0 ? person.getRating() / MAX_RATING : 0.5;
+
+            double totalScore = (distanceScore * DISTANCE_WEIGHT) +
+                    (workloadScore * WORKLOAD_WEIGHT) +
+                    (ratingScore * RATING_WEIGHT);
+
+            if (hasPrevious && person.getId().equals(previousDeliveryPersonId)) {
+                totalScore += PREVIOUS_BOOST;
+            }
+
+            if (totalScore > bestScore) {
+                bestScore = totalScore;
+                best = person;
+            }
+        }
+
+        if (best == null) {
+            throw new IllegalStateException("Could not determine best delivery person");
+        }
+        return best;
+    }
+
+    /**
+     * Match a batch of pending deliveries against one snapshot in a single greedy pass.
+     * Deliveries are served earliest-due first; each pick is recorded in the snapshot so the
+     * workload cap holds across the whole batch.
+     */
+    public List<PlannedAssignment> planAssignments(CandidateSnapshot snapshot, List<DeliveryRequest> pendingDeliveries) {
+        List<PlannedAssignment> plan = new ArrayList<>();
+        if (snapshot.getCouriers().isEmpty() || pendingDeliveries.isEmpty()) {
+            return plan;
+        }
+
+        PriorityQueue<DeliveryRequest> queue = new PriorityQueue<>(
+                Comparator.comparing(this::dueTime, Comparator.nullsLast(Comparator.naturalOrder())));
+        queue.addAll(pendingDeliveries);
+
+        LocalDateTime now = LocalDateTime.now();
+        while (!queue.isEmpty()) {
+            DeliveryRequest delivery = queue.poll();
+            LocalDateTime deliveryTime = delivery.getScheduledDate() != null ? delivery.getScheduledDate() : now;
+
+            List<User> suitablePersons = findSuitableDeliveryPersons(snapshot, delivery, deliveryTime).stream()
+                    .filter(user -> snapshot.getActiveDeliveryCount(user.getId()) < MAX_ACTIVE_DELIVERIES)
+                    .collect(Collectors.toList());
+            if (suitablePersons.isEmpty()) {
+                logger.debug("No delivery person left with capacity for delivery {}", delivery.getId());
+                continue;
+            }
+
+            LocationDTO pickupLocation = new LocationDTO(delivery.getPickupLatitude(), delivery.getPickupLongitude());
+            User bestMatch = findBestMatchDeliveryPerson(snapshot, suitablePersons, pickupLocation,
+                    delivery.getDeliveryPersonId());
+            snapshot.recordAssignment(bestMatch.getId());
+            plan.add(new PlannedAssignment(delivery, bestMatch));
+        }
+
+        return plan;
+    }
+
+    private LocalDateTime dueTime(DeliveryRequest delivery) {
+        return delivery.getScheduledDate() != null ? delivery.getScheduledDate() : delivery.getCreatedAt();
+    }
+
+    public boolean canHandlePackageType(User user, PackageType packageType) {
+        if (packageType == null) {
+            return true;
+        }
+
+        if (user.getVehicleType() == null) {
+            return packageType == PackageType.SMALL || packageType == PackageType.FRAGILE;
+        }
+
+        return switch (packageType) {
+            case SMALL, FRAGILE -> true;
+            case MEDIUM -> user.getVehicleType().getMaxWeight() >= 10;
+            case LARGE -> user.getVehicleType().getMaxWeight() >= 20;
+            case HEAVY -> user.getVehicleType().getMaxWeight() >= 50;
+        };
+    }
+
+    public double calculateDistance(LocationDTO loc1, LocationDTO loc2) {
+        if (loc1 == null || loc2 == null) {
+            return Double.MAX_VALUE;
+        }
+
+        if ((loc1.getLatitude() == 0 && loc1.getLongitude() == 0) ||
+                (loc2.getLatitude() == 0 && loc2.getLongitude() == 0)) {
+            return DEFAULT_DISTANCE_KM;
+        }
+
+        return CourierLocationIndex.distanceKm(
+                loc1.getLatitude(), loc1.getLongitude(), loc2.getLatitude(), loc2.getLongitude());
+    }
+
+    /**
+     * In-memory view of the courier pool at load time
+     */
+    public static class CandidateSnapshot {
+        private final List<User> couriers;
+        private final Map<String, Integer> activeDeliveries;
+        private final Map<String, Long> activeMissions;
+        private final Map<String, AvailabilitySchedule> schedules;
+        private final Map<String, LocationDTO> locations;
+
+        public CandidateSnapshot(List<User> couriers,
+                                 Map<String, Integer> activeDeliveries,
+                                 Map<String, Long> activeMissions,
+                                 Map<String, AvailabilitySchedule> schedules,
+                                 Map<String, LocationDTO> locations) {
+            this.couriers = couriers;
+            this.activeDeliveries = activeDeliveries;
+            this.activeMissions = activeMissions;
+            this.schedules = schedules;
+            this.locations = locations;
+        }
+
+        public List<User> getCouriers() {
+            return couriers;
+        }
+
+        public int getActiveDeliveryCount(String userId) {
+            return activeDeliveries.getOrDefault(userId, 0);
+        }
+
+        public boolean hasActiveMission(String userId) {
+            return activeMissions.getOrDefault(userId, 0L) > 0;
+        }
+
+        public void recordAssignment(String userId) {
+            activeDeliveries.merge(userId, 1, Integer::sum);
+        }
+
+        public LocationDTO getLocation(String userId) {
+            return locations.get(userId);
+        }
+
+        // Same rule as AvailabilityServiceImpl.hasExistingSchedule
+        public boolean hasSchedule(String userId) {
+            AvailabilitySchedule schedule = schedules.get(userId);
+            if (schedule == null) {
+                return false;
+            }
+            boolean hasWeeklySchedule = schedule.getWeeklySchedule() != null &&
+                    schedule.getWeeklySchedule().values().stream().anyMatch(AvailabilitySchedule.DaySchedule::isWorking);
+            boolean hasMonthlySchedule = schedule.getMonthlySchedule() != null &&
+                    !schedule.getMonthlySchedule().isEmpty();
+            return hasWeeklySchedule || hasMonthlySchedule;
+        }
+
+        public boolean isAvailableAt(String userId, LocalDate date, LocalTime time) {
+            AvailabilitySchedule schedule = schedules.get(userId);
+            if (schedule == null) {
+                return false;
+            }
+            return schedule.isAvailable(date, time) || schedule.isAvailable(date.getDayOfWeek(), time);
+        }
+    }
+
+    /**
+     * One delivery-to-courier pairing produced by planAssignments
+     */
+    public static class PlannedAssignment {
+        private final DeliveryRequest delivery;
+        private final User deliveryPerson;
+
+        public PlannedAssignment(DeliveryRequest delivery, User deliveryPerson) {
+            this.delivery = delivery;
+            this.deliveryPerson = deliveryPerson;
+        }
+
+        public DeliveryRequest getDelivery() {
+            return delivery;
+        }
+
+        public User getDeliveryPerson() {
+            return deliveryPerson;
+        }
+    }
+}
@@ -0,0 +1,244 @@
+package com.example.ExpedNow.services.core.impl;
+
+import com.example.ExpedNow.events.DeliveryCreatedEvent;
+import com.example.ExpedNow.events.DeliveryPersonFreedEvent;
+import com.example.ExpedNow.events.ScheduleChangedEvent;
+import com.example.ExpedNow.models.DeliveryRequest;
+import com.example.ExpedNow.repositories.DeliveryReqRepository;
+import com.example.ExpedNow.services.core.DeliveryAssignmentServiceInterface;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * In-process dispatch queue driven by delivery, courier and schedule events.
+ * Each pickup zone has its own bounded queue and worker thread; when a queue is full the
+ * delivery is dropped and left to the scheduled safety sweep in AutomatedDeliveryAssignmentServiceImpl.
+ * A delivery no courier could take is backed off exponentially, so courier and schedule events only
+ * retry it once its backoff has passed instead of loading the fleet for it on every event.
+ */
+@Service
+public class DeliveryDispatchService {
+
+    private static final Logger logger = LoggerFactory.getLogger(DeliveryDispatchService.class);
+
+    // Pickup grid used to spread deliveries over zone workers (~11 km cells)
+    private static final double ZONE_CELL_DEGREES = 0.1;
+
+    private final DeliveryAssignmentServiceInterface deliveryAssignmentService;
+    private final DeliveryReqRepository deliveryRepository;
+    private final int zoneCount;
+    private final int queueCapacity;
+    private final long rescanDebounceMs;
+    private final long retryBackoffMs;
+    private final long maxRetryBackoffMs;
+
+    private final List<BlockingQueue<String>> zoneQueues = new ArrayList<>();
+    private final Set<String> queuedDeliveries = ConcurrentHashMap.newKeySet();
+    private final AtomicBoolean rescanPending = new AtomicBoolean(false);
+    private final ConcurrentMap<String, RetryBackoff> backoffs = new ConcurrentHashMap<>();
+
+    private ExecutorService zoneWorkers;
+    private ScheduledExecutorService rescanScheduler;
+    private volatile boolean running;
+
+    @Autowired
+    public DeliveryDispatchService(
+            DeliveryAssignmentServiceInterface deliveryAssignmentService,
+            DeliveryReqRepository deliveryRepository,
+            @Value("${dispatch.zones:4}") int zoneCount,
+            @Value("${dispatch.queue-capacity:500}") int queueCapacity,
+            @Value("${dispatch.rescan-debounce-ms:1000}") long rescanDebounceMs,
+            @Value("${dispatch.retry-backoff-ms:5000}") long retryBackoffMs,
+            @Value("${dispatch.max-retry-backoff-ms:300000}") long maxRetryBackoffMs) {
+        this.deliveryAssignmentService = deliveryAssignmentService;
+        this.deliveryRepository = deliveryRepository;
+        this.zoneCount = Math.max(1, zoneCount);
+        this.queueCapacity = Math.max(1, queueCapacity);
+        this.rescanDebounceMs = Math.max(0, rescanDebounceMs);
+        this.retryBackoffMs = Math.max(0, retryBackoffMs);
+        this.maxRetryBackoffMs = Math.max(this.retryBackoffMs, maxRetryBackoffMs);
+    }
+
+    @PostConstruct
+    public void start() {
+        running = true;
+        AtomicInteger threadIndex = new AtomicInteger();
+        zoneWorkers = Executors.newFixedThreadPool(zoneCount, runnable -> {
+            Thread thread = new Thread(runnable, "dispatch-zone-" + threadIndex.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+        for (int i = 0; i < zoneCount; i++) {
+            BlockingQueue<String> queue = new ArrayBlockingQueue<>(queueCapacity);
+            zoneQueues.add(queue);
+            zoneWorkers.submit(() -> runZoneWorker(queue));
+        }
+        rescanScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "dispatch-rescan");
+            thread.setDaemon(true);
+            return thread;
+        });
+        logger.info("Delivery dispatch queue started with {} zone workers (capacity {} each)", zoneCount, queueCapacity);
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        if (zoneWorkers != null) {
+            zoneWorkers.shutdownNow();
+        }
+        if (rescanScheduler != null) {
+            rescanScheduler.shutdownNow();
+        }
+    }
+
+    @EventListener
+    public void onDeliveryCreated(DeliveryCreatedEvent event) {
+        enqueue(event.getDeliveryId(), event.getPickupLatitude(), event.getPickupLongitude());
+    }
+
+    @EventListener
+    public void onDeliveryPersonFreed(DeliveryPersonFreedEvent event) {
+        logger.debug("Delivery person {} freed, scheduling pending delivery rescan", event.getDeliveryPersonId());
+        requestRescan();
+    }
+
+    @EventListener
+    public void onScheduleChanged(ScheduleChangedEvent event) {
+        logger.debug("Schedule changed for user {}, scheduling pending delivery rescan", event.getUserId());
+        requestRescan();
+    }
+
+    /**
+     * Queue a delivery on its zone worker. Returns false when the zone queue is full (backpressure).
+     */
+    public boolean enqueue(String deliveryId, double pickupLatitude, double pickupLongitude) {
+        if (deliveryId == null || !running) {
+            return false;
+        }
+        if (!queuedDeliveries.add(deliveryId)) {
+            return true; // Already waiting for a worker
+        }
+        BlockingQueue<String> queue = zoneQueues.get(zoneOf(deliveryId, pickupLatitude, pickupLongitude));
+        if (!queue.offer(deliveryId)) {
+            queuedDeliveries.remove(deliveryId);
+            logger.warn("Dispatch queue full, delivery {} left for the scheduled sweep", deliveryId);
+            return false;
+        }
+        return true;
+    }
+
+    public int getQueuedCount() {
+        return queuedDeliveries.size();
+    }
+
+    private int zoneOf(String deliveryId, double latitude, double longitude) {
+        if (latitude == 0 && longitude == 0) {
+            return Math.floorMod(deliveryId.hashCode(), zoneCount);
+        }
+        long cellLat = (long) Math.floor(latitude / ZONE_CELL_DEGREES);
+        long cellLng = (long) Math.floor(longitude / ZONE_CELL_DEGREES);
+        return Math.floorMod(Long.hashCode(cellLat * 31 + cellLng), zoneCount);
+    }
+
+    // Several frees/schedule edits in a burst collapse into a single pending-delivery query
+    private void requestRescan() {
+        if (!running) {
+            return;
+        }
+        if (rescanPending.compareAndSet(false, true)) {
+            rescanScheduler.schedule(this::rescanPendingDeliveries, rescanDebounceMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void rescanPendingDeliveries() {
+        rescanPending.set(false);
+        try {
+            List<DeliveryRequest> pendingDeliveries = deliveryRepository.findByStatusAndDeliveryPersonIdIsNull(
+                    DeliveryRequest.DeliveryReqStatus.PENDING);
+            long now = System.currentTimeMillis();
+            Set<String> pendingIds = new HashSet<>();
+            int queued = 0;
+            for (DeliveryRequest delivery : pendingDeliveries) {
+                pendingIds.add(delivery.getId());
+                RetryBackoff backoff = backoffs.get(delivery.getId());
+                if (backoff != null && backoff.notBefore > now) {
+                    continue; // Failed recently; the next rescan after its backoff or the sweep retries it
+                }
+                enqueue(delivery.getId(), delivery.getPickupLatitude(), delivery.getPickupLongitude());
+                queued++;
+            }
+            // Forget deliveries that were assigned or cancelled elsewhere
+            backoffs.keySet().retainAll(pendingIds);
+            logger.debug("Rescan queued {} of {} pending deliveries", queued, pendingDeliveries.size());
+        } catch (Exception e) {
+            logger.error("Failed to rescan pending deliveries: {}", e.getMessage());
+        }
+    }
+
+    private void runZoneWorker(BlockingQueue<String> queue) {
+        while (running) {
+            String deliveryId;
+            try {
+                deliveryId = queue.poll(1, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            if (deliveryId == null) {
+                continue;
+            }
+            // Released before assignment so a new event for the same delivery can queue it again
+            queuedDeliveries.remove(deliveryId);
+            try {
+                DeliveryRequest delivery = deliveryAssignmentService.assignDelivery(deliveryId);
+                if (delivery.getDeliveryPersonId() != null && !delivery.getDeliveryPersonId().isEmpty()) {
+                    logger.info("Dispatch assigned delivery {} to delivery person {}",
+                            deliveryId, delivery.getDeliveryPersonId());
+                    backoffs.remove(deliveryId);
+                } else if (delivery.getStatus() == DeliveryRequest.DeliveryReqStatus.PENDING) {
+                    backOff(deliveryId);
+                } else {
+                    backoffs.remove(deliveryId);
+                }
+            } catch (Exception e) {
+                logger.error("Dispatch failed for delivery {}: {}", deliveryId, e.getMessage());
+                backOff(deliveryId);
+            }
+        }
+    }
+
+    // Doubles the wait after each failed attempt, up to the configured maximum
+    private void backOff(String deliveryId) {
+        long now = System.currentTimeMillis();
+        backoffs.compute(deliveryId, (id, previous) -> {
+            int attempts = previous != null ? previous.attempts + 1 : 1;
+            long delay = Math.min(maxRetryBackoffMs, retryBackoffMs << Math.min(attempts - 1, 20));
+            return new RetryBackoff(attempts, now + delay);
+        });
+    }
+
+    private static class RetryBackoff {
+        private final int attempts;
+        private final long notBefore;
+
+        private RetryBackoff(int attempts, long notBefore) {
+            this.attempts = attempts;
+            this.notBefore = notBefore;
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package com.example.ExpedNow.services.core.impl;
 
 import com.example.ExpedNow.dto.*;
+import com.example.ExpedNow.events.DeliveryCreatedEvent;
 import com.example.ExpedNow.models.ChatRoom;
 import com.example.ExpedNow.models.DeliveryRequest;
 import com.example.ExpedNow.models.Mission;
@@ -16,6 +17,7 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.context.annotation.Primary;
 import org.springframework.data.domain.Sort;
 import org.springframework.scheduling.annotation.Scheduled;
@@ -56,6 +58,9 @@ public class DeliveryServiceImpl implements DeliveryServiceInterface {
     @Autowired
     private ObjectMapper objectMapper;
 
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
     public DeliveryServiceImpl(UserServiceInterface userService,
                                ChatService chatService,
                                DeliveryReqRepository deliveryRepository,
@@ -320,9 +325,13 @@ public class DeliveryServiceImpl implements DeliveryServiceInterface {
                 }
             } catch (Exception e) {
                 logger.error("Error during immediate assignment: {}", e.getMessage(), e);
-                logger.info("Delivery {} will be picked up by scheduled assignment.",
-                        savedDelivery.getId());
             }
+            // Hand the delivery to the dispatch queue instead of waiting for the scheduled sweep
+            logger.info("Delivery {} queued for event-driven dispatch.", savedDelivery.getId());
+            eventPublisher.publishEvent(new DeliveryCreatedEvent(
+                    savedDelivery.getId(),
+                    savedDelivery.getPickupLatitude(),
+                    savedDelivery.getPickupLongitude()));
         } else {
             logger.info("Delivery {} already has a delivery person assigned: {}. Skipping assignment.",
                     savedDelivery.getId(), savedDelivery.getDeliveryPersonId());
@@ -0,0 +1,493 @@
+package com.example.ExpedNow.services.core.impl;
+
+import com.example.ExpedNow.dto.LocationDTO;
+import com.example.ExpedNow.dto.TrackingFrameDTO;
+import com.example.ExpedNow.models.DeliveryRequest;
+import com.example.ExpedNow.repositories.DeliveryReqRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.support.AbstractMessageChannel;
+import org.springframework.messaging.support.ExecutorChannelInterceptor;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.stereotype.Service;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+import org.springframework.web.socket.messaging.SessionSubscribeEvent;
+import org.springframework.web.socket.messaging.SessionUnsubscribeEvent;
+
+import java.security.Principal;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Pushes live courier position and ETA to subscribers of /topic/delivery/{id}/tracking.
+ * The ingest path keeps only the latest frame per delivery (older frames are overwritten, never queued).
+ * A tick sends that frame straight to each subscriber's session, at most once per min interval and
+ * only when the subscriber's previous frame has left the outbound channel, so a slow client just
+ * skips intermediate positions instead of building up a backlog.
+ * With the broker relay, positions also travel between nodes through TrackingPositionRelay, since a
+ * courier's pings and the clients tracking that courier may be on different nodes.
+ */
+@Service
+public class DeliveryTrackingService {
+
+    private static final Logger logger = LoggerFactory.getLogger(DeliveryTrackingService.class);
+
+    private static final Pattern TRACKING_DESTINATION = Pattern.compile("^/topic/delivery/([^/]+)/tracking$");
+    private static final String SUBSCRIBER_HEADER = "trackingSubscriber";
+    private static final double MIN_OBSERVED_SPEED_KMH = 3.0;
+    private static final double SPEED_SMOOTHING = 0.3;
+    private static final Set<DeliveryRequest.DeliveryReqStatus> TRACKED_STATUSES = EnumSet.of(
+            DeliveryRequest.DeliveryReqStatus.ASSIGNED,
+            DeliveryRequest.DeliveryReqStatus.APPROVED,
+            DeliveryRequest.DeliveryReqStatus.IN_TRANSIT);
+
+    private final DeliveryReqRepository deliveryRepository;
+    private final CourierLocationIndex courierLocationIndex;
+    private final SimpMessagingTemplate messagingTemplate;
+    private final MessageChannel clientOutboundChannel;
+    private final TrackingPositionRelay positionRelay;
+    private final long tickMs;
+    private final long minIntervalMs;
+    private final long refreshMs;
+    private final double defaultSpeedKmh;
+
+    private final ConcurrentHashMap<String, ConcurrentHashMap<String, Subscriber>> subscribersByDelivery = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Set<Subscriber>> subscribersBySession = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, TrackedDelivery> trackedDeliveries = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Set<String>> deliveriesByCourier = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, TrackingFrameDTO> latestFrames = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Motion> motionByCourier = new ConcurrentHashMap<>();
+    private final AtomicLong sequence = new AtomicLong();
+
+    private ScheduledExecutorService scheduler;
+
+    @Autowired
+    public DeliveryTrackingService(
+            DeliveryReqRepository deliveryRepository,
+            CourierLocationIndex courierLocationIndex,
+            SimpMessagingTemplate messagingTemplate,
+            @Qualifier("clientOutboundChannel") MessageChannel clientOutboundChannel,
+            TrackingPositionRelay positionRelay,
+            @Value("${tracking.tick-ms:200}") long tickMs,
+            @Value("${tracking.min-interval-ms:1000}") long minIntervalMs,
+            @Value("${tracking.refresh-ms:15000}") long refreshMs,
+            @Value("${tracking.default-speed-kmh:25}") double defaultSpeedKmh) {
+        this.deliveryRepository = deliveryRepository;
+        this.courierLocationIndex = courierLocationIndex;
+        this.messagingTemplate = messagingTemplate;
+        this.clientOutboundChannel = clientOutboundChannel;
+        this.positionRelay = positionRelay;
+        this.tickMs = Math.max(10, tickMs);
+        this.minIntervalMs = Math.max(0, minIntervalMs);
+        this.refreshMs = Math.max(1000, refreshMs);
+        this.defaultSpeedKmh = defaultSpeedKmh > 0 ? defaultSpeedKmh : 25;
+    }
+
+    @PostConstruct
+    public void start() {
+        if (clientOutboundChannel instanceof AbstractMessageChannel channel) {
+            channel.addInterceptor(new InFlightReleaser());
+        }
+        positionRelay.setListener(this::applyPosition);
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "delivery-tracking");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::dispatchFrames, tickMs, tickMs, TimeUnit.MILLISECONDS);
+        scheduler.scheduleWithFixedDelay(this::refreshTrackedDeliveries, refreshMs, refreshMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    /**
+     * Called by the ingest path for every accepted position. O(1) when nobody on this node tracks the
+     * courier (plus one broker publish with the relay).
+     */
+    public void onPosition(String courierId, double latitude, double longitude, Date timestamp) {
+        positionRelay.publish(courierId, latitude, longitude, timestamp);
+        applyPosition(courierId, latitude, longitude, timestamp);
+    }
+
+    // Positions of this node's pings and, with the relay, the ones other nodes received
+    private void applyPosition(String courierId, double latitude, double longitude, Date timestamp) {
+        Set<String> deliveryIds = deliveriesByCourier.get(courierId);
+        if (deliveryIds == null || deliveryIds.isEmpty()) {
+            return;
+        }
+        double speedKmh = updateMotion(courierId, latitude, longitude, timestamp);
+        for (String deliveryId : deliveryIds) {
+            TrackedDelivery delivery = trackedDeliveries.get(deliveryId);
+            if (delivery != null) {
+                latestFrames.put(deliveryId, buildFrame(delivery, latitude, longitude, timestamp, speedKmh));
+            }
+        }
+    }
+
+    public int getTrackedDeliveryCount() {
+        return trackedDeliveries.size();
+    }
+
+    @EventListener
+    public void handleSubscribe(SessionSubscribeEvent event) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.wrap(event.getMessage());
+        String destination = accessor.getDestination();
+        if (destination == null) {
+            return;
+        }
+        Matcher matcher = TRACKING_DESTINATION.matcher(destination);
+        if (!matcher.matches() || accessor.getSessionId() == null || accessor.getSubscriptionId() == null) {
+            return;
+        }
+        Subscriber subscriber = new Subscriber(accessor.getSessionId(), accessor.getSubscriptionId(),
+                destination, matcher.group(1));
+        Principal user = event.getUser();
+        // Claimed under the session right away so an unsubscribe or disconnect handled before the
+        // registration below removes it; frames only go to subscribers registered per delivery
+        subscribersBySession.computeIfAbsent(subscriber.sessionId, id -> ConcurrentHashMap.newKeySet())
+                .add(subscriber);
+        // Loads the delivery, so keep it off the inbound channel threads
+        scheduler.execute(() -> registerSubscriber(subscriber, user));
+    }
+
+    @EventListener
+    public void handleUnsubscribe(SessionUnsubscribeEvent event) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.wrap(event.getMessage());
+        Set<Subscriber> subscribers = subscribersBySession.get(accessor.getSessionId());
+        if (subscribers == null) {
+            return;
+        }
+        for (Subscriber subscriber : subscribers) {
+            if (subscriber.subscriptionId.equals(accessor.getSubscriptionId())) {
+                removeSubscriber(subscriber);
+            }
+        }
+    }
+
+    @EventListener
+    public void handleDisconnect(SessionDisconnectEvent event) {
+        Set<Subscriber> subscribers = subscribersBySession.remove(event.getSessionId());
+        if (subscribers != null) {
+            subscribers.forEach(this::removeSubscriber);
+        }
+    }
+
+    private void registerSubscriber(Subscriber subscriber, Principal user) {
+        try {
+            TrackedDelivery delivery = trackedDeliveries.get(subscriber.deliveryId);
+            if (delivery == null) {
+                Optional<DeliveryRequest> loaded = deliveryRepository.findById(subscriber.deliveryId);
+                if (loaded.isEmpty()) {
+                    releaseSessionClaim(subscriber);
+                    return;
+                }
+                delivery = TrackedDelivery.from(loaded.get());
+            }
+            if (!canTrack(user, delivery)) {
+                logger.warn("User {} is not allowed to track delivery {}",
+                        user != null ? user.getName() : null, subscriber.deliveryId);
+                releaseSessionClaim(subscriber);
+                return;
+            }
+            if (!isClaimed(subscriber)) {
+                return; // Unsubscribed or disconnected while loading
+            }
+            subscribersByDelivery.computeIfAbsent(subscriber.deliveryId, id -> new ConcurrentHashMap<>())
+                    .put(subscriber.key(), subscriber);
+            track(delivery);
+            // A disconnect between the check above and the insert found nothing to remove: undo it here
+            if (!isClaimed(subscriber)) {
+                removeSubscriber(subscriber);
+                return;
+            }
+
+            // Give the new subscriber the current position right away instead of waiting for the next ping
+            TrackingFrameDTO frame = latestFrames.get(delivery.deliveryId);
+            if (frame == null && delivery.courierId != null) {
+                LocationDTO location = courierLocationIndex.getLocation(delivery.courierId);
+                if (location != null) {
+                    Date updatedAt = courierLocationIndex.getLastUpdated(delivery.courierId);
+                    frame = buildFrame(delivery, location.getLatitude(), location.getLongitude(),
+                            updatedAt != null ? updatedAt : new Date(), defaultSpeedKmh);
+                    latestFrames.putIfAbsent(delivery.deliveryId, frame);
+                }
+            }
+            if (frame != null) {
+                send(subscriber, frame, System.currentTimeMillis());
+            }
+        } catch (Exception e) {
+            logger.error("Failed to register tracking subscriber for delivery {}: {}",
+                    subscriber.deliveryId, e.getMessage());
+        }
+    }
+
+    private boolean isClaimed(Subscriber subscriber) {
+        Set<Subscriber> sessionSubscribers = subscribersBySession.get(subscriber.sessionId);
+        return sessionSubscribers != null && sessionSubscribers.contains(subscriber);
+    }
+
+    private void releaseSessionClaim(Subscriber subscriber) {
+        subscribersBySession.computeIfPresent(subscriber.sessionId, (id, subscribers) -> {
+            subscribers.remove(subscriber);
+            return subscribers.isEmpty() ? null : subscribers;
+        });
+    }
+
+    private void removeSubscriber(Subscriber subscriber) {
+        Set<Subscriber> sessionSubscribers = subscribersBySession.get(subscriber.sessionId);
+        if (sessionSubscribers != null) {
+            sessionSubscribers.remove(subscriber);
+        }
+        subscribersByDelivery.computeIfPresent(subscriber.deliveryId, (id, subscribers) -> {
+            subscribers.remove(subscriber.key());
+            return subscribers.isEmpty() ? null : subscribers;
+        });
+        if (!subscribersByDelivery.containsKey(subscriber.deliveryId)) {
+            untrack(subscriber.deliveryId);
+        }
+    }
+
+    private void track(TrackedDelivery delivery) {
+        TrackedDelivery previous = trackedDeliveries.put(delivery.deliveryId, delivery);
+        if (previous != null && previous.courierId != null && !previous.courierId.equals(delivery.courierId)) {
+            removeCourierDelivery(previous.courierId, delivery.deliveryId);
+        }
+        if (delivery.courierId != null && TRACKED_STATUSES.contains(delivery.status)) {
+            deliveriesByCourier.computeIfAbsent(delivery.courierId, id -> ConcurrentHashMap.newKeySet())
+                    .add(delivery.deliveryId);
+            positionRelay.follow(delivery.courierId);
+        } else if (delivery.courierId != null) {
+            // Finished or cancelled: stop producing frames but keep the subscribers until they leave
+            removeCourierDelivery(delivery.courierId, delivery.deliveryId);
+        }
+    }
+
+    private void untrack(String deliveryId) {
+        TrackedDelivery delivery = trackedDeliveries.remove(deliveryId);
+        latestFrames.remove(deliveryId);
+        if (delivery != null && delivery.courierId != null) {
+            removeCourierDelivery(delivery.courierId, deliveryId);
+        }
+    }
+
+    private void removeCourierDelivery(String courierId, String deliveryId) {
+        deliveriesByCourier.computeIfPresent(courierId, (id, deliveryIds) -> {
+            deliveryIds.remove(deliveryId);
+            return deliveryIds.isEmpty() ? null : deliveryIds;
+        });
+        if (!deliveriesByCourier.containsKey(courierId)) {
+            motionByCourier.remove(courierId);
+            positionRelay.unfollow(courierId);
+        }
+    }
+
+    private void dispatchFrames() {
+        long now = System.currentTimeMillis();
+        try {
+            for (Map.Entry<String, TrackingFrameDTO> entry : latestFrames.entrySet()) {
+                Map<String, Subscriber> subscribers = subscribersByDelivery.get(entry.getKey());
+                if (subscribers == null) {
+                    continue;
+                }
+                TrackingFrameDTO frame = entry.getValue();
+                for (Subscriber subscriber : subscribers.values()) {
+                    if (frame.getSequence() > subscriber.lastSequence
+                            && now - subscriber.lastSentAt >= minIntervalMs
+                            && !subscriber.inFlight) {
+                        send(subscriber, frame, now);
+                    }
+                }
+            }
+        } catch (Exception e) {
+            logger.error("Tracking dispatch failed: {}", e.getMessage());
+        }
+    }
+
+    private void send(Subscriber subscriber, TrackingFrameDTO frame, long now) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setSessionId(subscriber.sessionId);
+        accessor.setSubscriptionId(subscriber.subscriptionId);
+        accessor.setDestination(subscriber.destination);
+        accessor.setHeader(SUBSCRIBER_HEADER, subscriber);
+        accessor.setLeaveMutable(true);
+        Message<?> message = messagingTemplate.getMessageConverter().toMessage(frame, accessor.getMessageHeaders());
+        if (message == null) {
+            return;
+        }
+        subscriber.inFlight = true;
+        subscriber.lastSentAt = now;
+        subscriber.lastSequence = frame.getSequence();
+        try {
+            clientOutboundChannel.send(message);
+        } catch (Exception e) {
+            subscriber.inFlight = false;
+            logger.debug("Tracking frame to session {} rejected: {}", subscriber.sessionId, e.getMessage());
+        }
+    }
+
+    // Picks up status changes and courier (re)assignment of every tracked delivery in one query
+    private void refreshTrackedDeliveries() {
+        if (trackedDeliveries.isEmpty()) {
+            return;
+        }
+        try {
+            for (DeliveryRequest delivery : deliveryRepository.findAllById(new ArrayList<>(trackedDeliveries.keySet()))) {
+                if (subscribersByDelivery.containsKey(delivery.getId())) {
+                    track(TrackedDelivery.from(delivery));
+                }
+            }
+        } catch (Exception e) {
+            logger.error("Failed to refresh tracked deliveries: {}", e.getMessage());
+        }
+    }
+
+    private TrackingFrameDTO buildFrame(TrackedDelivery delivery, double latitude, double longitude,
+                                        Date timestamp, double speedKmh) {
+        boolean inTransit = delivery.status == DeliveryRequest.DeliveryReqStatus.IN_TRANSIT;
+        double targetLatitude = inTransit ? delivery.dropoffLatitude : delivery.pickupLatitude;
+        double targetLongitude = inTransit ? delivery.dropoffLongitude : delivery.pickupLongitude;
+        double remainingKm = (targetLatitude == 0 && targetLongitude == 0)
+                ? 0
+                : CourierLocationIndex.distanceKm(latitude, longitude, targetLatitude, targetLongitude);
+        long etaSeconds = Math.round(remainingKm / speedKmh * 3600);
+        return new TrackingFrameDTO(delivery.deliveryId, delivery.courierId, latitude, longitude, timestamp,
+                delivery.status != null ? delivery.status.name() : null,
+                inTransit ? "DROPOFF" : "PICKUP", remainingKm, etaSeconds, sequence.incrementAndGet());
+    }
+
+    // Smoothed speed from consecutive positions, falling back to the configured default when standing still
+    private double updateMotion(String courierId, double latitude, double longitude, Date timestamp) {
+        Motion motion = motionByCourier.compute(courierId, (id, previous) -> {
+            if (previous == null) {
+                return new Motion(latitude, longitude, timestamp.getTime(), 0);
+            }
+            long elapsedMs = timestamp.getTime() - previous.timestampMs;
+            if (elapsedMs <= 0) {
+                return previous;
+            }
+            double observed = CourierLocationIndex.distanceKm(previous.latitude, previous.longitude, latitude, longitude)
+                    / (elapsedMs / 3_600_000.0);
+            double smoothed = previous.speedKmh == 0
+                    ? observed
+                    : SPEED_SMOOTHING * observed + (1 - SPEED_SMOOTHING) * previous.speedKmh;
+            return new Motion(latitude, longitude, timestamp.getTime(), smoothed);
+        });
+        return motion.speedKmh >= MIN_OBSERVED_SPEED_KMH ? motion.speedKmh : defaultSpeedKmh;
+    }
+
+    private static boolean canTrack(Principal user, TrackedDelivery delivery) {
+        if (user == null) {
+            return false;
+        }
+        String userId = user.getName();
+        if (userId.equals(delivery.clientId) || userId.equals(delivery.courierId)) {
+            return true;
+        }
+        if (user instanceof Authentication authentication) {
+            for (GrantedAuthority authority : authentication.getAuthorities()) {
+                String role = authority.getAuthority();
+                if ("ROLE_ADMIN".equals(role) || "ADMIN".equals(role)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    // Clears a subscriber's in-flight flag once the outbound channel has handed its frame to the session
+    private static class InFlightReleaser implements ExecutorChannelInterceptor {
+        @Override
+        public void afterMessageHandled(Message<?> message, MessageChannel channel, MessageHandler handler, Exception ex) {
+            Object subscriber = message.getHeaders().get(SUBSCRIBER_HEADER);
+            if (subscriber instanceof Subscriber tracked) {
+                tracked.inFlight = false;
+            }
+        }
+    }
+
+    private static class Subscriber {
+        private final String sessionId;
+        private final String subscriptionId;
+        private final String destination;
+        private final String deliveryId;
+        private volatile boolean inFlight;
+        private volatile long lastSentAt;
+        private volatile long lastSequence;
+
+        private Subscriber(String sessionId, String subscriptionId, String destination, String deliveryId) {
+            this.sessionId = sessionId;
+            this.subscriptionId = subscriptionId;
+            this.destination = destination;
+            this.deliveryId = deliveryId;
+        }
+
+        private String key() {
+            return sessionId + ":" + subscriptionId;
+        }
+    }
+
+    private static class TrackedDelivery {
+        private final String deliveryId;
+        private final String clientId;
+        private final String courierId;
+        private final DeliveryRequest.DeliveryReqStatus status;
+        private final double pickupLatitude;
+        private final double pickupLongitude;
+        private final double dropoffLatitude;
+        private final double dropoffLongitude;
+
+        private TrackedDelivery(String deliveryId, String clientId, String courierId,
+                                DeliveryRequest.DeliveryReqStatus status, double pickupLatitude,
+                                double pickupLongitude, double dropoffLatitude, double dropoffLongitude) {
+            this.deliveryId = deliveryId;
+            this.clientId = clientId;
+            this.courierId = courierId;
+            this.status = status;
+            this.pickupLatitude = pickupLatitude;
+            this.pickupLongitude = pickupLongitude;
+            this.dropoffLatitude = dropoffLatitude;
+            this.dropoffLongitude = dropoffLongitude;
+        }
+
+        private static TrackedDelivery from(DeliveryRequest delivery) {
+            return new TrackedDelivery(delivery.getId(), delivery.getClientId(), delivery.getDeliveryPersonId(),
+                    delivery.getStatus(), delivery.getPickupLatitude(), delivery.getPickupLongitude(),
+                    delivery.getDeliveryLatitude(), delivery.getDeliveryLongitude());
+        }
+    }
+
+    private static class Motion {
+        private final double latitude;
+        private final double longitude;
+        private final long timestampMs;
+        private final double speedKmh;
+
+        private Motion(double latitude, double longitude, long timestampMs, double speedKmh) {
+            this.latitude = latitude;
+            this.longitude = longitude;
+            this.timestampMs = timestampMs;
+            this.speedKmh = speedKmh;
+        }
+    }
+}
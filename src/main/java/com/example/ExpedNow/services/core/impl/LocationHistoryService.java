@@ -0,0 +1,466 @@
+package com.example.ExpedNow.services.core.impl;
+
+import com.example.ExpedNow.events.DeliveryPersonFreedEvent;
+import com.example.ExpedNow.models.DeliveryRequest;
+import com.example.ExpedNow.models.DeliveryRoute;
+import com.example.ExpedNow.models.LocationHistoryPoint;
+import com.example.ExpedNow.repositories.DeliveryReqRepository;
+import com.example.ExpedNow.repositories.DeliveryRouteRepository;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.CollectionOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.timeseries.Granularity;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Append-only courier location history in the location_history time-series collection.
+ * Pings from the ingest path are delta-filtered per courier, tagged with the delivery the courier was
+ * carrying at the ping's timestamp and inserted in batches. Raw points expire after the retention window; before that, each finished
+ * delivery's track is simplified with Douglas-Peucker and kept as a DeliveryRoute.
+ */
+@Service
+public class LocationHistoryService {
+
+    private static final Logger logger = LoggerFactory.getLogger(LocationHistoryService.class);
+
+    private static final double METERS_PER_DEGREE = 111_320.0;
+    private static final List<DeliveryRequest.DeliveryReqStatus> STATUS_PRIORITY = List.of(
+            DeliveryRequest.DeliveryReqStatus.IN_TRANSIT,
+            DeliveryRequest.DeliveryReqStatus.APPROVED,
+            DeliveryRequest.DeliveryReqStatus.ASSIGNED);
+
+    private final MongoTemplate mongoTemplate;
+    private final DeliveryReqRepository deliveryRepository;
+    private final DeliveryRouteRepository deliveryRouteRepository;
+    private final double minDistanceMeters;
+    private final long maxGapMs;
+    private final int bufferCapacity;
+    private final long deliveryCacheMs;
+    private final long retentionMs;
+    private final long compactAfterMs;
+    private final double simplifyToleranceMeters;
+
+    private final ConcurrentLinkedQueue<PendingPoint> buffer = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger bufferedCount = new AtomicInteger();
+    private final ConcurrentHashMap<String, PendingPoint> lastRecorded = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, ActiveDelivery> activeDeliveries = new ConcurrentHashMap<>();
+    private volatile boolean collectionReady;
+
+    @Autowired
+    public LocationHistoryService(
+            MongoTemplate mongoTemplate,
+            DeliveryReqRepository deliveryRepository,
+            DeliveryRouteRepository deliveryRouteRepository,
+            @Value("${location.history.min-distance-m:5}") double minDistanceMeters,
+            @Value("${location.history.max-gap-ms:60000}") long maxGapMs,
+            @Value("${location.history.buffer-capacity:100000}") int bufferCapacity,
+            @Value("${location.history.delivery-cache-ms:30000}") long deliveryCacheMs,
+            @Value("${location.history.retention-days:7}") int retentionDays,
+            @Value("${location.history.compact-after-hours:24}") int compactAfterHours,
+            @Value("${location.history.simplify-tolerance-m:10}") double simplifyToleranceMeters) {
+        this.mongoTemplate = mongoTemplate;
+        this.deliveryRepository = deliveryRepository;
+        this.deliveryRouteRepository = deliveryRouteRepository;
+        this.minDistanceMeters = Math.max(0, minDistanceMeters);
+        this.maxGapMs = Math.max(0, maxGapMs);
+        this.bufferCapacity = Math.max(1, bufferCapacity);
+        this.deliveryCacheMs = Math.max(0, deliveryCacheMs);
+        this.retentionMs = TimeUnit.DAYS.toMillis(Math.max(1, retentionDays));
+        this.compactAfterMs = Math.min(TimeUnit.HOURS.toMillis(Math.max(1, compactAfterHours)), retentionMs / 2);
+        this.simplifyToleranceMeters = Math.max(0, simplifyToleranceMeters);
+    }
+
+    /**
+     * Buffer a ping for the history unless it barely moved since the courier's last recorded point.
+     * Returns false when the point was filtered out or the buffer is full.
+     */
+    public boolean record(String courierId, double latitude, double longitude, Date timestamp) {
+        PendingPoint point = new PendingPoint(courierId, latitude, longitude, timestamp);
+        PendingPoint kept = lastRecorded.merge(courierId, point,
+                (previous, next) -> isSignificant(previous, next) ? next : previous);
+        if (kept != point) {
+            return false;
+        }
+        if (bufferedCount.incrementAndGet() > bufferCapacity) {
+            bufferedCount.decrementAndGet();
+            logger.warn("Location history buffer full, dropping point for courier {}", courierId);
+            return false;
+        }
+        buffer.add(point);
+        return true;
+    }
+
+    /**
+     * Create location_history as a time-series collection if it does not exist yet. Must run before the
+     * first insert: inserting into a missing collection silently creates a plain one, which can never be
+     * turned into a time-series collection and never gets the retention.
+     */
+    public synchronized void ensureCollection() {
+        if (collectionReady) {
+            return;
+        }
+        if (!mongoTemplate.collectionExists(LocationHistoryPoint.class)) {
+            try {
+                mongoTemplate.createCollection(LocationHistoryPoint.class, CollectionOptions.timeSeries("timestamp",
+                        options -> options.metaField("source")
+                                .granularity(Granularity.SECONDS)
+                                .expireAfter(Duration.ofMillis(retentionMs))));
+                logger.info("Created location_history time-series collection ({} day retention)",
+                        TimeUnit.MILLISECONDS.toDays(retentionMs));
+            } catch (DataAccessException e) {
+                // Another instance created it first
+                if (!mongoTemplate.collectionExists(LocationHistoryPoint.class)) {
+                    throw e;
+                }
+            }
+        }
+        collectionReady = true;
+    }
+
+    /**
+     * Insert the buffered points. Called by the ingest flusher after it writes the latest positions.
+     */
+    public synchronized void flush() {
+        if (buffer.isEmpty()) {
+            return;
+        }
+        try {
+            ensureCollection();
+        } catch (Exception e) {
+            // Points stay buffered; inserting now would create a plain collection
+            logger.error("Cannot create location_history, keeping {} points buffered: {}", bufferedCount.get(), e.getMessage());
+            return;
+        }
+        List<PendingPoint> drained = new ArrayList<>();
+        PendingPoint point;
+        while ((point = buffer.poll()) != null) {
+            bufferedCount.decrementAndGet();
+            drained.add(point);
+        }
+
+        Map<String, List<DeliveryWindow>> windowsByCourier = resolveDeliveryWindows(drained);
+        List<LocationHistoryPoint> documents = new ArrayList<>(drained.size());
+        for (PendingPoint pending : drained) {
+            String deliveryId = deliveryAt(windowsByCourier.getOrDefault(pending.courierId, List.of()),
+                    pending.timestamp.getTime());
+            documents.add(new LocationHistoryPoint(null, pending.timestamp,
+                    new LocationHistoryPoint.Source(pending.courierId, deliveryId),
+                    pending.latitude, pending.longitude));
+        }
+        try {
+            mongoTemplate.insert(documents, LocationHistoryPoint.class);
+        } catch (Exception e) {
+            // History is best effort; the latest position is already persisted by the ingest path
+            logger.error("Failed to write {} location history points: {}", documents.size(), e.getMessage());
+        }
+    }
+
+    /**
+     * Stream a courier's raw points in [from, to), oldest first. The caller must close the stream.
+     */
+    public Stream<LocationHistoryPoint> streamCourierHistory(String courierId, Date from, Date to) {
+        Query query = new Query(Criteria.where("source.courierId").is(courierId)
+                .and("timestamp").gte(from).lt(to))
+                .with(Sort.by(Sort.Direction.ASC, "timestamp"));
+        return mongoTemplate.stream(query, LocationHistoryPoint.class);
+    }
+
+    /**
+     * Route of a delivery, oldest first: the compacted track if there is one, otherwise the raw points
+     */
+    public List<DeliveryRoute.RoutePoint> getDeliveryRoute(String deliveryId) {
+        Optional<DeliveryRoute> compacted = deliveryRouteRepository.findById(deliveryId);
+        if (compacted.isPresent()) {
+            return compacted.get().getPoints();
+        }
+        try (Stream<LocationHistoryPoint> points = streamDeliveryHistory(deliveryId)) {
+            return points.map(p -> new DeliveryRoute.RoutePoint(p.getLatitude(), p.getLongitude(), p.getTimestamp()))
+                    .collect(Collectors.toList());
+        }
+    }
+
+    @EventListener
+    public void onDeliveryPersonFreed(DeliveryPersonFreedEvent event) {
+        activeDeliveries.remove(event.getDeliveryPersonId());
+    }
+
+    /**
+     * Simplify the tracks of deliveries that stopped receiving points, before their raw points expire
+     */
+    @Scheduled(fixedDelayString = "${location.history.compaction-interval-ms:3600000}",
+            initialDelayString = "${location.history.compaction-interval-ms:3600000}")
+    public void compactFinishedRoutes() {
+        long now = System.currentTimeMillis();
+        Date retentionStart = new Date(now - retentionMs);
+        Date cutoff = new Date(now - compactAfterMs);
+        try {
+            Aggregation aggregation = Aggregation.newAggregation(
+                    Aggregation.match(Criteria.where("timestamp").gte(retentionStart)
+                            .and("source.deliveryId").ne(null)),
+                    Aggregation.group("source.deliveryId").max("timestamp").as("lastSeen"),
+                    Aggregation.match(Criteria.where("lastSeen").lt(cutoff)));
+            List<String> candidates = mongoTemplate.aggregate(aggregation, LocationHistoryPoint.class, Document.class)
+                    .getMappedResults().stream()
+                    .map(document -> document.getString("_id"))
+                    .collect(Collectors.toList());
+            if (candidates.isEmpty()) {
+                return;
+            }
+
+            Set<String> alreadyCompacted = new HashSet<>();
+            deliveryRouteRepository.findAllById(candidates).forEach(route -> alreadyCompacted.add(route.getDeliveryId()));
+            int compacted = 0;
+            for (String deliveryId : candidates) {
+                if (!alreadyCompacted.contains(deliveryId) && compactRoute(deliveryId)) {
+                    compacted++;
+                }
+            }
+            if (compacted > 0) {
+                logger.info("Compacted location history of {} deliveries", compacted);
+            }
+        } catch (Exception e) {
+            logger.error("Location history compaction failed: {}", e.getMessage());
+        }
+    }
+
+    private boolean compactRoute(String deliveryId) {
+        List<LocationHistoryPoint> raw;
+        try (Stream<LocationHistoryPoint> points = streamDeliveryHistory(deliveryId)) {
+            raw = points.collect(Collectors.toList());
+        }
+        if (raw.isEmpty()) {
+            return false;
+        }
+        List<DeliveryRoute.RoutePoint> simplified = new ArrayList<>();
+        for (LocationHistoryPoint point : simplify(raw)) {
+            simplified.add(new DeliveryRoute.RoutePoint(point.getLatitude(), point.getLongitude(), point.getTimestamp()));
+        }
+
+        DeliveryRoute route = new DeliveryRoute();
+        route.setDeliveryId(deliveryId);
+        route.setCourierId(raw.get(0).getSource().getCourierId());
+        route.setPoints(simplified);
+        route.setRawPointCount(raw.size());
+        route.setStartedAt(raw.get(0).getTimestamp());
+        route.setEndedAt(raw.get(raw.size() - 1).getTimestamp());
+        route.setCompactedAt(new Date());
+        deliveryRouteRepository.save(route);
+        return true;
+    }
+
+    private Stream<LocationHistoryPoint> streamDeliveryHistory(String deliveryId) {
+        Query query = new Query(Criteria.where("source.deliveryId").is(deliveryId))
+                .with(Sort.by(Sort.Direction.ASC, "timestamp"));
+        return mongoTemplate.stream(query, LocationHistoryPoint.class);
+    }
+
+    // Douglas-Peucker on a local equirectangular projection (accurate enough at delivery scale)
+    private List<LocationHistoryPoint> simplify(List<LocationHistoryPoint> points) {
+        int n = points.size();
+        if (n <= 2 || simplifyToleranceMeters <= 0) {
+            return points;
+        }
+        double cosLat = Math.cos(Math.toRadians(points.get(0).getLatitude()));
+        double[] x = new double[n];
+        double[] y = new double[n];
+        for (int i = 0; i < n; i++) {
+            x[i] = points.get(i).getLongitude() * METERS_PER_DEGREE * cosLat;
+            y[i] = points.get(i).getLatitude() * METERS_PER_DEGREE;
+        }
+
+        boolean[] keep = new boolean[n];
+        keep[0] = true;
+        keep[n - 1] = true;
+        Deque<int[]> segments = new ArrayDeque<>();
+        segments.push(new int[]{0, n - 1});
+        while (!segments.isEmpty()) {
+            int[] segment = segments.pop();
+            int start = segment[0];
+            int end = segment[1];
+            double maxDistance = 0;
+            int farthest = -1;
+            for (int i = start + 1; i < end; i++) {
+                double distance = distanceToSegment(x[i], y[i], x[start], y[start], x[end], y[end]);
+                if (distance > maxDistance) {
+                    maxDistance = distance;
+                    farthest = i;
+                }
+            }
+            if (farthest >= 0 && maxDistance > simplifyToleranceMeters) {
+                keep[farthest] = true;
+                segments.push(new int[]{start, farthest});
+                segments.push(new int[]{farthest, end});
+            }
+        }
+
+        List<LocationHistoryPoint> simplified = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            if (keep[i]) {
+                simplified.add(points.get(i));
+            }
+        }
+        return simplified;
+    }
+
+    private static double distanceToSegment(double px, double py, double ax, double ay, double bx, double by) {
+        double dx = bx - ax;
+        double dy = by - ay;
+        double lengthSquared = dx * dx + dy * dy;
+        double t = lengthSquared == 0 ? 0 : Math.max(0, Math.min(1, ((px - ax) * dx + (py - ay) * dy) / lengthSquared));
+        double cx = ax + t * dx - px;
+        double cy = ay + t * dy - py;
+        return Math.sqrt(cx * cx + cy * cy);
+    }
+
+    private boolean isSignificant(PendingPoint previous, PendingPoint next) {
+        long gap = Math.abs(next.timestamp.getTime() - previous.timestamp.getTime());
+        if (gap >= maxGapMs) {
+            return true;
+        }
+        double meters = CourierLocationIndex.distanceKm(previous.latitude, previous.longitude,
+                next.latitude, next.longitude) * 1000;
+        return meters >= minDistanceMeters;
+    }
+
+    /*
+     * Deliveries each courier carried during the drained points, from the cache where it covers them and
+     * otherwise with one query. The points were accepted up to a flush interval ago (or up to the ingest's
+     * max ping age for replayed pings), so the query also returns deliveries completed since the oldest of
+     * them and every point is matched against the assignment/completion window of its timestamp.
+     */
+    private Map<String, List<DeliveryWindow>> resolveDeliveryWindows(List<PendingPoint> points) {
+        Map<String, Long> oldestByCourier = new HashMap<>();
+        for (PendingPoint point : points) {
+            oldestByCourier.merge(point.courierId, point.timestamp.getTime(), Math::min);
+        }
+        long now = System.currentTimeMillis();
+        Map<String, List<DeliveryWindow>> result = new HashMap<>();
+        List<String> stale = new ArrayList<>();
+        long staleSince = Long.MAX_VALUE;
+        for (Map.Entry<String, Long> entry : oldestByCourier.entrySet()) {
+            ActiveDelivery cached = activeDeliveries.get(entry.getKey());
+            if (cached != null && now - cached.resolvedAt < deliveryCacheMs && entry.getValue() >= cached.validFrom) {
+                result.put(entry.getKey(), cached.window != null ? List.of(cached.window) : List.of());
+            } else {
+                stale.add(entry.getKey());
+                staleSince = Math.min(staleSince, entry.getValue());
+            }
+        }
+        if (stale.isEmpty()) {
+            return result;
+        }
+
+        List<DeliveryRequest> deliveries;
+        try {
+            deliveries = deliveryRepository.findDeliveriesCarriedSince(stale, toLocalDateTime(staleSince));
+        } catch (Exception e) {
+            logger.error("Failed to resolve deliveries for location history: {}", e.getMessage());
+            return result;
+        }
+        Map<String, DeliveryWindow> activeByCourier = new HashMap<>();
+        for (DeliveryRequest delivery : deliveries) {
+            DeliveryWindow window = new DeliveryWindow(delivery);
+            result.computeIfAbsent(delivery.getDeliveryPersonId(), courierId -> new ArrayList<>()).add(window);
+            if (STATUS_PRIORITY.contains(delivery.getStatus())) {
+                activeByCourier.merge(delivery.getDeliveryPersonId(), window, DeliveryWindow::preferred);
+            }
+        }
+        for (String courierId : stale) {
+            DeliveryWindow active = activeByCourier.get(courierId);
+            // The cache answers later points from the delivery's assignment on, or from now if there is none
+            activeDeliveries.put(courierId, new ActiveDelivery(active, active != null ? active.start : now, now));
+        }
+        return result;
+    }
+
+    private static String deliveryAt(List<DeliveryWindow> windows, long timestamp) {
+        DeliveryWindow match = null;
+        for (DeliveryWindow window : windows) {
+            if (window.start <= timestamp && timestamp <= window.end) {
+                match = match == null ? window : DeliveryWindow.preferred(match, window);
+            }
+        }
+        return match != null ? match.deliveryId : null;
+    }
+
+    private static long toEpochMillis(LocalDateTime dateTime) {
+        return dateTime.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    private static LocalDateTime toLocalDateTime(long epochMillis) {
+        return LocalDateTime.ofInstant(new Date(epochMillis).toInstant(), ZoneId.systemDefault());
+    }
+
+    private static class PendingPoint {
+        private final String courierId;
+        private final double latitude;
+        private final double longitude;
+        private final Date timestamp;
+
+        private PendingPoint(String courierId, double latitude, double longitude, Date timestamp) {
+            this.courierId = courierId;
+            this.latitude = latitude;
+            this.longitude = longitude;
+            this.timestamp = timestamp;
+        }
+    }
+
+    private static class ActiveDelivery {
+        private final DeliveryWindow window;
+        private final long validFrom;
+        private final long resolvedAt;
+
+        private ActiveDelivery(DeliveryWindow window, long validFrom, long resolvedAt) {
+            this.window = window;
+            this.validFrom = validFrom;
+            this.resolvedAt = resolvedAt;
+        }
+    }
+
+    // [assignedAt, completedAt] of a delivery; open-ended while it is active
+    private static class DeliveryWindow {
+        private final String deliveryId;
+        private final int rank;
+        private final long start;
+        private final long end;
+
+        private DeliveryWindow(DeliveryRequest delivery) {
+            this.deliveryId = delivery.getId();
+            // A delivery completed since the point was in transit at the time
+            int priority = STATUS_PRIORITY.indexOf(delivery.getStatus());
+            this.rank = priority >= 0 ? priority : 0;
+            this.start = delivery.getAssignedAt() != null ? toEpochMillis(delivery.getAssignedAt()) : Long.MIN_VALUE;
+            this.end = delivery.getCompletedAt() != null ? toEpochMillis(delivery.getCompletedAt()) : Long.MAX_VALUE;
+        }
+
+        // Couriers may carry several deliveries: the one furthest along, then the most recently assigned
+        private static DeliveryWindow preferred(DeliveryWindow a, DeliveryWindow b) {
+            if (a.rank != b.rank) {
+                return a.rank < b.rank ? a : b;
+            }
+            return a.start >= b.start ? a : b;
+        }
+    }
+}
@@ -0,0 +1,224 @@
+package com.example.ExpedNow.services.core.impl;
+
+import com.example.ExpedNow.dto.LocationPingDTO;
+import com.example.ExpedNow.models.UserLocation;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.geo.GeoJsonPoint;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Write-coalescing ingest path for courier GPS pings.
+ * Each ping moves the courier in CourierLocationIndex straight away and lands in a per-courier slot
+ * where later pings overwrite earlier ones; a background flusher writes the slots to user_locations
+ * as one unordered bulk upsert every flush interval, so database load is bounded by fleet size.
+ * The same flush appends the buffered pings to LocationHistoryService; live subscribers are fed
+ * through DeliveryTrackingService as each ping arrives.
+ */
+@Service
+public class LocationIngestService {
+
+    private static final Logger logger = LoggerFactory.getLogger(LocationIngestService.class);
+
+    private final MongoTemplate mongoTemplate;
+    private final CourierLocationIndex courierLocationIndex;
+    private final LocationHistoryService locationHistoryService;
+    private final DeliveryTrackingService deliveryTrackingService;
+    private final long flushIntervalMs;
+    private final int maxBatchSize;
+    private final long maxClockSkewMs;
+    private final long maxPingAgeMs;
+
+    // Latest unflushed ping per courier
+    private final ConcurrentHashMap<String, Ping> pending = new ConcurrentHashMap<>();
+
+    private ScheduledExecutorService flusher;
+
+    @Autowired
+    public LocationIngestService(
+            MongoTemplate mongoTemplate,
+            CourierLocationIndex courierLocationIndex,
+            LocationHistoryService locationHistoryService,
+            DeliveryTrackingService deliveryTrackingService,
+            @Value("${location.ingest.flush-interval-ms:500}") long flushIntervalMs,
+            @Value("${location.ingest.max-batch-size:1000}") int maxBatchSize,
+            @Value("${location.ingest.max-clock-skew-ms:2000}") long maxClockSkewMs,
+            @Value("${location.ingest.max-ping-age-ms:86400000}") long maxPingAgeMs) {
+        this.mongoTemplate = mongoTemplate;
+        this.courierLocationIndex = courierLocationIndex;
+        this.locationHistoryService = locationHistoryService;
+        this.deliveryTrackingService = deliveryTrackingService;
+        this.flushIntervalMs = Math.max(10, flushIntervalMs);
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+        this.maxClockSkewMs = Math.max(0, maxClockSkewMs);
+        this.maxPingAgeMs = Math.max(1, maxPingAgeMs);
+    }
+
+    @PostConstruct
+    public void start() {
+        flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "location-ingest-flush");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::flush, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (flusher != null) {
+            flusher.shutdown();
+        }
+        // Persist whatever is still buffered before the context goes away
+        flush();
+    }
+
+    /**
+     * Accept a single ping. Returns false when the coordinates are invalid, the timestamp is implausibly old
+     * or the ping is older than the buffered one.
+     */
+    public boolean submit(String userId, double latitude, double longitude, Date timestamp) {
+        if (userId == null || !isValid(latitude, longitude)) {
+            return false;
+        }
+        Date recordedAt = clampTimestamp(timestamp);
+        if (recordedAt == null) {
+            return false;
+        }
+        // Late pings still belong in the history even when they no longer move the live position
+        locationHistoryService.record(userId, latitude, longitude, recordedAt);
+        Date lastKnown = courierLocationIndex.getLastUpdated(userId);
+        if (lastKnown != null && recordedAt.before(lastKnown)) {
+            return false; // Out-of-order ping older than the position already held
+        }
+        Ping ping = new Ping(latitude, longitude, recordedAt);
+        Ping kept = pending.merge(userId, ping, (current, next) -> next.isNewerThan(current) ? next : current);
+        if (kept != ping) {
+            return false;
+        }
+        courierLocationIndex.update(userId, latitude, longitude, recordedAt);
+        deliveryTrackingService.onPosition(userId, latitude, longitude, recordedAt);
+        return true;
+    }
+
+    /**
+     * Accept a batch of pings from one courier (e.g. a track buffered while offline). Returns the number accepted.
+     */
+    public int submitBatch(String userId, List<LocationPingDTO> pings) {
+        if (pings == null || pings.isEmpty()) {
+            return 0;
+        }
+        int accepted = 0;
+        for (LocationPingDTO ping : pings) {
+            Date timestamp = ping.getTimestamp() != null ? new Date(ping.getTimestamp()) : null;
+            if (submit(userId, ping.getLatitude(), ping.getLongitude(), timestamp)) {
+                accepted++;
+            }
+        }
+        return accepted;
+    }
+
+    // Device clocks are not trusted: a ping from the future would become the live position and make every
+    // real ping after it look out of order, so it is pulled back to now plus the tolerated skew
+    private Date clampTimestamp(Date timestamp) {
+        long now = System.currentTimeMillis();
+        if (timestamp == null) {
+            return new Date(now);
+        }
+        if (timestamp.getTime() < now - maxPingAgeMs) {
+            return null;
+        }
+        return timestamp.getTime() > now + maxClockSkewMs ? new Date(now + maxClockSkewMs) : timestamp;
+    }
+
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * Write the buffered pings as bulk upserts keyed on userId, then append the location history
+     */
+    public synchronized void flush() {
+        if (!pending.isEmpty()) {
+            flushPositions();
+        }
+        locationHistoryService.flush();
+    }
+
+    private void flushPositions() {
+        List<String> userIds = new ArrayList<>(pending.keySet());
+        for (int from = 0; from < userIds.size(); from += maxBatchSize) {
+            Map<String, Ping> batch = new LinkedHashMap<>();
+            for (String userId : userIds.subList(from, Math.min(from + maxBatchSize, userIds.size()))) {
+                Ping ping = pending.remove(userId);
+                if (ping != null) {
+                    batch.put(userId, ping);
+                }
+            }
+            if (!batch.isEmpty()) {
+                writeBatch(batch);
+            }
+        }
+    }
+
+    private void writeBatch(Map<String, Ping> batch) {
+        BulkOperations bulkOps = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, UserLocation.class);
+        for (Map.Entry<String, Ping> entry : batch.entrySet()) {
+            Ping ping = entry.getValue();
+            Update update = new Update()
+                    .set("latitude", ping.latitude)
+                    .set("longitude", ping.longitude)
+                    .set("location", new GeoJsonPoint(ping.longitude, ping.latitude))
+                    .set("lastUpdated", ping.recordedAt);
+            bulkOps.upsert(new Query(Criteria.where("userId").is(entry.getKey())), update);
+        }
+        try {
+            bulkOps.execute();
+            logger.debug("Flushed {} courier locations", batch.size());
+        } catch (Exception e) {
+            logger.error("Failed to flush {} courier locations, retrying next cycle: {}", batch.size(), e.getMessage());
+            // Put the batch back unless a newer ping arrived meanwhile
+            batch.forEach((userId, ping) ->
+                    pending.merge(userId, ping, (current, failed) -> failed.isNewerThan(current) ? failed : current));
+        }
+    }
+
+    private static boolean isValid(double latitude, double longitude) {
+        return !Double.isNaN(latitude) && !Double.isNaN(longitude)
+                && latitude >= -90 && latitude <= 90
+                && longitude >= -180 && longitude <= 180
+                && !(latitude == 0 && longitude == 0);
+    }
+
+    private static class Ping {
+        private final double latitude;
+        private final double longitude;
+        private final Date recordedAt;
+
+        private Ping(double latitude, double longitude, Date recordedAt) {
+            this.latitude = latitude;
+            this.longitude = longitude;
+            this.recordedAt = recordedAt;
+        }
+
+        // Ties go to the newer arrival
+        private boolean isNewerThan(Ping other) {
+            return !recordedAt.before(other.recordedAt);
+        }
+    }
+}
@@ -1,23 +1,35 @@
 package com.example.ExpedNow.services.core.impl;
 
 import com.example.ExpedNow.dto.LocationDTO;
+import com.example.ExpedNow.models.DeliveryRequest;
 import com.example.ExpedNow.models.UserLocation;
+import com.example.ExpedNow.repositories.DeliveryReqRepository;
 import com.example.ExpedNow.repositories.UserLocationRepository;
 import com.example.ExpedNow.services.core.LocationServiceInterface;
 import org.springframework.context.annotation.Primary;
+import org.springframework.data.mongodb.core.geo.GeoJsonPoint;
 import org.springframework.stereotype.Service;
 
 import java.util.Date;
+import java.util.List;
 import java.util.Optional;
 
 @Service
 @Primary
 public class LocationServiceImpl implements LocationServiceInterface {
 
+    private static final double METERS_PER_KM = 1000.0;
+
     private final UserLocationRepository userLocationRepository;
+    private final DeliveryReqRepository deliveryRepository;
+    private final CourierLocationIndex courierLocationIndex;
 
-    public LocationServiceImpl(UserLocationRepository userLocationRepository) {
+    public LocationServiceImpl(UserLocationRepository userLocationRepository,
+                               DeliveryReqRepository deliveryRepository,
+                               CourierLocationIndex courierLocationIndex) {
         this.userLocationRepository = userLocationRepository;
+        this.deliveryRepository = deliveryRepository;
+        this.courierLocationIndex = courierLocationIndex;
     }
 
     /**
@@ -32,16 +44,20 @@ public class LocationServiceImpl implements LocationServiceInterface {
             location = existingLocation.get();
             location.setLatitude(latitude);
             location.setLongitude(longitude);
+            location.setLocation(new GeoJsonPoint(longitude, latitude));
             location.setLastUpdated(new Date());
         } else {
             location = new UserLocation();
             location.setUserId(userId);
             location.setLatitude(latitude);
             location.setLongitude(longitude);
+            location.setLocation(new GeoJsonPoint(longitude, latitude));
             location.setLastUpdated(new Date());
         }
 
-        return userLocationRepository.save(location);
+        UserLocation savedLocation = userLocationRepository.save(location);
+        courierLocationIndex.update(userId, latitude, longitude, savedLocation.getLastUpdated());
+        return savedLocation;
     }
 
     /**
@@ -49,6 +65,11 @@ public class LocationServiceImpl implements LocationServiceInterface {
      */
     @Override
     public LocationDTO getLastKnownLocation(String userId) {
+        LocationDTO indexed = courierLocationIndex.getLocation(userId);
+        if (indexed != null) {
+            return indexed;
+        }
+
         Optional<UserLocation> userLocation = userLocationRepository.findByUserId(userId);
 
         if (userLocation.isPresent()) {
@@ -69,4 +90,36 @@ public class LocationServiceImpl implements LocationServiceInterface {
         // For now, returning dummy coordinates
         return new LocationDTO(40.7128, -74.0060); // NYC coordinates as placeholder
     }
-}
\ No newline at end of file
+
+    /**
+     * Gets the IDs of the k users closest to a point, served from the in-memory location index
+     */
+    @Override
+    public List<String> findNearestUsers(double latitude, double longitude, int k) {
+        return courierLocationIndex.findNearest(latitude, longitude, k);
+    }
+
+    /**
+     * Gets the IDs of the users within radiusKm of a point, served from the in-memory location index
+     */
+    @Override
+    public List<String> findUsersWithinRadius(double latitude, double longitude, double radiusKm) {
+        return courierLocationIndex.findWithinRadius(latitude, longitude, radiusKm);
+    }
+
+    /**
+     * Gets the stored locations within radiusKm of a point, nearest first ($geoNear on the 2dsphere index)
+     */
+    @Override
+    public List<UserLocation> findUserLocationsNear(double latitude, double longitude, double radiusKm, int limit) {
+        return userLocationRepository.findNearest(longitude, latitude, radiusKm * METERS_PER_KM, limit);
+    }
+
+    /**
+     * Gets unassigned pending deliveries whose pickup is within radiusKm of a point, nearest first
+     */
+    @Override
+    public List<DeliveryRequest> findPendingDeliveriesNear(double latitude, double longitude, double radiusKm) {
+        return deliveryRepository.findPendingDeliveriesNear(longitude, latitude, radiusKm * METERS_PER_KM);
+    }
+}
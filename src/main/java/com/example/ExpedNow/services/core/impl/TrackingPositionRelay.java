@@ -0,0 +1,286 @@
+package com.example.ExpedNow.services.core.impl;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.messaging.simp.stomp.*;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import java.lang.reflect.Type;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Date;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Shares courier positions between nodes when the STOMP broker relay is enabled.
+ * A courier's pings reach one node while the clients tracking that courier may be connected to another,
+ * so every accepted position is also published to /topic/tracking.courier.{id} on the external broker.
+ * Each node subscribes only to the couriers it currently tracks, so the broker drops positions nobody
+ * follows, and a node ignores the positions it published itself. Without the relay this does nothing.
+ */
+@Component
+public class TrackingPositionRelay {
+
+    private static final Logger logger = LoggerFactory.getLogger(TrackingPositionRelay.class);
+
+    // Node-to-node only: WebSocketAuthInterceptor keeps clients from subscribing or sending here
+    public static final String DESTINATION_PREFIX = "/topic/tracking.courier.";
+    private static final String ORIGIN_HEADER = "x-tracking-origin";
+    private static final long RECONNECT_DELAY_MS = 5000;
+
+    private final boolean enabled;
+    private final String host;
+    private final int port;
+    private final String login;
+    private final String passcode;
+    private final String virtualHost;
+    private final TaskScheduler taskScheduler;
+    private final String nodeId = UUID.randomUUID().toString();
+
+    private final Set<String> followed = ConcurrentHashMap.newKeySet();
+    private final ConcurrentMap<String, StompSession.Subscription> subscriptions = new ConcurrentHashMap<>();
+    private volatile PositionListener listener;
+    private volatile StompSession session;
+    private volatile boolean stopped;
+    private ReactorNettyTcpStompClient stompClient;
+
+    @Autowired
+    public TrackingPositionRelay(
+            @Value("${websocket.broker.relay.enabled:false}") boolean enabled,
+            @Value("${websocket.broker.relay.host:localhost}") String host,
+            @Value("${websocket.broker.relay.port:61613}") int port,
+            @Value("${websocket.broker.relay.login:guest}") String login,
+            @Value("${websocket.broker.relay.passcode:guest}") String passcode,
+            @Value("${websocket.broker.relay.virtual-host:}") String virtualHost,
+            @Qualifier("taskScheduler") TaskScheduler taskScheduler) {
+        this.enabled = enabled;
+        this.host = host;
+        this.port = port;
+        this.login = login;
+        this.passcode = passcode;
+        this.virtualHost = virtualHost;
+        this.taskScheduler = taskScheduler;
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        stompClient = new ReactorNettyTcpStompClient(host, port);
+        stompClient.setMessageConverter(new MappingJackson2MessageConverter());
+        stompClient.setTaskScheduler(taskScheduler);
+        stompClient.setDefaultHeartbeat(new long[]{25000, 25000});
+        connect();
+    }
+
+    @PreDestroy
+    public void stop() {
+        stopped = true;
+        StompSession current = session;
+        if (current != null && current.isConnected()) {
+            current.disconnect();
+        }
+        if (stompClient != null) {
+            stompClient.shutdown();
+        }
+    }
+
+    /**
+     * Receives positions published by the other nodes for the couriers this node follows
+     */
+    public void setListener(PositionListener listener) {
+        this.listener = listener;
+    }
+
+    public void publish(String courierId, double latitude, double longitude, Date timestamp) {
+        StompSession current = session;
+        if (current == null || !current.isConnected()) {
+            return;
+        }
+        StompHeaders headers = new StompHeaders();
+        headers.setDestination(DESTINATION_PREFIX + courierId);
+        headers.set(ORIGIN_HEADER, nodeId);
+        try {
+            current.send(headers, new Position(courierId, latitude, longitude, timestamp.getTime()));
+        } catch (Exception e) {
+            logger.debug("Failed to publish position of courier {}: {}", courierId, e.getMessage());
+        }
+    }
+
+    /**
+     * Start receiving the courier's positions from the other nodes. Idempotent.
+     */
+    public void follow(String courierId) {
+        if (enabled && followed.add(courierId)) {
+            subscribe(session, courierId);
+        }
+    }
+
+    public void unfollow(String courierId) {
+        if (!enabled || !followed.remove(courierId)) {
+            return;
+        }
+        StompSession.Subscription subscription = subscriptions.remove(courierId);
+        if (subscription != null) {
+            try {
+                subscription.unsubscribe();
+            } catch (Exception e) {
+                logger.debug("Failed to unsubscribe from courier {}: {}", courierId, e.getMessage());
+            }
+        }
+    }
+
+    private void connect() {
+        if (stopped) {
+            return;
+        }
+        StompHeaders connectHeaders = new StompHeaders();
+        connectHeaders.setLogin(login);
+        connectHeaders.setPasscode(passcode);
+        if (StringUtils.hasText(virtualHost)) {
+            connectHeaders.setHost(virtualHost);
+        }
+        stompClient.connectAsync(connectHeaders, new RelaySessionHandler()).whenComplete((connected, error) -> {
+            if (error != null) {
+                logger.warn("Tracking relay connection to {}:{} failed, retrying: {}", host, port, error.getMessage());
+                scheduleReconnect();
+            }
+        });
+    }
+
+    private void scheduleReconnect() {
+        if (!stopped) {
+            taskScheduler.schedule(this::connect, Instant.now().plus(Duration.ofMillis(RECONNECT_DELAY_MS)));
+        }
+    }
+
+    private void subscribe(StompSession current, String courierId) {
+        if (current == null || !current.isConnected()) {
+            return; // Subscribed once the connection is (re)established
+        }
+        try {
+            StompSession.Subscription subscription = current.subscribe(DESTINATION_PREFIX + courierId, new PositionHandler());
+            StompSession.Subscription previous = subscriptions.put(courierId, subscription);
+            if (previous != null && previous != subscription) {
+                previous.unsubscribe();
+            }
+            // Unfollowed while subscribing
+            if (!followed.contains(courierId) && subscriptions.remove(courierId, subscription)) {
+                subscription.unsubscribe();
+            }
+        } catch (Exception e) {
+            logger.debug("Failed to subscribe to courier {}: {}", courierId, e.getMessage());
+        }
+    }
+
+    private class RelaySessionHandler extends StompSessionHandlerAdapter {
+
+        @Override
+        public void afterConnected(StompSession connected, StompHeaders connectedHeaders) {
+            session = connected;
+            subscriptions.clear();
+            followed.forEach(courierId -> subscribe(connected, courierId));
+            logger.info("Tracking relay connected to {}:{} ({} couriers followed)", host, port, followed.size());
+        }
+
+        @Override
+        public void handleTransportError(StompSession failed, Throwable exception) {
+            // A failed connect attempt is retried by connect() itself
+            if (failed.isConnected() || session != failed) {
+                return;
+            }
+            logger.warn("Tracking relay connection lost, reconnecting: {}", exception.getMessage());
+            session = null;
+            scheduleReconnect();
+        }
+    }
+
+    private class PositionHandler implements StompFrameHandler {
+
+        @Override
+        public Type getPayloadType(StompHeaders headers) {
+            return Position.class;
+        }
+
+        @Override
+        public void handleFrame(StompHeaders headers, Object payload) {
+            PositionListener current = listener;
+            if (current == null || nodeId.equals(headers.getFirst(ORIGIN_HEADER))
+                    || !(payload instanceof Position position)) {
+                return;
+            }
+            try {
+                current.onPosition(position.getCourierId(), position.getLatitude(), position.getLongitude(),
+                        new Date(position.getTimestamp()));
+            } catch (Exception e) {
+                logger.warn("Failed to apply relayed position of courier {}: {}", position.getCourierId(), e.getMessage());
+            }
+        }
+    }
+
+    @FunctionalInterface
+    public interface PositionListener {
+        void onPosition(String courierId, double latitude, double longitude, Date timestamp);
+    }
+
+    public static class Position {
+        private String courierId;
+        private double latitude;
+        private double longitude;
+        private long timestamp;
+
+        public Position() {
+        }
+
+        public Position(String courierId, double latitude, double longitude, long timestamp) {
+            this.courierId = courierId;
+            this.latitude = latitude;
+            this.longitude = longitude;
+            this.timestamp = timestamp;
+        }
+
+        public String getCourierId() {
+            return courierId;
+        }
+
+        public void setCourierId(String courierId) {
+            this.courierId = courierId;
+        }
+
+        public double getLatitude() {
+            return latitude;
+        }
+
+        public void setLatitude(double latitude) {
+            this.latitude = latitude;
+        }
+
+        public double getLongitude() {
+            return longitude;
+        }
+
+        public void setLongitude(double longitude) {
+            this.longitude = longitude;
+        }
+
+        public long getTimestamp() {
+            return timestamp;
+        }
+
+        public void setTimestamp(long timestamp) {
+            this.timestamp = timestamp;
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package com.example.ExpedNow.services.core.impl;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coalesces typing indicators per (sender, delivery) before they reach the outbound channel.
+ * The first typing event sends one start frame; later ones only refresh the state. A stop is held back
+ * for one window and dropped if typing resumes, and a sender that goes quiet without stopping gets an
+ * automatic stop after the idle timeout. A token bucket per sender drops floods before any of this runs.
+ */
+@Component
+public class TypingIndicatorThrottle {
+
+    private static final Logger logger = LoggerFactory.getLogger(TypingIndicatorThrottle.class);
+
+    private static final long PRUNE_INTERVAL_MS = 60_000;
+
+    private final long windowMs;
+    private final long idleTimeoutMs;
+    private final double tokensPerMs;
+    private final double burst;
+
+    private final ConcurrentMap<String, TypingState> typing = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, TokenBucket> buckets = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "typing-indicator-throttle");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public TypingIndicatorThrottle(@Value("${chat.typing.window-ms:1000}") long windowMs,
+                                   @Value("${chat.typing.idle-timeout-ms:5000}") long idleTimeoutMs,
+                                   @Value("${chat.typing.rate-per-second:5}") double ratePerSecond,
+                                   @Value("${chat.typing.burst:10}") int burst) {
+        this.windowMs = Math.max(1, windowMs);
+        this.idleTimeoutMs = Math.max(this.windowMs, idleTimeoutMs);
+        this.tokensPerMs = Math.max(0.001, ratePerSecond) / 1000.0;
+        this.burst = Math.max(1, burst);
+        scheduler.scheduleWithFixedDelay(this::pruneBuckets, PRUNE_INTERVAL_MS, PRUNE_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * Take one token from the sender's bucket; false means the event should be dropped
+     */
+    public boolean tryAcquire(String senderId) {
+        long now = System.currentTimeMillis();
+        return buckets.computeIfAbsent(senderId, id -> new TokenBucket(burst, now)).tryAcquire(now);
+    }
+
+    /**
+     * A typing event. sendStart runs only if the sender was not already shown as typing;
+     * sendStop is kept for the stop frame this typing streak eventually ends with.
+     */
+    public void start(String senderId, String deliveryId, Runnable sendStart, Runnable sendStop) {
+        long now = System.currentTimeMillis();
+        String key = key(senderId, deliveryId);
+        boolean[] started = {false};
+        typing.compute(key, (k, state) -> {
+            if (state == null) {
+                state = new TypingState();
+                started[0] = true;
+            }
+            state.lastTypingAt = now;
+            state.stopRequested = false;
+            state.sendStop = sendStop;
+            return state;
+        });
+        if (started[0]) {
+            sendStart.run();
+            scheduler.schedule(() -> check(key), windowMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * A stop event. Nothing is sent now; the stop goes out on the next check unless typing resumes first.
+     */
+    public void stop(String senderId, String deliveryId, Runnable sendStop) {
+        typing.computeIfPresent(key(senderId, deliveryId), (k, state) -> {
+            state.stopRequested = true;
+            state.sendStop = sendStop;
+            return state;
+        });
+    }
+
+    // Runs once per window for each sender currently shown as typing
+    private void check(String key) {
+        long now = System.currentTimeMillis();
+        Runnable[] sendStop = {null};
+        typing.computeIfPresent(key, (k, state) -> {
+            if (state.stopRequested || now - state.lastTypingAt >= idleTimeoutMs) {
+                sendStop[0] = state.sendStop;
+                return null;
+            }
+            return state;
+        });
+        if (sendStop[0] == null) {
+            scheduler.schedule(() -> check(key), windowMs, TimeUnit.MILLISECONDS);
+            return;
+        }
+        try {
+            sendStop[0].run();
+        } catch (Exception e) {
+            logger.warn("Failed to send stop typing for {}: {}", key, e.getMessage());
+        }
+    }
+
+    // A bucket that refilled completely is no different from a new one
+    private void pruneBuckets() {
+        long now = System.currentTimeMillis();
+        buckets.values().removeIf(bucket -> bucket.isFull(now));
+    }
+
+    private static String key(String senderId, String deliveryId) {
+        return senderId + "|" + deliveryId;
+    }
+
+    private static class TypingState {
+        private long lastTypingAt;
+        private boolean stopRequested;
+        private Runnable sendStop;
+    }
+
+    private class TokenBucket {
+        private double tokens;
+        private long refilledAt;
+
+        private TokenBucket(double tokens, long now) {
+            this.tokens = tokens;
+            this.refilledAt = now;
+        }
+
+        private synchronized boolean tryAcquire(long now) {
+            refill(now);
+            if (tokens < 1) {
+                return false;
+            }
+            tokens -= 1;
+            return true;
+        }
+
+        private synchronized boolean isFull(long now) {
+            refill(now);
+            return tokens >= burst;
+        }
+
+        private void refill(long now) {
+            if (now > refilledAt) {
+                tokens = Math.min(burst, tokens + (now - refilledAt) * tokensPerMs);
+                refilledAt = now;
+            }
+        }
+    }
+}
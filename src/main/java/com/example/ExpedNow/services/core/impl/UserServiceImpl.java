@@ -2,6 +2,7 @@ package com.example.ExpedNow.services.core.impl;
 
 import com.example.ExpedNow.dto.UserDTO;
 import com.example.ExpedNow.dto.VehicleDTO;
+import com.example.ExpedNow.events.DeliveryPersonFreedEvent;
 import com.example.ExpedNow.models.User;
 import com.example.ExpedNow.models.Vehicle;
 import com.example.ExpedNow.models.VerificationToken;
@@ -11,6 +12,7 @@ import com.example.ExpedNow.repositories.UserRepository;
 import com.example.ExpedNow.repositories.VehicleRepository;
 import com.example.ExpedNow.repositories.VerificationTokenRepository;
 import com.example.ExpedNow.security.CustomUserDetailsService;
+import com.example.ExpedNow.security.PrincipalCache;
 import com.example.ExpedNow.services.core.UserServiceInterface;
 import com.example.ExpedNow.exception.ResourceNotFoundException;
 import io.jsonwebtoken.Claims;
@@ -20,6 +22,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.context.annotation.Primary;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
@@ -53,6 +56,12 @@ public class UserServiceImpl implements UserServiceInterface {
     private final MongoTemplate mongoTemplate;
     @Autowired
     private EmailService emailService;
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+    @Autowired
+    private CourierAvailabilityCache availabilityCache;
+    @Autowired
+    private PrincipalCache principalCache;
     private final PasswordResetTokenRepository passwordResetTokenRepository;
     @Value("${spring.mail.enabled:false}")
     private boolean emailEnabled;
@@ -245,7 +254,14 @@ public class UserServiceImpl implements UserServiceInterface {
         user.setAvailable(available);
         user.setLastActive(new Date());
 
-        return userRepository.save(user);
+        User savedUser = userRepository.save(user);
+        if (savedUser.getRoles().contains(Role.ROLE_DELIVERY_PERSON)) {
+            availabilityCache.setEligible(userId, savedUser.isEnabled() && available);
+        }
+        if (available) {
+            eventPublisher.publishEvent(new DeliveryPersonFreedEvent(userId));
+        }
+        return savedUser;
     }
 
     @Override
@@ -324,7 +340,9 @@ public class UserServiceImpl implements UserServiceInterface {
 
     @Override
     public User save(User user) {
-        return userRepository.save(user);
+        User saved = userRepository.save(user);
+        principalCache.evict(saved.getId());
+        return saved;
     }
 
     @Override
@@ -655,6 +673,7 @@ public class UserServiceImpl implements UserServiceInterface {
         user.setResetToken(null);
         user.setResetTokenExpiry(null);
         userRepository.save(user);
+        principalCache.evict(user.getId());
     }
 
     public class InvalidTokenException extends RuntimeException {
@@ -687,7 +706,9 @@ public class UserServiceImpl implements UserServiceInterface {
             sendApprovalEmail(user);
         }
 
-        return userRepository.save(user);
+        User saved = userRepository.save(user);
+        principalCache.evict(userId);
+        return saved;
     }
 
     @Override
@@ -696,7 +717,9 @@ public class UserServiceImpl implements UserServiceInterface {
                 .orElseThrow(() -> new ResourceNotFoundException("User not found"));
 
         user.setEnabled(false);
-        return userRepository.save(user);
+        User saved = userRepository.save(user);
+        principalCache.evict(userId);
+        return saved;
     }
 
     @Override
@@ -709,6 +732,7 @@ public class UserServiceImpl implements UserServiceInterface {
         }
 
         userRepository.delete(user);
+        principalCache.evict(userId);
     }
 
     public void sendPasswordResetEmail(User user, String token) {
@@ -0,0 +1,94 @@
+package com.example.ExpedNow.config;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SessionTimeoutWheelTest {
+
+    private static final long IDLE_MS = 200;
+    private static final long TICK_MS = 10;
+
+    private SessionTimeoutWheel wheel;
+
+    @BeforeEach
+    void setUp() {
+        wheel = new SessionTimeoutWheel(IDLE_MS, TICK_MS);
+        wheel.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        wheel.stop();
+    }
+
+    @Test
+    void expiresIdleSessionAfterTimeout() throws InterruptedException {
+        CountDownLatch expired = new CountDownLatch(1);
+        long addedAt = System.currentTimeMillis();
+
+        wheel.add("s1", expired::countDown);
+
+        assertThat(expired.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(System.currentTimeMillis() - addedAt).isGreaterThanOrEqualTo(IDLE_MS);
+        assertThat(wheel.size()).isZero();
+    }
+
+    @Test
+    void touchedSessionStaysUntilActivityStops() throws InterruptedException {
+        CountDownLatch expired = new CountDownLatch(1);
+        wheel.add("s1", expired::countDown);
+
+        // Active for three idle periods
+        long until = System.currentTimeMillis() + 3 * IDLE_MS;
+        while (System.currentTimeMillis() < until) {
+            wheel.touch("s1");
+            Thread.sleep(IDLE_MS / 4);
+        }
+        assertThat(expired.getCount()).isEqualTo(1);
+        assertThat(wheel.size()).isEqualTo(1);
+
+        assertThat(expired.await(5, TimeUnit.SECONDS)).isTrue();
+    }
+
+    @Test
+    void removedSessionNeverExpires() throws InterruptedException {
+        AtomicInteger expirations = new AtomicInteger();
+        wheel.add("s1", expirations::incrementAndGet);
+        wheel.remove("s1");
+
+        Thread.sleep(3 * IDLE_MS);
+
+        assertThat(expirations).hasValue(0);
+        assertThat(wheel.size()).isZero();
+    }
+
+    @Test
+    void addingSameSessionAgainReplacesHandler() throws InterruptedException {
+        AtomicInteger first = new AtomicInteger();
+        CountDownLatch second = new CountDownLatch(1);
+        wheel.add("s1", first::incrementAndGet);
+        wheel.add("s1", second::countDown);
+
+        assertThat(second.await(5, TimeUnit.SECONDS)).isTrue();
+        Thread.sleep(2 * IDLE_MS);
+        assertThat(first).hasValue(0);
+    }
+
+    @Test
+    void failingHandlerDoesNotStopOtherExpirations() throws InterruptedException {
+        CountDownLatch expired = new CountDownLatch(1);
+        wheel.add("broken", () -> {
+            throw new IllegalStateException("boom");
+        });
+        wheel.add("s2", expired::countDown);
+
+        assertThat(expired.await(5, TimeUnit.SECONDS)).isTrue();
+    }
+}
@@ -0,0 +1,49 @@
+package com.example.ExpedNow.config;
+
+import com.example.ExpedNow.security.JwtUtil;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.MessageBuilder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+class WebSocketAuthInterceptorTest {
+
+    private final WebSocketAuthInterceptor interceptor =
+            new WebSocketAuthInterceptor(mock(JwtUtil.class), mock(SessionTimeoutWheel.class));
+
+    @Test
+    void clientsCannotSubscribeToRelayedCourierPositions() {
+        assertThat(preSend(StompCommand.SUBSCRIBE, "/topic/tracking.courier.c1")).isNull();
+        assertThat(preSend(StompCommand.SEND, "/topic/tracking.courier.c1")).isNull();
+        assertThat(preSend(StompCommand.SUBSCRIBE, "/topic/simp-user-registry")).isNull();
+    }
+
+    @Test
+    void wildcardSubscriptionsAreRejected() {
+        assertThat(preSend(StompCommand.SUBSCRIBE, "/topic/tracking.#")).isNull();
+        assertThat(preSend(StompCommand.SUBSCRIBE, "/topic/*.courier.c1")).isNull();
+        assertThat(preSend(StompCommand.SUBSCRIBE, "/topic/tracking.>")).isNull();
+    }
+
+    @Test
+    void regularDestinationsPassThrough() {
+        assertThat(preSend(StompCommand.SUBSCRIBE, "/topic/delivery/d1/tracking")).isNotNull();
+        assertThat(preSend(StompCommand.SUBSCRIBE, "/topic/delivery.d1")).isNotNull();
+        assertThat(preSend(StompCommand.SUBSCRIBE, "/user/queue/messages")).isNotNull();
+        assertThat(preSend(StompCommand.SEND, "/app/chat.send")).isNotNull();
+    }
+
+    private Message<?> preSend(StompCommand command, String destination) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.create(command);
+        accessor.setSessionId("s1");
+        accessor.setDestination(destination);
+        accessor.setLeaveMutable(true);
+        Message<byte[]> message = MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+        return interceptor.preSend(message, mock(MessageChannel.class));
+    }
+}
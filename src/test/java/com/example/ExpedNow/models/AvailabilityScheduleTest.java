@@ -0,0 +1,124 @@
+package com.example.ExpedNow.models;
+
+import org.bson.Document;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+import org.springframework.data.mongodb.core.convert.MongoCustomConversions;
+import org.springframework.data.mongodb.core.convert.NoOpDbRefResolver;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AvailabilityScheduleTest {
+
+    private static final LocalDate TODAY = LocalDate.of(2025, 3, 10);
+
+    private final MappingMongoConverter converter = createConverter();
+
+    @Test
+    void compactedOverridesSurviveSaveAndLoad() {
+        AvailabilitySchedule schedule = new AvailabilitySchedule("u1");
+        Map<LocalDate, AvailabilitySchedule.DaySchedule> overrides = new TreeMap<>();
+        // A run of identical days, a gap, a day with other hours, a day off and a single trailing day
+        for (int i = 0; i < 5; i++) {
+            overrides.put(TODAY.plusDays(i), day(true, "09:00", "17:00"));
+        }
+        overrides.put(TODAY.plusDays(7), day(true, "09:00", "17:00"));
+        overrides.put(TODAY.plusDays(8), day(true, "10:00", "18:00"));
+        overrides.put(TODAY.plusDays(9), day(false, null, null));
+        overrides.put(TODAY.plusDays(10), day(true, null, null));
+        schedule.setMonthlySchedule(overrides);
+
+        schedule.compactMonthlySchedule(TODAY);
+        AvailabilitySchedule loaded = roundTrip(schedule);
+
+        assertThat(loaded.getMonthlySchedule()).usingRecursiveComparison().isEqualTo(overrides);
+        assertThat(storedRanges(schedule)).hasSize(5);
+    }
+
+    @Test
+    void compactionDropsOverridesBeforeKeepFrom() {
+        AvailabilitySchedule schedule = new AvailabilitySchedule("u1");
+        Map<LocalDate, AvailabilitySchedule.DaySchedule> overrides = new TreeMap<>();
+        overrides.put(TODAY.minusDays(40), day(true, "08:00", "12:00"));
+        overrides.put(TODAY.minusDays(1), day(true, "08:00", "12:00"));
+        overrides.put(TODAY, day(true, "08:00", "12:00"));
+        schedule.setMonthlySchedule(overrides);
+
+        schedule.compactMonthlySchedule(TODAY.minusDays(31));
+        AvailabilitySchedule loaded = roundTrip(schedule);
+
+        assertThat(loaded.getMonthlySchedule()).containsOnlyKeys(TODAY.minusDays(1), TODAY);
+        assertThat(storedRanges(schedule)).hasSize(1);
+    }
+
+    @Test
+    void legacyPerDateOverridesAreReadAndFoldedIntoRanges() {
+        AvailabilitySchedule schedule = new AvailabilitySchedule("u1");
+        // Shape written before the ranges existed
+        ReflectionTestUtils.setField(schedule, "legacyMonthlySchedule", Map.of(TODAY, day(true, "09:00", "17:00")));
+        AvailabilitySchedule legacy = roundTrip(schedule);
+        assertThat(legacy.isAvailable(TODAY, LocalTime.NOON)).isTrue();
+
+        legacy.compactMonthlySchedule(TODAY);
+        Document resaved = new Document();
+        converter.write(legacy, resaved);
+
+        assertThat(resaved).doesNotContainKey("monthlySchedule");
+        assertThat(converter.read(AvailabilitySchedule.class, resaved).getMonthlySchedule()).containsOnlyKeys(TODAY);
+    }
+
+    @Test
+    void dateAvailabilityOnLoadedScheduleUsesOverridesThenWeekly() {
+        AvailabilitySchedule schedule = new AvailabilitySchedule("u1");
+        schedule.getWeeklySchedule().put(TODAY.getDayOfWeek(), day(true, "09:00", "17:00"));
+        schedule.setMonthlySchedule(Map.of(TODAY, day(false, null, null)));
+        schedule.compactMonthlySchedule(TODAY);
+
+        AvailabilitySchedule loaded = roundTrip(schedule);
+
+        assertThat(loaded.isAvailable(TODAY, LocalTime.NOON)).isFalse();
+        assertThat(loaded.isAvailable(TODAY.plusWeeks(1), LocalTime.NOON)).isTrue();
+        assertThat(loaded.isAvailable(TODAY.plusWeeks(1), LocalTime.of(17, 0))).isTrue();
+        assertThat(loaded.isAvailable(TODAY.plusWeeks(1), LocalTime.of(17, 1))).isFalse();
+        assertThat(loaded.isAvailable(DayOfWeek.SUNDAY, LocalTime.NOON)).isFalse();
+    }
+
+    private AvailabilitySchedule roundTrip(AvailabilitySchedule schedule) {
+        Document stored = new Document();
+        converter.write(schedule, stored);
+        return converter.read(AvailabilitySchedule.class, stored);
+    }
+
+    private List<?> storedRanges(AvailabilitySchedule schedule) {
+        Document stored = new Document();
+        converter.write(schedule, stored);
+        return stored.getList("monthlyRanges", Object.class);
+    }
+
+    private static AvailabilitySchedule.DaySchedule day(boolean working, String start, String end) {
+        return new AvailabilitySchedule.DaySchedule(working,
+                start != null ? LocalTime.parse(start) : null,
+                end != null ? LocalTime.parse(end) : null);
+    }
+
+    private static MappingMongoConverter createConverter() {
+        // Wired like Spring Boot's auto-configuration, without a database
+        MongoCustomConversions conversions = new MongoCustomConversions(List.of());
+        MongoMappingContext mappingContext = new MongoMappingContext();
+        mappingContext.setSimpleTypeHolder(conversions.getSimpleTypeHolder());
+        mappingContext.afterPropertiesSet();
+        MappingMongoConverter converter = new MappingMongoConverter(NoOpDbRefResolver.INSTANCE, mappingContext);
+        converter.setCustomConversions(conversions);
+        converter.afterPropertiesSet();
+        return converter;
+    }
+}
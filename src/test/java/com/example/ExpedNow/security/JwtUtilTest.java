@@ -0,0 +1,94 @@
+package com.example.ExpedNow.security;
+
+import com.example.ExpedNow.repositories.UserRepository;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.ExpiredJwtException;
+import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SignatureAlgorithm;
+import io.jsonwebtoken.io.Decoders;
+import io.jsonwebtoken.security.Keys;
+import org.junit.jupiter.api.Test;
+
+import java.util.Date;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+
+class JwtUtilTest {
+
+    private static final String SECRET = "hzIOh5KpmuK48srRGTg3ip+5dqRxzCkyWTu0PxOfMGI=";
+    private static final String OTHER_SECRET = "c2VjcmV0LWtleS10aGF0LWlzLWxvbmctZW5vdWdoLTMy";
+
+    @Test
+    void verifiedClaimsAreServedFromTheCache() {
+        JwtUtil jwtUtil = jwtUtil(10);
+        String token = token("u1", 60000, SECRET);
+
+        Claims first = jwtUtil.getAllClaimsFromToken(token);
+
+        assertThat(jwtUtil.getAllClaimsFromToken(token)).isSameAs(first);
+        assertThat(jwtUtil.getUserIdFromToken(token)).isEqualTo("u1");
+        assertThat(jwtUtil.getAuthoritiesFromToken(token)).extracting(Object::toString).containsExactly("CLIENT");
+    }
+
+    @Test
+    void cachedClaimsStopBeingServedAtTheTokensExpiry() throws InterruptedException {
+        JwtUtil jwtUtil = jwtUtil(10);
+        String token = token("u1", 1500, SECRET);
+        assertThat(jwtUtil.validateToken(token)).isTrue();
+
+        // Expiry has second precision, so wait past the next full second
+        Thread.sleep(2500);
+
+        assertThat(jwtUtil.validateToken(token)).isFalse();
+        assertThatThrownBy(() -> jwtUtil.getAllClaimsFromToken(token)).isInstanceOf(ExpiredJwtException.class);
+    }
+
+    @Test
+    void tokensThatFailVerificationAreNeverCached() {
+        JwtUtil jwtUtil = jwtUtil(10);
+        String forged = token("u1", 60000, OTHER_SECRET);
+
+        assertThat(jwtUtil.validateToken(forged)).isFalse();
+        assertThatThrownBy(() -> jwtUtil.getAllClaimsFromToken(forged)).isInstanceOf(JwtException.class);
+    }
+
+    @Test
+    void fullCacheDropsExpiredTokensBeforeLiveOnes() throws InterruptedException {
+        JwtUtil jwtUtil = jwtUtil(2);
+        String shortLived = token("u1", 1500, SECRET);
+        String longLived = token("u2", 60000, SECRET);
+        jwtUtil.getAllClaimsFromToken(shortLived);
+        Claims kept = jwtUtil.getAllClaimsFromToken(longLived);
+        Thread.sleep(2500);
+
+        jwtUtil.getAllClaimsFromToken(token("u3", 60000, SECRET));
+
+        assertThat(jwtUtil.getAllClaimsFromToken(longLived)).isSameAs(kept);
+    }
+
+    @Test
+    void zeroSizeDisablesTheCache() {
+        JwtUtil jwtUtil = jwtUtil(0);
+        String token = token("u1", 60000, SECRET);
+
+        assertThat(jwtUtil.getAllClaimsFromToken(token)).isNotSameAs(jwtUtil.getAllClaimsFromToken(token));
+    }
+
+    private static JwtUtil jwtUtil(int cacheSize) {
+        return new JwtUtil(SECRET, 60000, cacheSize, mock(UserRepository.class));
+    }
+
+    private static String token(String userId, long validForMs, String secret) {
+        return Jwts.builder()
+                .setSubject(userId)
+                .claim("roles", List.of("CLIENT"))
+                .setIssuedAt(new Date())
+                .setExpiration(new Date(System.currentTimeMillis() + validForMs))
+                .signWith(Keys.hmacShaKeyFor(Decoders.BASE64.decode(secret)), SignatureAlgorithm.HS256)
+                .compact();
+    }
+}
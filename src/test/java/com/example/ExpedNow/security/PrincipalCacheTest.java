@@ -0,0 +1,77 @@
+package com.example.ExpedNow.security;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PrincipalCacheTest {
+
+    @Test
+    void cachedPrincipalIsServedUntilItExpires() throws InterruptedException {
+        PrincipalCache cache = new PrincipalCache(200, 10);
+        CustomUserDetailsService.CustomUserDetails principal = principal("u1");
+        cache.put(principal);
+
+        assertThat(cache.get("u1")).isSameAs(principal);
+        Thread.sleep(300);
+        assertThat(cache.get("u1")).isNull();
+        assertThat(cache.size()).isZero();
+    }
+
+    @Test
+    void evictDropsOnlyThatUser() {
+        PrincipalCache cache = new PrincipalCache(60000, 10);
+        cache.put(principal("u1"));
+        cache.put(principal("u2"));
+
+        cache.evict("u1");
+
+        assertThat(cache.get("u1")).isNull();
+        assertThat(cache.get("u2")).isNotNull();
+
+        cache.evictAll();
+        assertThat(cache.size()).isZero();
+    }
+
+    @Test
+    void fullCacheDropsExpiredEntriesBeforeLiveOnes() throws InterruptedException {
+        PrincipalCache cache = new PrincipalCache(300, 2);
+        cache.put(principal("old"));
+        Thread.sleep(200);
+        cache.put(principal("recent"));
+        Thread.sleep(150);
+
+        cache.put(principal("new"));
+
+        assertThat(cache.size()).isEqualTo(2);
+        assertThat(cache.get("recent")).isNotNull();
+        assertThat(cache.get("new")).isNotNull();
+    }
+
+    @Test
+    void fullCacheOfLiveEntriesStaysWithinItsBound() {
+        PrincipalCache cache = new PrincipalCache(60000, 3);
+        for (int i = 0; i < 10; i++) {
+            cache.put(principal("u" + i));
+        }
+
+        assertThat(cache.size()).isLessThanOrEqualTo(3);
+        assertThat(cache.get("u9")).isNotNull();
+    }
+
+    @Test
+    void zeroTtlDisablesCaching() {
+        PrincipalCache cache = new PrincipalCache(0, 10);
+        cache.put(principal("u1"));
+
+        assertThat(cache.get("u1")).isNull();
+        assertThat(cache.size()).isZero();
+    }
+
+    private static CustomUserDetailsService.CustomUserDetails principal(String userId) {
+        return new CustomUserDetailsService.CustomUserDetails(userId, userId + "@example.com", "secret",
+                List.of(), true, true, 0, null);
+    }
+}
@@ -0,0 +1,80 @@
+package com.example.ExpedNow.security;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpMethod;
+import org.springframework.util.AntPathMatcher;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PublicEndpointsTest {
+
+    @Test
+    void prefixRouteMatchesItselfAndEverythingBelow() {
+        assertThat(PublicEndpoints.matches("POST", "/api/auth/login")).isTrue();
+        assertThat(PublicEndpoints.matches("POST", "/api/auth/login/google")).isTrue();
+        assertThat(PublicEndpoints.matches("GET", "/api/pricing")).isTrue();
+        assertThat(PublicEndpoints.matches("GET", "/api/pricing/estimate/1")).isTrue();
+    }
+
+    @Test
+    void siblingsAndPartialSegmentsAreNotPublic() {
+        assertThat(PublicEndpoints.matches("GET", "/api/auth/profile")).isFalse();
+        assertThat(PublicEndpoints.matches("GET", "/api/auth")).isFalse();
+        assertThat(PublicEndpoints.matches("GET", "/api/pricingx")).isFalse();
+        assertThat(PublicEndpoints.matches("GET", "/api/deliveries/1")).isFalse();
+        assertThat(PublicEndpoints.matches("GET", "/")).isFalse();
+    }
+
+    @Test
+    void exactRouteDoesNotMatchChildren() {
+        assertThat(PublicEndpoints.matches("GET", "/error")).isTrue();
+        assertThat(PublicEndpoints.matches("GET", "/error/details")).isFalse();
+        assertThat(PublicEndpoints.matches("GET", "/actuator/health")).isTrue();
+        assertThat(PublicEndpoints.matches("GET", "/actuator/env")).isFalse();
+    }
+
+    @Test
+    void methodSpecificRoutes() {
+        assertThat(PublicEndpoints.matches("GET", "/api/ai/health")).isTrue();
+        assertThat(PublicEndpoints.matches("POST", "/api/ai/health")).isFalse();
+        assertThat(PublicEndpoints.matches("POST", "/api/ai/chat/public")).isTrue();
+        assertThat(PublicEndpoints.matches("GET", "/api/ai/chat/public")).isFalse();
+        assertThat(PublicEndpoints.matches(null, "/api/ai/health")).isFalse();
+    }
+
+    @Test
+    void preflightIsPublicEverywhere() {
+        assertThat(PublicEndpoints.matches("OPTIONS", "/api/deliveries/1")).isTrue();
+        assertThat(PublicEndpoints.matches("OPTIONS", "/")).isTrue();
+    }
+
+    @Test
+    void repeatedSlashesAreIgnoredAndNullPathIsNotPublic() {
+        assertThat(PublicEndpoints.matches("GET", "//api//pricing/")).isTrue();
+        assertThat(PublicEndpoints.matches("GET", null)).isFalse();
+    }
+
+    @Test
+    void agreesWithSpringPathPatternsForEveryRoute() {
+        AntPathMatcher matcher = new AntPathMatcher();
+        List<String> paths = List.of("/", "/uploads", "/uploads/a.png", "/api/test", "/api/test/x/y",
+                "/actuator/health", "/actuator/info", "/error", "/api/auth/register", "/api/auth/register/courier",
+                "/api/auth/me", "/oauth2/authorization/google", "/ws", "/ws/info", "/topic/a", "/swagger-ui.html",
+                "/swagger-ui/index.html", "/v3/api-docs", "/api/pricing/quote", "/api/ai/health", "/api/ai/chat/public",
+                "/api/ai/chat", "/api/deliveries", "/user/queue/x");
+        List<String> methods = List.of("GET", "POST", "OPTIONS");
+
+        for (String path : paths) {
+            for (String method : methods) {
+                boolean expected = PublicEndpoints.ROUTES.stream().anyMatch(route ->
+                        (route.getMethod() == null || route.getMethod().equals(HttpMethod.valueOf(method)))
+                                && matcher.match(route.getPattern(), path));
+                assertThat(PublicEndpoints.matches(method, path))
+                        .as("%s %s", method, path)
+                        .isEqualTo(expected);
+            }
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.example.ExpedNow.services.core.impl;
+
+import com.example.ExpedNow.models.DeliveryRequest;
+import com.example.ExpedNow.models.User;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AutomatedDeliveryAssignmentServiceImplTest {
+
+    private static final LocalDateTime RUN_AT = LocalDateTime.of(2025, 3, 10, 12, 0, 0, 123_000_000);
+
+    @Test
+    void keepsOnlyDeliveriesThisRunWrote() {
+        DeliveryCandidateScoringService.PlannedAssignment ours = plan("d1", "c1");
+        DeliveryCandidateScoringService.PlannedAssignment takenByOther = plan("d2", "c1");
+        DeliveryCandidateScoringService.PlannedAssignment sameCourierOtherWorker = plan("d3", "c1");
+        DeliveryCandidateScoringService.PlannedAssignment cancelled = plan("d4", "c2");
+        DeliveryCandidateScoringService.PlannedAssignment missing = plan("d5", "c2");
+
+        List<DeliveryRequest> persisted = List.of(
+                stored("d1", DeliveryRequest.DeliveryReqStatus.ASSIGNED, "c1", RUN_AT),
+                stored("d2", DeliveryRequest.DeliveryReqStatus.ASSIGNED, "c9", RUN_AT),
+                // Another worker assigned it to the planned courier just before this run's write
+                stored("d3", DeliveryRequest.DeliveryReqStatus.ASSIGNED, "c1", RUN_AT.minus(40, ChronoUnit.MILLIS)),
+                stored("d4", DeliveryRequest.DeliveryReqStatus.CANCELLED, null, null));
+
+        List<DeliveryCandidateScoringService.PlannedAssignment> written = AutomatedDeliveryAssignmentServiceImpl.keepWritten(
+                List.of(ours, takenByOther, sameCourierOtherWorker, cancelled, missing), persisted, RUN_AT);
+
+        assertThat(written).containsExactly(ours);
+    }
+
+    @Test
+    void releasesOnlyThisRunsExcessPerCourierFromTheEndOfThePlan() {
+        DeliveryCandidateScoringService.PlannedAssignment c1First = plan("d1", "c1");
+        DeliveryCandidateScoringService.PlannedAssignment c2Only = plan("d2", "c2");
+        DeliveryCandidateScoringService.PlannedAssignment c1Second = plan("d3", "c1");
+        DeliveryCandidateScoringService.PlannedAssignment c1Third = plan("d4", "c1");
+        int max = DeliveryCandidateScoringService.MAX_ACTIVE_DELIVERIES;
+
+        List<DeliveryCandidateScoringService.PlannedAssignment> excess = AutomatedDeliveryAssignmentServiceImpl.overCapacity(
+                List.of(c1First, c2Only, c1Second, c1Third),
+                Map.of("c1", (long) max + 2, "c2", (long) max));
+
+        assertThat(excess).containsExactly(c1Third, c1Second);
+    }
+
+    @Test
+    void neverReleasesMoreThanThisRunAssigned() {
+        DeliveryCandidateScoringService.PlannedAssignment only = plan("d1", "c1");
+
+        List<DeliveryCandidateScoringService.PlannedAssignment> excess = AutomatedDeliveryAssignmentServiceImpl.overCapacity(
+                List.of(only), Map.of("c1", (long) DeliveryCandidateScoringService.MAX_ACTIVE_DELIVERIES + 3));
+
+        assertThat(excess).containsExactly(only);
+    }
+
+    @Test
+    void courierWithoutCountIsWithinCapacity() {
+        assertThat(AutomatedDeliveryAssignmentServiceImpl.overCapacity(List.of(plan("d1", "c1")), Map.of())).isEmpty();
+    }
+
+    private static DeliveryCandidateScoringService.PlannedAssignment plan(String deliveryId, String courierId) {
+        DeliveryRequest delivery = new DeliveryRequest();
+        delivery.setId(deliveryId);
+        delivery.setStatus(DeliveryRequest.DeliveryReqStatus.PENDING);
+        User courier = new User();
+        courier.setId(courierId);
+        return new DeliveryCandidateScoringService.PlannedAssignment(delivery, courier);
+    }
+
+    private static DeliveryRequest stored(String id, DeliveryRequest.DeliveryReqStatus status, String courierId,
+                                          LocalDateTime assignedAt) {
+        DeliveryRequest delivery = new DeliveryRequest();
+        delivery.setId(id);
+        delivery.setStatus(status);
+        delivery.setDeliveryPersonId(courierId);
+        delivery.setAssignedAt(assignedAt);
+        return delivery;
+    }
+}
@@ -0,0 +1,141 @@
+package com.example.ExpedNow.services.core.impl;
+
+import com.example.ExpedNow.dto.MessageDTO;
+import com.example.ExpedNow.dto.MessageHistoryDTO;
+import com.example.ExpedNow.models.Message;
+import com.example.ExpedNow.repositories.ChatRoomRepository;
+import com.example.ExpedNow.repositories.MessageRepository;
+import com.example.ExpedNow.repositories.UserRepository;
+import com.example.ExpedNow.security.CustomUserDetailsService;
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class ChatServiceTest {
+
+    private static final LocalDateTime BASE = LocalDateTime.of(2025, 3, 10, 12, 0);
+    private static final Comparator<Message> NEWEST_FIRST = Comparator.comparing(Message::getTimestamp)
+            .thenComparing(Message::getId).reversed();
+
+    private final List<Message> stored = new ArrayList<>();
+    private ChatService chatService;
+    private Authentication authentication;
+
+    @BeforeEach
+    void setUp() {
+        MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+        when(mongoTemplate.find(any(Query.class), eq(Message.class))).thenAnswer(invocation -> seek(invocation.getArgument(0)));
+        chatService = new ChatService(mock(MessageRepository.class), mock(ChatRoomRepository.class),
+                mock(UserRepository.class), mock(SimpMessagingTemplate.class), mongoTemplate,
+                mock(ChatWriteBehindBuffer.class));
+        authentication = new UsernamePasswordAuthenticationToken(new CustomUserDetailsService.CustomUserDetails(
+                "client", "client@example.com", "secret", List.of(), true, true, 0, null), null, List.of());
+    }
+
+    @Test
+    void cursorRoundTripsTimestampAndId() {
+        LocalDateTime timestamp = BASE.plusNanos(123_000_000);
+        ChatService.MessageCursor decoded = ChatService.MessageCursor.decode(
+                new ChatService.MessageCursor(timestamp, id(7)).encode());
+
+        assertThat(decoded.timestamp).isEqualTo(timestamp);
+        assertThat(decoded.id).isEqualTo(id(7));
+    }
+
+    @Test
+    void malformedCursorIsRejected() {
+        assertThatThrownBy(() -> ChatService.MessageCursor.decode("not a cursor!"))
+                .isInstanceOf(IllegalArgumentException.class);
+        String noSeparator = Base64.getUrlEncoder().encodeToString("2025-03-10T12:00".getBytes());
+        assertThatThrownBy(() -> ChatService.MessageCursor.decode(noSeparator))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> chatService.getMessageHistory("d1", "courier", "%%%", 2, authentication))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void pagesWalkEveryMessageOnceAcrossEqualTimestamps() {
+        // Three messages share a timestamp and straddle the page boundary
+        store(1, BASE);
+        store(2, BASE.plusSeconds(1));
+        store(3, BASE.plusSeconds(2));
+        store(4, BASE.plusSeconds(2));
+        store(5, BASE.plusSeconds(2));
+        store(6, BASE.plusSeconds(3));
+
+        List<String> seen = new ArrayList<>();
+        String before = null;
+        int pages = 0;
+        MessageHistoryDTO page;
+        do {
+            page = chatService.getMessageHistory("d1", "courier", before, 2, authentication);
+            page.getMessages().stream().map(MessageDTO::getId).forEach(seen::add);
+            before = page.getNextCursor();
+            pages++;
+        } while (page.isHasMore());
+
+        assertThat(seen).containsExactly(id(6), id(5), id(4), id(3), id(2), id(1));
+        assertThat(pages).isEqualTo(3);
+        assertThat(before).isNull();
+    }
+
+    @Test
+    void exactlyFullLastPageReportsNoMore() {
+        store(1, BASE);
+        store(2, BASE.plusSeconds(1));
+
+        MessageHistoryDTO page = chatService.getMessageHistory("d1", "courier", null, 2, authentication);
+
+        assertThat(page.getMessages()).hasSize(2);
+        assertThat(page.isHasMore()).isFalse();
+        assertThat(page.getNextCursor()).isNull();
+    }
+
+    private void store(int n, LocalDateTime timestamp) {
+        Message message = new Message();
+        message.setId(id(n));
+        message.setDeliveryId("d1");
+        message.setSenderId(n % 2 == 0 ? "client" : "courier");
+        message.setReceiverId(n % 2 == 0 ? "courier" : "client");
+        message.setTimestamp(timestamp);
+        stored.add(message);
+    }
+
+    // Evaluates the keyset seek of the history query against the stored messages, as Mongo would
+    private List<Message> seek(Query query) {
+        List<Document> filters = query.getQueryObject().getList("$and", Document.class);
+        Stream<Message> matching = stored.stream();
+        if (filters.size() > 2) {
+            List<Document> seek = filters.get(2).getList("$or", Document.class);
+            LocalDateTime timestamp = (LocalDateTime) seek.get(0).get("timestamp", Document.class).get("$lt");
+            String id = (String) seek.get(1).get("_id", Document.class).get("$lt");
+            assertThat(seek.get(1).get("timestamp")).isEqualTo(timestamp);
+            matching = matching.filter(message -> message.getTimestamp().isBefore(timestamp)
+                    || message.getTimestamp().equals(timestamp) && message.getId().compareTo(id) < 0);
+        }
+        return matching.sorted(NEWEST_FIRST).limit(query.getLimit()).collect(Collectors.toList());
+    }
+
+    private static String id(int n) {
+        return String.format("%024x", n);
+    }
+}
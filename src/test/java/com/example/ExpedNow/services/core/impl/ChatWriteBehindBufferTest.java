@@ -0,0 +1,173 @@
+package com.example.ExpedNow.services.core.impl;
+
+import com.example.ExpedNow.models.ChatRoom;
+import com.example.ExpedNow.models.Message;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class ChatWriteBehindBufferTest {
+
+    private static final ObjectMapper MAPPER = JsonMapper.builder().findAndAddModules().build();
+
+    @TempDir
+    Path journalDir;
+
+    private MongoTemplate mongoTemplate;
+    private BulkOperations messageOps;
+    private BulkOperations roomOps;
+    private final List<ChatWriteBehindBuffer> buffers = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        mongoTemplate = mock(MongoTemplate.class);
+        messageOps = mock(BulkOperations.class);
+        roomOps = mock(BulkOperations.class);
+        when(mongoTemplate.bulkOps(any(BulkOperations.BulkMode.class), eq(Message.class))).thenReturn(messageOps);
+        when(mongoTemplate.bulkOps(any(BulkOperations.BulkMode.class), eq(ChatRoom.class))).thenReturn(roomOps);
+    }
+
+    @AfterEach
+    void tearDown() {
+        buffers.forEach(ChatWriteBehindBuffer::stop);
+    }
+
+    @Test
+    void submitReturnsOnceTheAppendIsInTheJournal() throws IOException {
+        ChatWriteBehindBuffer buffer = start();
+
+        buffer.submit("room1", message("m1", "d1"));
+
+        assertThat(Files.readString(journalDir.resolve("current.log"))).contains("\"m1\"");
+        verifyNoInteractions(messageOps);
+    }
+
+    @Test
+    void concurrentSubmitsAllComplete() throws Exception {
+        ChatWriteBehindBuffer buffer = start(1000);
+        ExecutorService senders = Executors.newFixedThreadPool(8);
+        List<Future<?>> done = new ArrayList<>();
+        for (int sender = 0; sender < 8; sender++) {
+            int s = sender;
+            done.add(senders.submit(() -> {
+                for (int i = 0; i < 50; i++) {
+                    buffer.submit("room1", message("m" + s + "-" + i, "d1"));
+                }
+            }));
+        }
+        for (Future<?> future : done) {
+            future.get();
+        }
+        senders.shutdown();
+
+        assertThat(Files.readAllLines(journalDir.resolve("current.log"))).hasSize(400);
+    }
+
+    @Test
+    void flushCommitsTheRotatedBatchAndDeletesIt() throws IOException {
+        ChatWriteBehindBuffer buffer = start();
+        buffer.submit("room1", message("m1", "d1"));
+        buffer.submit("room1", message("m2", "d1"));
+        buffer.submit("room2", message("m3", "d2"));
+
+        assertThat(buffer.flush()).isTrue();
+
+        assertThat(insertedIds()).containsExactly("m1", "m2", "m3");
+        verify(roomOps, times(2)).updateOne(any(Query.class), any(Update.class));
+        assertThat(batchFiles()).isEmpty();
+        assertThat(Files.size(journalDir.resolve("current.log"))).isZero();
+    }
+
+    @Test
+    void failedCommitKeepsTheBatchAndFlushDeliveryReportsIt() throws IOException {
+        ChatWriteBehindBuffer buffer = start();
+        when(messageOps.execute()).thenThrow(new IllegalStateException("mongo down")).thenReturn(null);
+        buffer.submit("room1", message("m1", "d1"));
+
+        assertThatThrownBy(() -> buffer.flushDelivery("d1")).isInstanceOf(IllegalStateException.class);
+        assertThat(batchFiles()).hasSize(1);
+
+        // Nothing of d2 is buffered, but the failed batch on disk may hold its messages: retried first
+        buffer.flushDelivery("d2");
+        assertThat(batchFiles()).isEmpty();
+        assertThat(insertedIds()).containsExactly("m1", "m1");
+    }
+
+    @Test
+    void journalLeftByACrashIsReplayedOnStartSkippingATornLine() throws IOException {
+        ChatWriteBehindBuffer crashed = start();
+        crashed.submit("room1", message("m1", "d1"));
+        crashed.submit("room1", message("m2", "d1"));
+        Files.writeString(journalDir.resolve("current.log"), "{\"chatRoomId\":\"room1\",\"mess",
+                StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+
+        ChatWriteBehindBuffer restarted = start();
+        assertThat(batchFiles()).hasSize(1);
+        assertThat(restarted.flush()).isTrue();
+
+        assertThat(insertedIds()).containsExactly("m1", "m2");
+        assertThat(batchFiles()).isEmpty();
+    }
+
+    private ChatWriteBehindBuffer start() throws IOException {
+        return start(256);
+    }
+
+    private ChatWriteBehindBuffer start(int maxBatchSize) throws IOException {
+        ChatWriteBehindBuffer buffer = new ChatWriteBehindBuffer(mongoTemplate, MAPPER, true, 60000, maxBatchSize, 5, 64,
+                journalDir.toString());
+        buffer.start();
+        buffers.add(buffer);
+        return buffer;
+    }
+
+    private List<String> insertedIds() {
+        ArgumentCaptor<Object> inserted = ArgumentCaptor.forClass(Object.class);
+        verify(messageOps, atLeastOnce()).insert(inserted.capture());
+        return inserted.getAllValues().stream().map(message -> ((Message) message).getId()).toList();
+    }
+
+    private List<Path> batchFiles() throws IOException {
+        try (Stream<Path> files = Files.list(journalDir)) {
+            return files.filter(path -> path.getFileName().toString().startsWith("batch-")).toList();
+        }
+    }
+
+    private static Message message(String id, String deliveryId) {
+        return Message.builder()
+                .id(id)
+                .deliveryId(deliveryId)
+                .senderId("client")
+                .receiverId("courier")
+                .content("hello")
+                .timestamp(LocalDateTime.of(2025, 3, 10, 12, 0))
+                .build();
+    }
+}
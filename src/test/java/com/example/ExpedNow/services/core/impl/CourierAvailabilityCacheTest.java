@@ -0,0 +1,155 @@
+package com.example.ExpedNow.services.core.impl;
+
+import com.example.ExpedNow.models.AvailabilitySchedule;
+import com.example.ExpedNow.repositories.AvailabilityRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+class CourierAvailabilityCacheTest {
+
+    private static final int HORIZON_WEEKS = 2;
+
+    private AvailabilityRepository repository;
+    private CourierAvailabilityCache cache;
+    private LocalDate today;
+
+    @BeforeEach
+    void setUp() {
+        repository = mock(AvailabilityRepository.class);
+        when(repository.findByUserId(anyString())).thenReturn(Optional.empty());
+        cache = new CourierAvailabilityCache(repository, HORIZON_WEEKS, 10);
+        today = LocalDate.now();
+    }
+
+    @Test
+    void slotBitmapsAgreeWithScheduleAtEveryMinute() {
+        AvailabilitySchedule schedule = mixedSchedule("u1");
+        cache.put(schedule);
+
+        // Past the horizon too, where the cache falls back to the schedule itself
+        for (int dayOffset = 0; dayOffset < HORIZON_WEEKS * 7 + 2; dayOffset++) {
+            LocalDate date = today.plusDays(dayOffset);
+            for (int minute = 0; minute < 24 * 60; minute++) {
+                LocalTime time = LocalTime.MIN.plusMinutes(minute);
+                assertThat(cache.isAvailable("u1", date, time))
+                        .as("%s %s", date, time)
+                        .isEqualTo(schedule.isAvailable(date, time));
+            }
+        }
+        verify(repository, never()).findByUserId(anyString());
+    }
+
+    @Test
+    void endTimeIsInclusiveToTheMinuteButNotBeyond() {
+        AvailabilitySchedule schedule = new AvailabilitySchedule("u1");
+        schedule.setMonthlySchedule(Map.of(today, day(true, "09:07", "17:00")));
+        cache.put(schedule);
+
+        assertThat(cache.isAvailable("u1", today, LocalTime.of(9, 6, 59))).isFalse();
+        assertThat(cache.isAvailable("u1", today, LocalTime.of(9, 7))).isTrue();
+        assertThat(cache.isAvailable("u1", today, LocalTime.of(17, 0))).isTrue();
+        assertThat(cache.isAvailable("u1", today, LocalTime.of(17, 0, 30))).isFalse();
+    }
+
+    @Test
+    void invertedIndexReturnsOnlyEligibleAvailableCouriers() {
+        AvailabilitySchedule allDay = new AvailabilitySchedule("allDay");
+        allDay.setMonthlySchedule(Map.of(today.plusDays(1), day(true, null, null)));
+        AvailabilitySchedule morning = new AvailabilitySchedule("morning");
+        morning.setMonthlySchedule(Map.of(today.plusDays(1), day(true, "08:00", "12:10")));
+        AvailabilitySchedule off = new AvailabilitySchedule("off");
+        cache.put(allDay);
+        cache.put(morning);
+        cache.put(off);
+        cache.replaceEligible(List.of("allDay", "morning", "off"));
+
+        LocalDateTime tomorrow = today.plusDays(1).atStartOfDay();
+        assertThat(cache.findAvailableAt(tomorrow.withHour(9))).containsExactlyInAnyOrder("allDay", "morning");
+        // Partial slot 12:00-12:15 is settled against the schedule
+        assertThat(cache.findAvailableAt(tomorrow.withHour(12).withMinute(5))).containsExactlyInAnyOrder("allDay", "morning");
+        assertThat(cache.findAvailableAt(tomorrow.withHour(12).withMinute(11))).containsExactly("allDay");
+        assertThat(cache.findAvailableAt(tomorrow.withHour(20))).containsExactly("allDay");
+
+        cache.setEligible("allDay", false);
+        assertThat(cache.findAvailableAt(tomorrow.withHour(9))).containsExactly("morning");
+    }
+
+    @Test
+    void savedScheduleReplacesIndexedSlots() {
+        AvailabilitySchedule schedule = new AvailabilitySchedule("u1");
+        schedule.setMonthlySchedule(Map.of(today.plusDays(1), day(true, null, null)));
+        cache.put(schedule);
+        cache.replaceEligible(List.of("u1"));
+        LocalDateTime tomorrowNoon = today.plusDays(1).atTime(12, 0);
+        assertThat(cache.findAvailableAt(tomorrowNoon)).containsExactly("u1");
+
+        AvailabilitySchedule updated = new AvailabilitySchedule("u1");
+        updated.setMonthlySchedule(Map.of(today.plusDays(1), day(false, null, null)));
+        cache.put(updated);
+
+        assertThat(cache.findAvailableAt(tomorrowNoon)).isEmpty();
+    }
+
+    @Test
+    void invalidateClearsIndexedSlots() {
+        AvailabilitySchedule schedule = new AvailabilitySchedule("u1");
+        schedule.setMonthlySchedule(Map.of(today.plusDays(1), day(true, null, null)));
+        cache.put(schedule);
+        cache.replaceEligible(List.of("u1"));
+
+        cache.invalidate("u1");
+
+        assertThat(cache.findAvailableAt(today.plusDays(1).atTime(12, 0))).isEmpty();
+        assertThat(cache.size()).isZero();
+    }
+
+    @Test
+    void timesOutsideTheIndexedHorizonAreNotAnswered() {
+        cache.put(new AvailabilitySchedule("u1"));
+
+        assertThat(cache.findAvailableAt(today.minusDays(1).atTime(12, 0))).isNull();
+        assertThat(cache.findAvailableAt(today.plusWeeks(HORIZON_WEEKS).atTime(12, 0))).isNull();
+    }
+
+    @Test
+    void laterEditsToTheSavedEntityDoNotChangeCachedAnswers() {
+        AvailabilitySchedule schedule = new AvailabilitySchedule("u1");
+        schedule.setMonthlySchedule(new TreeMap<>(Map.of(today.plusDays(1), day(true, null, null))));
+        cache.put(schedule);
+
+        schedule.getMonthlySchedule().put(today.plusDays(1), day(false, null, null));
+
+        assertThat(cache.isAvailable("u1", today.plusDays(1), LocalTime.NOON)).isTrue();
+    }
+
+    // Weekly hours cut mid-slot, an all-day weekday, and date overrides that close or change a day
+    private AvailabilitySchedule mixedSchedule(String userId) {
+        AvailabilitySchedule schedule = new AvailabilitySchedule(userId);
+        schedule.getWeeklySchedule().put(today.getDayOfWeek(), day(true, "09:07", "17:00"));
+        schedule.getWeeklySchedule().put(today.plusDays(1).getDayOfWeek(), day(true, null, null));
+        schedule.getWeeklySchedule().put(today.plusDays(2).getDayOfWeek(), day(true, "22:00", "23:59"));
+        schedule.setMonthlySchedule(new TreeMap<>(Map.of(
+                today.plusDays(7), day(false, null, null),
+                today.plusDays(8), day(true, "06:30", "06:44"),
+                today.plusDays(15), day(true, "12:00", "13:00"))));
+        return schedule;
+    }
+
+    private static AvailabilitySchedule.DaySchedule day(boolean working, String start, String end) {
+        return new AvailabilitySchedule.DaySchedule(working,
+                start != null ? LocalTime.parse(start) : null,
+                end != null ? LocalTime.parse(end) : null);
+    }
+}
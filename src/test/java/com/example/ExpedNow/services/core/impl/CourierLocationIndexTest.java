@@ -0,0 +1,102 @@
+package com.example.ExpedNow.services.core.impl;
+
+import com.example.ExpedNow.repositories.UserLocationRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+class CourierLocationIndexTest {
+
+    private CourierLocationIndex index;
+
+    @BeforeEach
+    void setUp() {
+        index = new CourierLocationIndex(mock(UserLocationRepository.class));
+    }
+
+    @Test
+    void radiusQueryMatchesBruteForce() {
+        Random random = new Random(42);
+        Map<String, double[]> points = new HashMap<>();
+        // Dense cluster around Tunis plus points spread over the globe
+        for (int i = 0; i < 2000; i++) {
+            double latitude = i < 1500 ? 36.8 + random.nextGaussian() * 0.2 : random.nextDouble() * 170 - 85;
+            double longitude = i < 1500 ? 10.18 + random.nextGaussian() * 0.2 : random.nextDouble() * 360 - 180;
+            points.put("c" + i, new double[]{latitude, longitude});
+            index.update("c" + i, latitude, longitude, new Date());
+        }
+
+        for (double radiusKm : new double[]{0.5, 2, 10, 50, 500}) {
+            for (int q = 0; q < 20; q++) {
+                double latitude = 36.8 + random.nextGaussian() * 0.2;
+                double longitude = 10.18 + random.nextGaussian() * 0.2;
+                assertThat(index.findWithinRadius(latitude, longitude, radiusKm))
+                        .as("radius %s km around %s,%s", radiusKm, latitude, longitude)
+                        .isEqualTo(bruteForce(points, latitude, longitude, radiusKm));
+            }
+        }
+    }
+
+    @Test
+    void neighbouringCellsAcrossTheAntimeridianAreSearched() {
+        index.update("east", 0, 179.99, new Date());
+        index.update("west", 0, -179.99, new Date());
+
+        assertThat(index.findWithinRadius(0, 179.995, 5)).containsExactlyInAnyOrder("east", "west");
+    }
+
+    @Test
+    void radiusNearThePoleCoversWideLongitudeSpan() {
+        index.update("a", 89.9, 0, new Date());
+        index.update("b", 89.9, 120, new Date());
+        index.update("c", 89.9, -120, new Date());
+
+        assertThat(index.findWithinRadius(89.95, 60, 30)).containsExactlyInAnyOrder("a", "b", "c");
+    }
+
+    @Test
+    void movingCourierLeavesItsOldCell() {
+        index.update("c1", 36.80, 10.18, new Date());
+        index.update("c1", 36.90, 10.30, new Date());
+
+        assertThat(index.findWithinRadius(36.80, 10.18, 1)).isEmpty();
+        assertThat(index.findWithinRadius(36.90, 10.30, 1)).containsExactly("c1");
+        assertThat(index.size()).isEqualTo(1);
+    }
+
+    @Test
+    void removedCourierIsNotFound() {
+        index.update("c1", 36.80, 10.18, new Date());
+        index.remove("c1");
+
+        assertThat(index.findWithinRadius(36.80, 10.18, 10)).isEmpty();
+        assertThat(index.getLocation("c1")).isNull();
+    }
+
+    @Test
+    void nearestWidensUntilEnoughCouriersFound() {
+        index.update("near", 36.80, 10.18, new Date());
+        index.update("mid", 36.85, 10.18, new Date());
+        index.update("far", 40.00, 10.18, new Date());
+
+        assertThat(index.findNearest(36.80, 10.18, 2)).containsExactly("near", "mid");
+        assertThat(index.findNearest(36.80, 10.18, 5)).containsExactly("near", "mid", "far");
+        assertThat(index.findNearest(36.80, 10.18, 0)).isEmpty();
+    }
+
+    private static List<String> bruteForce(Map<String, double[]> points, double latitude, double longitude, double radiusKm) {
+        List<Map.Entry<String, Double>> within = new ArrayList<>();
+        for (Map.Entry<String, double[]> point : points.entrySet()) {
+            double distance = CourierLocationIndex.distanceKm(latitude, longitude, point.getValue()[0], point.getValue()[1]);
+            if (distance <= radiusKm) {
+                within.add(Map.entry(point.getKey(), distance));
+            }
+        }
+        within.sort(Map.Entry.comparingByValue());
+        return within.stream().map(Map.Entry::getKey).toList();
+    }
+}
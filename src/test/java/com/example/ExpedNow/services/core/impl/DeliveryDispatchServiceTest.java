@@ -0,0 +1,154 @@
+package com.example.ExpedNow.services.core.impl;
+
+import com.example.ExpedNow.events.DeliveryPersonFreedEvent;
+import com.example.ExpedNow.events.ScheduleChangedEvent;
+import com.example.ExpedNow.models.DeliveryRequest;
+import com.example.ExpedNow.repositories.DeliveryReqRepository;
+import com.example.ExpedNow.services.core.DeliveryAssignmentServiceInterface;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class DeliveryDispatchServiceTest {
+
+    private static final long DEBOUNCE_MS = 100;
+    private static final long BACKOFF_MS = 300;
+
+    private DeliveryAssignmentServiceInterface assignmentService;
+    private DeliveryReqRepository repository;
+    private DeliveryDispatchService dispatch;
+
+    @BeforeEach
+    void setUp() {
+        assignmentService = mock(DeliveryAssignmentServiceInterface.class);
+        repository = mock(DeliveryReqRepository.class);
+        dispatch = new DeliveryDispatchService(assignmentService, repository, 2, 2, DEBOUNCE_MS, BACKOFF_MS, 4 * BACKOFF_MS);
+        dispatch.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        dispatch.stop();
+    }
+
+    @Test
+    void burstOfEventsCollapsesIntoOneRescan() throws InterruptedException {
+        when(repository.findByStatusAndDeliveryPersonIdIsNull(any())).thenReturn(List.of());
+
+        for (int i = 0; i < 20; i++) {
+            dispatch.onDeliveryPersonFreed(new DeliveryPersonFreedEvent("c" + i));
+            dispatch.onScheduleChanged(new ScheduleChangedEvent("c" + i));
+        }
+
+        verify(repository, timeout(2000)).findByStatusAndDeliveryPersonIdIsNull(DeliveryRequest.DeliveryReqStatus.PENDING);
+        Thread.sleep(3 * DEBOUNCE_MS);
+        verify(repository, times(1)).findByStatusAndDeliveryPersonIdIsNull(any());
+
+        // A later event starts a new debounce window
+        dispatch.onDeliveryPersonFreed(new DeliveryPersonFreedEvent("late"));
+        verify(repository, timeout(2000).times(2)).findByStatusAndDeliveryPersonIdIsNull(any());
+    }
+
+    @Test
+    void unassignableDeliveryIsSkippedByRescansUntilItsBackoffPasses() throws InterruptedException {
+        when(assignmentService.assignDelivery("d1")).thenReturn(pending("d1"));
+        when(repository.findByStatusAndDeliveryPersonIdIsNull(any())).thenReturn(List.of(pending("d1")));
+
+        dispatch.enqueue("d1", 36.8, 10.18);
+        verify(assignmentService, timeout(2000)).assignDelivery("d1");
+
+        // Within the backoff: the rescan sees the delivery but does not queue it
+        rescanAndWait();
+        verify(assignmentService, times(1)).assignDelivery("d1");
+
+        Thread.sleep(BACKOFF_MS);
+        rescanAndWait();
+        verify(assignmentService, timeout(2000).times(2)).assignDelivery("d1");
+
+        // The second failure doubles the wait: a rescan past the base backoff still skips it
+        Thread.sleep(200);
+        rescanAndWait();
+        verify(assignmentService, times(2)).assignDelivery("d1");
+        Thread.sleep(BACKOFF_MS);
+        rescanAndWait();
+        verify(assignmentService, timeout(2000).times(3)).assignDelivery("d1");
+    }
+
+    @Test
+    void failedAttemptIsBackedOffToo() throws InterruptedException {
+        when(assignmentService.assignDelivery("d1")).thenThrow(new IllegalStateException("mongo down"));
+        when(repository.findByStatusAndDeliveryPersonIdIsNull(any())).thenReturn(List.of(pending("d1")));
+
+        dispatch.enqueue("d1", 36.8, 10.18);
+        verify(assignmentService, timeout(2000)).assignDelivery("d1");
+
+        rescanAndWait();
+        verify(assignmentService, times(1)).assignDelivery("d1");
+    }
+
+    @Test
+    void assignedDeliveryIsNotBackedOff() throws InterruptedException {
+        DeliveryRequest assigned = pending("d1");
+        assigned.setStatus(DeliveryRequest.DeliveryReqStatus.ASSIGNED);
+        assigned.setDeliveryPersonId("c1");
+        when(assignmentService.assignDelivery("d1")).thenReturn(assigned);
+        when(repository.findByStatusAndDeliveryPersonIdIsNull(any())).thenReturn(List.of(pending("d1")));
+
+        dispatch.enqueue("d1", 36.8, 10.18);
+        verify(assignmentService, timeout(2000)).assignDelivery("d1");
+
+        // Still pending in the rescan (e.g. released again): queued right away
+        rescanAndWait();
+        verify(assignmentService, timeout(2000).times(2)).assignDelivery("d1");
+    }
+
+    @Test
+    void fullZoneQueueRejectsAndDuplicatesAreQueuedOnce() throws InterruptedException {
+        Object gate = new Object();
+        // Hold both workers so the queues fill up
+        when(assignmentService.assignDelivery(any())).thenAnswer(invocation -> {
+            synchronized (gate) {
+                gate.wait(2000);
+            }
+            return pending(invocation.getArgument(0));
+        });
+        dispatch.enqueue("busy-a", 0, 0);
+        dispatch.enqueue("busy-b", 0, 0);
+        Thread.sleep(200);
+
+        int accepted = 0;
+        for (int i = 0; i < 10; i++) {
+            if (dispatch.enqueue("d" + i, 0, 0)) {
+                accepted++;
+            }
+        }
+        assertThat(accepted).isLessThan(10);
+        int queued = dispatch.getQueuedCount();
+        assertThat(dispatch.enqueue("d0", 0, 0) || dispatch.enqueue("d1", 0, 0)).isTrue();
+        assertThat(dispatch.getQueuedCount()).isEqualTo(queued);
+
+        synchronized (gate) {
+            gate.notifyAll();
+        }
+    }
+
+    private void rescanAndWait() throws InterruptedException {
+        dispatch.onDeliveryPersonFreed(new DeliveryPersonFreedEvent("c1"));
+        Thread.sleep(DEBOUNCE_MS + 150);
+    }
+
+    private static DeliveryRequest pending(String id) {
+        DeliveryRequest delivery = new DeliveryRequest();
+        delivery.setId(id);
+        delivery.setStatus(DeliveryRequest.DeliveryReqStatus.PENDING);
+        delivery.setPickupLatitude(36.8);
+        delivery.setPickupLongitude(10.18);
+        return delivery;
+    }
+}
@@ -0,0 +1,139 @@
+package com.example.ExpedNow.services.core.impl;
+
+import com.example.ExpedNow.models.DeliveryRequest;
+import com.example.ExpedNow.repositories.DeliveryReqRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+import org.springframework.web.socket.messaging.SessionSubscribeEvent;
+import org.springframework.web.socket.messaging.SessionUnsubscribeEvent;
+
+import java.security.Principal;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+class DeliveryTrackingServiceTest {
+
+    private static final Principal CLIENT = new UsernamePasswordAuthenticationToken("client1", null, List.of());
+
+    private DeliveryReqRepository repository;
+    private TrackingPositionRelay relay;
+    private DeliveryTrackingService tracking;
+    private final CountDownLatch loading = new CountDownLatch(1);
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @BeforeEach
+    void setUp() {
+        repository = mock(DeliveryReqRepository.class);
+        relay = mock(TrackingPositionRelay.class);
+        when(repository.findById("d1")).thenAnswer(invocation -> {
+            loading.countDown();
+            release.await(2, TimeUnit.SECONDS);
+            return Optional.of(delivery());
+        });
+        tracking = new DeliveryTrackingService(repository, mock(CourierLocationIndex.class),
+                mock(SimpMessagingTemplate.class), mock(MessageChannel.class), relay, 1000, 1000, 60000, 25);
+        tracking.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        tracking.stop();
+    }
+
+    @Test
+    void subscriberIsRegisteredAndFollowsTheCourier() throws InterruptedException {
+        tracking.handleSubscribe(subscribe("s1", "sub-1"));
+        release.countDown();
+
+        verify(relay, timeout(2000)).follow("c1");
+        assertThat(tracking.getTrackedDeliveryCount()).isEqualTo(1);
+
+        tracking.handleDisconnect(disconnect("s1"));
+        verify(relay).unfollow("c1");
+        assertThat(tracking.getTrackedDeliveryCount()).isZero();
+    }
+
+    @Test
+    void disconnectBeforeRegistrationLeavesNothingBehind() throws InterruptedException {
+        tracking.handleSubscribe(subscribe("s1", "sub-1"));
+        assertThat(loading.await(2, TimeUnit.SECONDS)).isTrue();
+
+        tracking.handleDisconnect(disconnect("s1"));
+        release.countDown();
+
+        awaitScheduler();
+        assertThat(tracking.getTrackedDeliveryCount()).isZero();
+        verify(relay, never()).follow("c1");
+    }
+
+    @Test
+    void unsubscribeBeforeRegistrationLeavesNothingBehind() throws InterruptedException {
+        tracking.handleSubscribe(subscribe("s1", "sub-1"));
+        assertThat(loading.await(2, TimeUnit.SECONDS)).isTrue();
+
+        tracking.handleUnsubscribe(unsubscribe("s1", "sub-1"));
+        release.countDown();
+
+        awaitScheduler();
+        assertThat(tracking.getTrackedDeliveryCount()).isZero();
+        verify(relay, never()).follow("c1");
+    }
+
+    // The registration runs on the tracking scheduler; a later subscribe to another delivery queues behind it
+    private void awaitScheduler() throws InterruptedException {
+        CountDownLatch drained = new CountDownLatch(1);
+        when(repository.findById("other")).thenAnswer(invocation -> {
+            drained.countDown();
+            return Optional.empty();
+        });
+        tracking.handleSubscribe(new SessionSubscribeEvent(this,
+                frame(SimpMessageType.SUBSCRIBE, "s2", "sub-9", "/topic/delivery/other/tracking"), CLIENT));
+        assertThat(drained.await(2, TimeUnit.SECONDS)).isTrue();
+    }
+
+    private SessionSubscribeEvent subscribe(String sessionId, String subscriptionId) {
+        return new SessionSubscribeEvent(this,
+                frame(SimpMessageType.SUBSCRIBE, sessionId, subscriptionId, "/topic/delivery/d1/tracking"), CLIENT);
+    }
+
+    private SessionUnsubscribeEvent unsubscribe(String sessionId, String subscriptionId) {
+        return new SessionUnsubscribeEvent(this, frame(SimpMessageType.UNSUBSCRIBE, sessionId, subscriptionId, null), CLIENT);
+    }
+
+    private SessionDisconnectEvent disconnect(String sessionId) {
+        return new SessionDisconnectEvent(this, frame(SimpMessageType.DISCONNECT, sessionId, null, null),
+                sessionId, CloseStatus.NORMAL, CLIENT);
+    }
+
+    private static Message<byte[]> frame(SimpMessageType type, String sessionId, String subscriptionId, String destination) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(type);
+        accessor.setSessionId(sessionId);
+        accessor.setSubscriptionId(subscriptionId);
+        accessor.setDestination(destination);
+        return MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+    }
+
+    private static DeliveryRequest delivery() {
+        DeliveryRequest delivery = new DeliveryRequest();
+        delivery.setId("d1");
+        delivery.setClientId("client1");
+        delivery.setDeliveryPersonId("c1");
+        delivery.setStatus(DeliveryRequest.DeliveryReqStatus.IN_TRANSIT);
+        return delivery;
+    }
+}
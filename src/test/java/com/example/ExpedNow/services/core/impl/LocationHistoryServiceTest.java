@@ -0,0 +1,117 @@
+package com.example.ExpedNow.services.core.impl;
+
+import com.example.ExpedNow.models.DeliveryRequest;
+import com.example.ExpedNow.models.LocationHistoryPoint;
+import com.example.ExpedNow.repositories.DeliveryReqRepository;
+import com.example.ExpedNow.repositories.DeliveryRouteRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.mongodb.core.MongoTemplate;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class LocationHistoryServiceTest {
+
+    private static final LocalDateTime ASSIGNED_D1 = LocalDateTime.of(2025, 3, 10, 12, 0);
+    private static final LocalDateTime COMPLETED_D1 = ASSIGNED_D1.plusMinutes(10);
+    private static final LocalDateTime ASSIGNED_D2 = COMPLETED_D1.plusMinutes(1);
+
+    private MongoTemplate mongoTemplate;
+    private DeliveryReqRepository deliveryRepository;
+    private LocationHistoryService history;
+
+    @BeforeEach
+    void setUp() {
+        mongoTemplate = mock(MongoTemplate.class);
+        deliveryRepository = mock(DeliveryReqRepository.class);
+        when(mongoTemplate.collectionExists(LocationHistoryPoint.class)).thenReturn(true);
+        history = new LocationHistoryService(mongoTemplate, deliveryRepository, mock(DeliveryRouteRepository.class),
+                0, 0, 100, 30000, 7, 24, 10);
+    }
+
+    @Test
+    void pointsAreTaggedWithTheDeliveryCarriedAtTheirTimestamp() {
+        when(deliveryRepository.findDeliveriesCarriedSince(anyCollection(), any())).thenReturn(List.of(
+                delivery("d1", DeliveryRequest.DeliveryReqStatus.DELIVERED, ASSIGNED_D1, COMPLETED_D1),
+                delivery("d2", DeliveryRequest.DeliveryReqStatus.ASSIGNED, ASSIGNED_D2, null)));
+
+        history.record("c1", 36.80, 10.18, at(ASSIGNED_D1.minusMinutes(1)));
+        history.record("c1", 36.81, 10.18, at(ASSIGNED_D1.plusMinutes(5)));
+        history.record("c1", 36.82, 10.18, at(COMPLETED_D1.plusSeconds(30)));
+        history.record("c1", 36.83, 10.18, at(ASSIGNED_D2.plusMinutes(1)));
+        history.flush();
+
+        assertThat(insertedDeliveryIds()).containsExactly(null, "d1", null, "d2");
+    }
+
+    @Test
+    void cachedActiveDeliveryIsNotAppliedToPointsBeforeItsAssignment() {
+        when(deliveryRepository.findDeliveriesCarriedSince(anyCollection(), any())).thenReturn(List.of(
+                delivery("d2", DeliveryRequest.DeliveryReqStatus.IN_TRANSIT, ASSIGNED_D2, null)));
+        history.record("c1", 36.80, 10.18, at(ASSIGNED_D2.plusMinutes(1)));
+        history.flush();
+
+        // A replayed ping from before d2 was assigned falls outside the cached window
+        when(deliveryRepository.findDeliveriesCarriedSince(anyCollection(), any())).thenReturn(List.of(
+                delivery("d1", DeliveryRequest.DeliveryReqStatus.DELIVERED, ASSIGNED_D1, COMPLETED_D1),
+                delivery("d2", DeliveryRequest.DeliveryReqStatus.IN_TRANSIT, ASSIGNED_D2, null)));
+        history.record("c1", 36.81, 10.18, at(ASSIGNED_D1.plusMinutes(5)));
+        history.flush();
+
+        verify(deliveryRepository, times(2)).findDeliveriesCarriedSince(anyCollection(), any());
+        assertThat(insertedDeliveryIds()).containsExactly("d2", "d1");
+    }
+
+    @Test
+    void cachedActiveDeliveryAnswersLaterPoints() {
+        when(deliveryRepository.findDeliveriesCarriedSince(anyCollection(), any())).thenReturn(List.of(
+                delivery("d2", DeliveryRequest.DeliveryReqStatus.IN_TRANSIT, ASSIGNED_D2, null)));
+        history.record("c1", 36.80, 10.18, at(ASSIGNED_D2.plusMinutes(1)));
+        history.flush();
+        history.record("c1", 36.81, 10.18, at(ASSIGNED_D2.plusMinutes(2)));
+        history.flush();
+
+        verify(deliveryRepository, times(1)).findDeliveriesCarriedSince(anyCollection(), any());
+        assertThat(insertedDeliveryIds()).containsExactly("d2", "d2");
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<String> insertedDeliveryIds() {
+        ArgumentCaptor<Collection<LocationHistoryPoint>> inserted = ArgumentCaptor.forClass(Collection.class);
+        verify(mongoTemplate, atLeastOnce()).insert(inserted.capture(), eq(LocationHistoryPoint.class));
+        List<String> ids = new ArrayList<>();
+        for (Collection<LocationHistoryPoint> batch : inserted.getAllValues()) {
+            batch.stream()
+                    .sorted((a, b) -> a.getTimestamp().compareTo(b.getTimestamp()))
+                    .map(point -> point.getSource().getDeliveryId())
+                    .collect(Collectors.toCollection(() -> ids));
+        }
+        return ids;
+    }
+
+    private static DeliveryRequest delivery(String id, DeliveryRequest.DeliveryReqStatus status,
+                                            LocalDateTime assignedAt, LocalDateTime completedAt) {
+        DeliveryRequest delivery = new DeliveryRequest();
+        delivery.setId(id);
+        delivery.setDeliveryPersonId("c1");
+        delivery.setStatus(status);
+        delivery.setAssignedAt(assignedAt);
+        delivery.setCompletedAt(completedAt);
+        return delivery;
+    }
+
+    private static Date at(LocalDateTime dateTime) {
+        return Date.from(dateTime.atZone(ZoneId.systemDefault()).toInstant());
+    }
+}
@@ -0,0 +1,93 @@
+package com.example.ExpedNow.services.core.impl;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TypingIndicatorThrottleTest {
+
+    private static final long WINDOW_MS = 100;
+    private static final long IDLE_MS = 400;
+
+    private final TypingIndicatorThrottle throttle = new TypingIndicatorThrottle(WINDOW_MS, IDLE_MS, 5, 3);
+    private final AtomicInteger starts = new AtomicInteger();
+    private final AtomicInteger stops = new AtomicInteger();
+
+    @AfterEach
+    void tearDown() {
+        throttle.shutdown();
+    }
+
+    @Test
+    void repeatedTypingEventsSendOneStart() {
+        for (int i = 0; i < 20; i++) {
+            typing("u1", "d1");
+        }
+        typing("u1", "d2");
+
+        assertThat(starts).hasValue(2);
+        assertThat(stops).hasValue(0);
+    }
+
+    @Test
+    void stopIsHeldForAWindowThenSentOnce() throws InterruptedException {
+        typing("u1", "d1");
+        stop("u1", "d1");
+        stop("u1", "d1");
+        assertThat(stops).hasValue(0);
+
+        Thread.sleep(WINDOW_MS * 3);
+        assertThat(stops).hasValue(1);
+
+        // A new streak starts over
+        typing("u1", "d1");
+        assertThat(starts).hasValue(2);
+    }
+
+    @Test
+    void stopIsDroppedWhenTypingResumesWithinTheWindow() throws InterruptedException {
+        typing("u1", "d1");
+        stop("u1", "d1");
+        typing("u1", "d1");
+
+        Thread.sleep(WINDOW_MS * 2);
+        assertThat(starts).hasValue(1);
+        assertThat(stops).hasValue(0);
+    }
+
+    @Test
+    void quietSenderGetsAStopAfterTheIdleTimeout() throws InterruptedException {
+        typing("u1", "d1");
+
+        Thread.sleep(IDLE_MS / 2);
+        assertThat(stops).hasValue(0);
+        Thread.sleep(IDLE_MS);
+        assertThat(stops).hasValue(1);
+    }
+
+    @Test
+    void tokenBucketAllowsTheBurstThenRefillsAtTheRate() throws InterruptedException {
+        assertThat(throttle.tryAcquire("u1")).isTrue();
+        assertThat(throttle.tryAcquire("u1")).isTrue();
+        assertThat(throttle.tryAcquire("u1")).isTrue();
+        assertThat(throttle.tryAcquire("u1")).isFalse();
+        // Buckets are per sender
+        assertThat(throttle.tryAcquire("u2")).isTrue();
+
+        // 5 tokens per second: one more after 200 ms, not two
+        Thread.sleep(250);
+        assertThat(throttle.tryAcquire("u1")).isTrue();
+        assertThat(throttle.tryAcquire("u1")).isFalse();
+    }
+
+    private void typing(String senderId, String deliveryId) {
+        throttle.start(senderId, deliveryId, starts::incrementAndGet, stops::incrementAndGet);
+    }
+
+    private void stop(String senderId, String deliveryId) {
+        throttle.stop(senderId, deliveryId, stops::incrementAndGet);
+    }
+}